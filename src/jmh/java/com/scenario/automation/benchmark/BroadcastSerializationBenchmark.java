@@ -0,0 +1,87 @@
+package com.scenario.automation.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scenario.automation.service.LuminariaStateService.LuminariaStateEvent;
+import com.scenario.automation.service.LuminariaStateService.StateChange;
+import com.scenario.automation.service.sse.SseFrame;
+import com.scenario.automation.service.sse.SseFrameEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU de um broadcast SSE em função da quantidade de clientes.
+ *
+ * - perClient: serializa o evento para cada cliente (como o SseEmitter.event().data(event) anterior).
+ * - encodeOnce: um SseFrame por evento, os mesmos bytes para todos os clientes (SseDispatcher).
+ *
+ * A escrita no socket é igual nos dois casos e fica de fora; o resultado é o tempo de CPU por broadcast.
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args=BroadcastSerializationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastSerializationBenchmark {
+
+    @Param({"1", "100", "1000", "10000"})
+    private int clients;
+
+    // Luminárias por evento state_changes (janela de coalescência)
+    @Param({"1", "50"})
+    private int changes;
+
+    private SseFrameEncoder encoder;
+    private LuminariaStateEvent event;
+
+    @Setup
+    public void setup() {
+        // Mesma configuração do ObjectMapper do Spring MVC (application.properties)
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .build();
+        encoder = new SseFrameEncoder();
+        ReflectionTestUtils.setField(encoder, "objectMapper", objectMapper);
+
+        List<StateChange> stateChanges = new ArrayList<>(changes);
+        for (long id = 1; id <= changes; id++) {
+            stateChanges.add(new StateChange(id, id % 2 == 0, id, 100, "#FFFFFF"));
+        }
+        event = new LuminariaStateEvent("state_changes", stateChanges, LocalDateTime.now());
+    }
+
+    @Benchmark
+    public void perClient(Blackhole blackhole) {
+        for (int i = 0; i < clients; i++) {
+            blackhole.consume(encoder.encode(event.getEventType(), "42", event));
+        }
+    }
+
+    @Benchmark
+    public void encodeOnce(Blackhole blackhole) {
+        SseFrame frame = encoder.encode(event.getEventType(), "42", event);
+        for (int i = 0; i < clients; i++) {
+            blackhole.consume(frame);
+        }
+    }
+}
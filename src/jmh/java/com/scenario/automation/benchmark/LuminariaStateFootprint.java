@@ -0,0 +1,188 @@
+package com.scenario.automation.benchmark;
+
+import com.scenario.automation.service.LuminariaTopologyService;
+import com.scenario.automation.service.state.LuminariaStateTable;
+import com.scenario.automation.service.state.PackedLongTable;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Memória por luminária das estruturas mantidas para cada luminária, antes (mapas com boxing) e
+ * depois, no heap e fora dele. Mede a diferença de heap (e de memória direta) após GC completo.
+ *
+ * - estado: LuminariaStateTable (antes ConcurrentHashMap<Long, Boolean>)
+ * - versões: sequência publicada, versão publicada e versão remota do LuminariaStateService
+ *   (antes HashMap<Long, Long> para as versões), com a versão remota cheia como após uma sincronização
+ * - topologia: LuminariaTopologyService com 100 luminárias por ambiente
+ *   (antes ConcurrentHashMap luminária -> ambiente e ambiente -> conjunto de ids)
+ * - total: estado + versões + topologia
+ *
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.heap=4g
+ *     -Dbenchmark.main=com.scenario.automation.benchmark.LuminariaStateFootprint -Dbenchmark.args="1000000 10000000"
+ */
+public final class LuminariaStateFootprint {
+
+    private LuminariaStateFootprint() {
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? parseSizes(args) : new int[]{1_000_000, 10_000_000};
+
+        System.out.printf("%-30s %12s %14s %14s%n", "estrutura", "entradas", "heap B/entr.", "direta B/entr.");
+        for (int size : sizes) {
+            measure("ConcurrentHashMap<Long,Bool>", size, LuminariaStateFootprint::fillMap);
+            measure("LuminariaStateTable (heap)", size, entries -> fillTable(entries, false));
+            measure("LuminariaStateTable (off)", size, entries -> fillTable(entries, true));
+            measure("versões HashMap (antes)", size, LuminariaStateFootprint::fillVersionMaps);
+            measure("versões PackedLongTable", size, entries -> fillVersionTables(entries, false));
+            measure("versões PackedLongTable (off)", size, entries -> fillVersionTables(entries, true));
+            measure("topologia (antes)", size, LuminariaStateFootprint::fillTopologyMaps);
+            measure("topologia", size, entries -> fillTopology(entries, false));
+            measure("topologia (off)", size, entries -> fillTopology(entries, true));
+            measure("total", size, entries -> fillAll(entries, false));
+            measure("total (off)", size, entries -> fillAll(entries, true));
+        }
+    }
+
+    private static Object fillVersionMaps(int entries) {
+        Map<Long, Long> publishedVersions = new HashMap<>();
+        Map<Long, Long> remoteVersions = new HashMap<>();
+        PackedLongTable publishedSequences = new PackedLongTable(entries, false);
+        for (long id = 1; id <= entries; id++) {
+            publishedVersions.put(id, id);
+            remoteVersions.put(id, id);
+            publishedSequences.putIfAbsent(id, id);
+        }
+        return new Object[]{publishedVersions, remoteVersions, publishedSequences};
+    }
+
+    private static Object fillVersionTables(int entries, boolean offHeap) {
+        // Como no LuminariaStateService: sequências e versões publicadas dimensionadas, remotas a partir de 0
+        PackedLongTable publishedSequences = new PackedLongTable(entries, offHeap);
+        PackedLongTable publishedVersions = new PackedLongTable(entries, offHeap);
+        PackedLongTable remoteVersions = new PackedLongTable(0, offHeap);
+        for (long id = 1; id <= entries; id++) {
+            publishedSequences.putIfAbsent(id, id);
+            publishedVersions.putIfAbsent(id, id);
+            remoteVersions.putIfAbsent(id, id);
+        }
+        return new Object[]{publishedSequences, publishedVersions, remoteVersions};
+    }
+
+    private static Object fillTopologyMaps(int entries) {
+        Map<Long, Long> luminariaEnvironments = new ConcurrentHashMap<>();
+        Map<Long, Set<Long>> environmentLuminarias = new ConcurrentHashMap<>();
+        for (long id = 1; id <= entries; id++) {
+            Long environmentId = environmentOf(id);
+            luminariaEnvironments.put(id, environmentId);
+            environmentLuminarias.computeIfAbsent(environmentId, key -> ConcurrentHashMap.newKeySet()).add(id);
+        }
+        return new Object[]{luminariaEnvironments, environmentLuminarias};
+    }
+
+    private static LuminariaTopologyService fillTopology(int entries, boolean offHeap) {
+        LuminariaTopologyService topology = new LuminariaTopologyService(entries, offHeap);
+        for (long id = 1; id <= entries; id++) {
+            topology.registerLuminaria(id, environmentOf(id));
+        }
+        return topology;
+    }
+
+    private static Object fillAll(int entries, boolean offHeap) {
+        LuminariaStateTable table = new LuminariaStateTable(entries, offHeap);
+        for (long id = 1; id <= entries; id++) {
+            table.set(id, true);
+        }
+        return new Object[]{table, fillVersionTables(entries, offHeap), fillTopology(entries, offHeap)};
+    }
+
+    private static long environmentOf(long luminariaId) {
+        return (luminariaId - 1) / 100 + 1;
+    }
+
+    private static Map<Long, Boolean> fillMap(int entries) {
+        Map<Long, Boolean> states = new ConcurrentHashMap<>();
+        for (long id = 1; id <= entries; id++) {
+            states.put(id, Boolean.TRUE);
+        }
+        return states;
+    }
+
+    private static LuminariaStateTable fillTable(int entries, boolean offHeap) {
+        // Dimensionada para 1024 como no padrão: inclui o custo dos redimensionamentos
+        LuminariaStateTable table = new LuminariaStateTable(1024, offHeap);
+        for (long id = 1; id <= entries; id++) {
+            table.set(id, true);
+        }
+        return table;
+    }
+
+    private static void measure(String name, int entries, IntFunction<?> filler) {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+
+        Object structure = filler.apply(entries);
+
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirect() - directBefore;
+        Reference.reachabilityFence(structure);
+
+        System.out.printf("%-30s %,12d %14.1f %14.1f%n",
+            name, entries, heap / (double) entries, direct / (double) entries);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Memória direta em uso, depois que os buffers já coletados são liberados (o Cleaner roda
+     * em outro thread, após o GC)
+     */
+    private static long usedDirect() {
+        long used = directPoolUsed();
+        for (int i = 0; i < 20; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long current = directPoolUsed();
+            if (current == used) {
+                break;
+            }
+            used = current;
+        }
+        return used;
+    }
+
+    private static long directPoolUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    private static int[] parseSizes(String[] args) {
+        int[] sizes = new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i].replace("_", ""));
+        }
+        return sizes;
+    }
+}
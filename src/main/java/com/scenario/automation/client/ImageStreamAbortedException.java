@@ -0,0 +1,14 @@
+package com.scenario.automation.client;
+
+import java.io.IOException;
+
+/**
+ * O cliente que recebia uma imagem transmitida por {@link ImagesApiClient#streamImage} encerrou a conexão.
+ * Não é falha da API de imagens: não conta para o circuit breaker, e o restante da imagem não é lido.
+ */
+public class ImageStreamAbortedException extends RuntimeException {
+
+    public ImageStreamAbortedException(IOException cause) {
+        super("Cliente encerrou a conexão durante a transmissão da imagem", cause);
+    }
+}
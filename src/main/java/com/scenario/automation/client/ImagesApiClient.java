@@ -1,8 +1,14 @@
 package com.scenario.automation.client;
 
 import com.scenario.automation.dto.images.EnvironmentImageDto;
-import com.scenario.automation.security.JwtTokenProvider;
+import com.scenario.automation.security.ServiceCredentialManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.core.io.Resource;
@@ -10,31 +16,70 @@ import org.springframework.http.*;
 import org.springframework.stereotype.Component;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import jakarta.annotation.PostConstruct;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * Client para comunicação com a API de imagens
+ *
+ * As consultas de metadados (imagens do ambiente e imagem por nome) passam por um cache com TTL;
+ * upload, renomeação e exclusão feitos por este client invalidam as entradas do ambiente.
  */
 @Component
 public class ImagesApiClient {
 
     private final RestTemplate restTemplate;
+
+    // Transmissão de imagens direto num HttpClient com pool próprio: permite abortar a resposta
+    private final CloseableHttpClient httpClient;
     
     @Autowired
-    private JwtTokenProvider tokenProvider;
+    private ServiceCredentialManager serviceCredentials;
     
     @Value("${app.images-api.base-url:http://localhost:8081}")
     private String imagesApiBaseUrl;
 
-    public ImagesApiClient() {
-        this.restTemplate = new RestTemplate();
+    // Circuit breaker, bulkhead, retries de leitura e health probe em cache
+    @Autowired
+    private ImagesApiResilience resilience;
+
+    // Metadados da API de imagens: lista por ambiente e imagem por (ambiente, nome), incluindo "não encontrada"
+    private final TtlCache<Long, List<EnvironmentImageDto>> environmentImagesCache;
+    private final TtlCache<ImageNameKey, Optional<EnvironmentImageDto>> imageByNameCache;
+
+    public ImagesApiClient(@Qualifier("imagesApiRestTemplate") RestTemplate restTemplate,
+                           @Qualifier("imagesApiStreamHttpClient") CloseableHttpClient httpClient,
+                           @Value("${app.images-api.cache.ttl-ms:30000}") long cacheTtlMillis,
+                           @Value("${app.images-api.cache.max-entries:1000}") int cacheMaxEntries,
+                           MeterRegistry meterRegistry) {
+        // Pool de conexões keep-alive com timeouts (ImagesApiHttpClientConfig)
+        this.restTemplate = restTemplate;
+        this.httpClient = httpClient;
+        this.environmentImagesCache = new TtlCache<>("images.environment", cacheTtlMillis, cacheMaxEntries, meterRegistry);
+        this.imageByNameCache = new TtlCache<>("images.by-name", cacheTtlMillis, cacheMaxEntries, meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        resilience.setHealthProbe(this::probeHealth);
     }
 
     /**
@@ -42,9 +87,8 @@ public class ImagesApiClient {
      */
     private HttpHeaders createAuthenticatedHeaders() {
         HttpHeaders headers = new HttpHeaders();
-        // Gerar token para comunicação entre APIs (usando usuário de sistema)
-        String token = tokenProvider.generateToken("system");
-        headers.setBearerAuth(token);
+        // Token do usuário de sistema, reutilizado e renovado antes de expirar
+        headers.setBearerAuth(serviceCredentials.getToken());
         return headers;
     }
 
@@ -65,23 +109,34 @@ public class ImagesApiClient {
 
             HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
 
-            ResponseEntity<EnvironmentImageDto> response = restTemplate.exchange(
+            ResponseEntity<EnvironmentImageDto> response = resilience.execute(() -> restTemplate.exchange(
                 url, 
                 HttpMethod.POST, 
                 requestEntity, 
                 EnvironmentImageDto.class
-            );
+            ));
 
             return response.getBody();
         } catch (RestClientException e) {
             throw new RuntimeException("Erro ao fazer upload da imagem: " + e.getMessage(), e);
+        } finally {
+            // Mesmo em caso de erro: a mudança pode ter sido gravada antes da falha
+            invalidateEnvironment(environmentId);
         }
     }
 
     /**
-     * Buscar imagens de um ambiente
+     * Buscar imagens de um ambiente (cache com TTL; erros não são guardados)
      */
     public List<EnvironmentImageDto> getImagesByEnvironment(Long environmentId) {
+        List<EnvironmentImageDto> images = environmentImagesCache.get(environmentId, this::fetchImagesByEnvironment);
+        return images != null ? images : Collections.emptyList();
+    }
+
+    /**
+     * Imagens de um ambiente direto da API, ou null em caso de erro
+     */
+    private List<EnvironmentImageDto> fetchImagesByEnvironment(Long environmentId) {
         try {
             String url = imagesApiBaseUrl + "/api/images/internal/environment/" + environmentId;
 
@@ -89,18 +144,19 @@ public class ImagesApiClient {
             headers.set("X-Internal-API-Key", "ScenarioInternalAPIKey2024ForImagesCommunication");
             HttpEntity<Void> requestEntity = new HttpEntity<>(headers);
 
-            ResponseEntity<List<EnvironmentImageDto>> response = restTemplate.exchange(
+            ResponseEntity<List<EnvironmentImageDto>> response = resilience.executeRead(() -> restTemplate.exchange(
                 url,
                 HttpMethod.GET,
                 requestEntity,
                 new ParameterizedTypeReference<List<EnvironmentImageDto>>() {}
-            );
+            ));
 
-            return response.getBody() != null ? response.getBody() : Collections.emptyList();
+            // Lista imutável: a mesma instância é compartilhada pelas leituras do cache
+            return response.getBody() != null ? List.copyOf(response.getBody()) : Collections.emptyList();
         } catch (RestClientException e) {
-            // Se a API de imagens não estiver disponível, retorna lista vazia
+            // Se a API de imagens não estiver disponível, retorna lista vazia (sem guardar no cache)
             System.err.println("Erro ao buscar imagens do ambiente " + environmentId + ": " + e.getMessage());
-            return Collections.emptyList();
+            return null;
         }
     }
 
@@ -111,7 +167,8 @@ public class ImagesApiClient {
         try {
             String url = imagesApiBaseUrl + "/api/images/" + imageId;
 
-            ResponseEntity<EnvironmentImageDto> response = restTemplate.getForEntity(url, EnvironmentImageDto.class);
+            ResponseEntity<EnvironmentImageDto> response =
+                resilience.executeRead(() -> restTemplate.getForEntity(url, EnvironmentImageDto.class));
             return response.getBody();
         } catch (RestClientException e) {
             throw new RuntimeException("Erro ao buscar imagem: " + e.getMessage(), e);
@@ -119,16 +176,28 @@ public class ImagesApiClient {
     }
 
     /**
-     * Buscar imagem por nome em um ambiente
+     * Buscar imagem por nome em um ambiente (cache com TTL, inclusive para imagem não encontrada)
      */
     public EnvironmentImageDto getImageByNameAndEnvironment(Long environmentId, String imageName) {
+        Optional<EnvironmentImageDto> image =
+            imageByNameCache.get(new ImageNameKey(environmentId, imageName), this::fetchImageByName);
+        return image != null ? image.orElse(null) : null; // Retorna null se não encontrar
+    }
+
+    /**
+     * Imagem por nome direto da API: vazio se não existe, null em caso de erro (não guardado no cache)
+     */
+    private Optional<EnvironmentImageDto> fetchImageByName(ImageNameKey key) {
         try {
-            String url = imagesApiBaseUrl + "/api/images/environment/" + environmentId + "/name/" + imageName;
+            String url = imagesApiBaseUrl + "/api/images/environment/" + key.environmentId + "/name/" + key.imageName;
 
-            ResponseEntity<EnvironmentImageDto> response = restTemplate.getForEntity(url, EnvironmentImageDto.class);
-            return response.getBody();
+            ResponseEntity<EnvironmentImageDto> response =
+                resilience.executeRead(() -> restTemplate.getForEntity(url, EnvironmentImageDto.class));
+            return Optional.ofNullable(response.getBody());
+        } catch (HttpClientErrorException.NotFound e) {
+            return Optional.empty();
         } catch (RestClientException e) {
-            return null; // Retorna null se não encontrar
+            return null;
         }
     }
 
@@ -139,10 +208,15 @@ public class ImagesApiClient {
         try {
             String url = imagesApiBaseUrl + "/api/images/" + imageId;
 
-            restTemplate.delete(url);
+            resilience.execute(() -> {
+                restTemplate.delete(url);
+                return null;
+            });
             return true;
         } catch (RestClientException e) {
             return false;
+        } finally {
+            invalidateImage(imageId);
         }
     }
 
@@ -156,12 +230,12 @@ public class ImagesApiClient {
             HttpHeaders headers = createAuthenticatedHeaders();
             HttpEntity<Void> requestEntity = new HttpEntity<>(headers);
 
-            ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
+            ResponseEntity<Map<String, Object>> response = resilience.execute(() -> restTemplate.exchange(
                 url,
                 HttpMethod.DELETE,
                 requestEntity,
                 new ParameterizedTypeReference<Map<String, Object>>() {}
-            );
+            ));
 
             Map<String, Object> body = response.getBody();
             if (body != null && body.containsKey("deletedCount")) {
@@ -173,6 +247,9 @@ public class ImagesApiClient {
             System.err.println("Erro ao deletar imagens do ambiente " + environmentId + ": " + e.getMessage());
             // Se a API de imagens não estiver disponível, retorna 0
             return 0;
+        } finally {
+            // Mesmo em caso de erro: a mudança pode ter sido gravada antes da falha
+            invalidateEnvironment(environmentId);
         }
     }
 
@@ -191,19 +268,61 @@ public class ImagesApiClient {
 
             HttpEntity<Map<String, String>> requestEntity = new HttpEntity<>(body, headers);
 
-            ResponseEntity<EnvironmentImageDto> response = restTemplate.exchange(
+            ResponseEntity<EnvironmentImageDto> response = resilience.execute(() -> restTemplate.exchange(
                 url,
                 HttpMethod.PATCH,
                 requestEntity,
                 EnvironmentImageDto.class
-            );
+            ));
 
-            return response.getBody();
+            EnvironmentImageDto image = response.getBody();
+            if (image != null && image.getEnvironmentId() != null) {
+                // Inclui o novo nome, que pode estar no cache como "não encontrada"
+                invalidateEnvironment(image.getEnvironmentId());
+            }
+            return image;
         } catch (RestClientException e) {
             throw new RuntimeException("Erro ao atualizar nome da imagem: " + e.getMessage(), e);
+        } finally {
+            invalidateImage(imageId);
         }
     }
 
+    /**
+     * Remove do cache a lista de imagens e as buscas por nome de um ambiente
+     */
+    public void invalidateEnvironment(Long environmentId) {
+        environmentImagesCache.invalidate(environmentId);
+        imageByNameCache.invalidateIf((key, image) -> Objects.equals(key.environmentId, environmentId));
+    }
+
+    /**
+     * Remove do cache os ambientes em que a imagem aparece (a imagem é conhecida só pelo id)
+     */
+    private void invalidateImage(Long imageId) {
+        if (imageId == null) {
+            return;
+        }
+        Set<Long> environmentIds = new HashSet<>();
+        environmentImagesCache.invalidateIf((environmentId, images) -> {
+            for (EnvironmentImageDto image : images) {
+                if (imageId.equals(image.getId())) {
+                    environmentIds.add(environmentId);
+                    return true;
+                }
+            }
+            return false;
+        });
+        imageByNameCache.invalidateIf((key, image) -> {
+            if (image.isPresent() && imageId.equals(image.get().getId())) {
+                environmentIds.add(key.environmentId);
+                return true;
+            }
+            return false;
+        });
+        environmentIds.forEach(this::invalidateEnvironment);
+    }
+
     /**
      * Contar imagens de um ambiente
      */
@@ -211,12 +330,12 @@ public class ImagesApiClient {
         try {
             String url = imagesApiBaseUrl + "/api/images/environment/" + environmentId + "/count";
 
-            ResponseEntity<Map<String, Long>> response = restTemplate.exchange(
+            ResponseEntity<Map<String, Long>> response = resilience.executeRead(() -> restTemplate.exchange(
                 url,
                 HttpMethod.GET,
                 null,
                 new ParameterizedTypeReference<Map<String, Long>>() {}
-            );
+            ));
 
             Map<String, Long> body = response.getBody();
             return body != null ? body.getOrDefault("count", 0L) : 0L;
@@ -226,9 +345,16 @@ public class ImagesApiClient {
     }
 
     /**
-     * Verificar se a API de imagens está disponível
+     * Verificar se a API de imagens está disponível (status em cache do health probe e do circuito, sem round trip)
      */
     public boolean isImagesApiAvailable() {
+        return resilience.isAvailable();
+    }
+
+    /**
+     * Health check direto na API (executado em segundo plano pelo ImagesApiResilience)
+     */
+    private boolean probeHealth() {
         try {
             String url = imagesApiBaseUrl + "/api/images/health";
             ResponseEntity<Map<String, String>> response = restTemplate.exchange(
@@ -251,24 +377,84 @@ public class ImagesApiClient {
     }
 
     /**
-     * Buscar imagem como Resource para fazer proxy
+     * Transmite uma imagem da API para o handler, sem carregar o corpo em memória.
+     *
+     * O handler recebe o status (200, ou 206 para Range), os headers e o corpo da resposta ainda
+     * aberto; a conexão e a vaga do bulkhead de transmissões ficam ocupadas até ele retornar. Sem
+     * retry: parte do corpo pode já ter sido repassada. Respostas de erro lançam HttpStatusCodeException
+     * (ex.: 404, 416) e recusas lançam ImagesApiUnavailableException.
+     *
+     * Se o handler lançar ImageStreamAbortedException (cliente desconectou), a requisição é abortada:
+     * a conexão é descartada em vez de ler o restante da imagem, e a falha não conta para o circuito.
+     * Usa um HttpClient com pool próprio (o RestTemplate consome o corpo inteiro ao fechar a resposta),
+     * para que downloads lentos não ocupem as conexões das consultas de metadados.
+     *
+     * @param range header Range do cliente (ex.: "bytes=0-1023"), ou null
+     * @param ifRange header If-Range do cliente, ou null
      */
-    public ResponseEntity<Resource> getImageAsResource(String fileName) {
-        try {
-            String url = imagesApiBaseUrl + "/api/images/file/" + fileName;
-            
-            HttpHeaders headers = createAuthenticatedHeaders();
-            HttpEntity<Void> requestEntity = new HttpEntity<>(headers);
+    public void streamImage(String fileName, String range, String ifRange, ImageStreamHandler handler) {
+        String url = imagesApiBaseUrl + "/api/images/file/" + fileName;
+        resilience.executeStream(() -> {
+            HttpGet request = new HttpGet(url);
+            createAuthenticatedHeaders().forEach((name, values) -> values.forEach(value -> request.addHeader(name, value)));
+            if (range != null) {
+                request.setHeader(HttpHeaders.RANGE, range);
+                if (ifRange != null) {
+                    request.setHeader(HttpHeaders.IF_RANGE, ifRange);
+                }
+            }
 
-            return restTemplate.exchange(
-                url,
-                HttpMethod.GET,
-                requestEntity,
-                Resource.class
-            );
-        } catch (RestClientException e) {
-            return ResponseEntity.notFound().build();
+            try (ClassicHttpResponse response = httpClient.executeOpen(null, request, null)) {
+                HttpStatusCode status = HttpStatusCode.valueOf(response.getCode());
+                HttpHeaders headers = toHttpHeaders(response.getHeaders());
+                org.apache.hc.core5.http.HttpEntity entity = response.getEntity();
+                if (status.isError()) {
+                    throw errorResponse(status, response.getReasonPhrase(), headers, entity);
+                }
+                try {
+                    handler.handle(status, headers, entity != null ? entity.getContent() : InputStream.nullInputStream());
+                } catch (ImageStreamAbortedException e) {
+                    request.cancel(); // fecha a conexão sem consumir o restante do corpo
+                    throw e;
+                }
+                return null;
+            } catch (IOException e) {
+                throw new ResourceAccessException("Erro ao transmitir imagem " + fileName + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    private static HttpHeaders toHttpHeaders(Header[] upstreamHeaders) {
+        HttpHeaders headers = new HttpHeaders();
+        for (Header header : upstreamHeaders) {
+            headers.add(header.getName(), header.getValue());
+        }
+        return headers;
+    }
+
+    /**
+     * Resposta de erro da transmissão como a exceção que o RestTemplate lançaria (corpo limitado a 8 KB)
+     */
+    private static RestClientException errorResponse(HttpStatusCode status, String reason, HttpHeaders headers,
+                                                     org.apache.hc.core5.http.HttpEntity entity) throws IOException {
+        byte[] body = new byte[0];
+        if (entity != null) {
+            try (InputStream content = entity.getContent()) {
+                body = content.readNBytes(8192);
+            }
         }
+        return status.is4xxClientError()
+            ? HttpClientErrorException.create(status, reason, headers, body, StandardCharsets.UTF_8)
+            : HttpServerErrorException.create(status, reason, headers, body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Recebe uma imagem transmitida por {@link #streamImage}. Falhas ao escrever para o cliente devem
+     * ser lançadas como ImageStreamAbortedException; IOException é tratada como falha da API.
+     */
+    @FunctionalInterface
+    public interface ImageStreamHandler {
+        void handle(HttpStatusCode status, HttpHeaders headers, InputStream body) throws IOException;
     }
 
     /**
@@ -288,12 +474,12 @@ public class ImagesApiClient {
             
             HttpEntity<Map<String, Object>> requestEntity = new HttpEntity<>(request, headers);
 
-            return restTemplate.exchange(
+            return resilience.execute(() -> restTemplate.exchange(
                 url,
                 HttpMethod.POST,
                 requestEntity,
                 new ParameterizedTypeReference<Map<String, Object>>() {}
-            );
+            ));
         } catch (RestClientException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
@@ -309,14 +495,40 @@ public class ImagesApiClient {
             HttpHeaders headers = createAuthenticatedHeaders();
             HttpEntity<Void> requestEntity = new HttpEntity<>(headers);
 
-            return restTemplate.exchange(
+            return resilience.executeRead(() -> restTemplate.exchange(
                 url,
                 HttpMethod.GET,
                 requestEntity,
                 Resource.class
-            );
+            ));
         } catch (RestClientException e) {
             return ResponseEntity.notFound().build();
         }
     }
+
+    /**
+     * Chave do cache de busca por nome
+     */
+    private static final class ImageNameKey {
+        private final Long environmentId;
+        private final String imageName;
+
+        ImageNameKey(Long environmentId, String imageName) {
+            this.environmentId = environmentId;
+            this.imageName = imageName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ImageNameKey)) return false;
+            ImageNameKey that = (ImageNameKey) o;
+            return Objects.equals(environmentId, that.environmentId) && Objects.equals(imageName, that.imageName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(environmentId, imageName);
+        }
+    }
 }
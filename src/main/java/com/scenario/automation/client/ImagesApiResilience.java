@@ -0,0 +1,322 @@
+package com.scenario.automation.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Proteções das chamadas à API de imagens.
+ *
+ * - Health probe em segundo plano: o status fica em cache, sem round trip por requisição.
+ * - Circuit breaker: após failure-threshold falhas seguidas (ou um probe com falha) as chamadas
+ *   falham na hora por open-ms; depois uma chamada de teste decide se o circuito fecha.
+ * - Bulkhead: no máximo max-concurrent chamadas simultâneas; quem espera mais que bulkhead-wait-ms
+ *   é recusado, para que uma API lenta não ocupe todas as threads do Tomcat. Transmissões de
+ *   imagens têm um bulkhead próprio (max-concurrent-streams), já que duram o tempo do download do
+ *   cliente: clientes lentos não tiram vagas das consultas de metadados.
+ * - Retry com jitter para leituras idempotentes, só em falhas transitórias (rede, 5xx).
+ *
+ * Recusas lançam ImagesApiUnavailableException. Respostas 4xx contam como sucesso (a API respondeu).
+ */
+@Component
+public class ImagesApiResilience {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImagesApiResilience.class);
+
+    enum CircuitState { CLOSED, HALF_OPEN, OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final int readAttempts;
+    private final long retryBackoffMillis;
+    private final long bulkheadWaitMillis;
+    private final long healthIntervalMillis;
+
+    private final Semaphore bulkhead;
+    private final int maxConcurrent;
+    private final Semaphore streamBulkhead;
+    private final int maxConcurrentStreams;
+
+    // Estado do circuito (alterado com o lock deste objeto)
+    private CircuitState state = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    // Último resultado do health probe (true até o primeiro probe)
+    private volatile boolean healthy = true;
+
+    private final ScheduledExecutorService healthExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "images-api-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter rejectedOpen;
+    private final Counter rejectedBulkhead;
+    private final Counter retries;
+    private final Counter circuitOpened;
+
+    public ImagesApiResilience(@Value("${app.images-api.resilience.failure-threshold:5}") int failureThreshold,
+                               @Value("${app.images-api.resilience.open-ms:10000}") long openMillis,
+                               @Value("${app.images-api.resilience.max-concurrent:20}") int maxConcurrent,
+                               @Value("${app.images-api.resilience.max-concurrent-streams:20}") int maxConcurrentStreams,
+                               @Value("${app.images-api.resilience.bulkhead-wait-ms:100}") long bulkheadWaitMillis,
+                               @Value("${app.images-api.resilience.read-attempts:3}") int readAttempts,
+                               @Value("${app.images-api.resilience.retry-backoff-ms:100}") long retryBackoffMillis,
+                               @Value("${app.images-api.resilience.health-interval-ms:5000}") long healthIntervalMillis,
+                               MeterRegistry meterRegistry) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.maxConcurrent = maxConcurrent;
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.streamBulkhead = new Semaphore(maxConcurrentStreams);
+        this.bulkheadWaitMillis = bulkheadWaitMillis;
+        this.readAttempts = Math.max(1, readAttempts);
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.healthIntervalMillis = healthIntervalMillis;
+
+        Gauge.builder("images.api.circuit.state", this, resilience -> resilience.getCircuitState().ordinal())
+            .description("Circuito da API de imagens: 0 fechado, 1 meio aberto, 2 aberto")
+            .register(meterRegistry);
+        Gauge.builder("images.api.available", this, resilience -> resilience.isAvailable() ? 1 : 0)
+            .description("API de imagens disponível segundo o último health probe e o circuito")
+            .register(meterRegistry);
+        Gauge.builder("images.api.bulkhead.in.use", this, resilience -> resilience.maxConcurrent - resilience.bulkhead.availablePermits())
+            .description("Chamadas simultâneas em andamento para a API de imagens")
+            .tag("type", "calls")
+            .register(meterRegistry);
+        Gauge.builder("images.api.bulkhead.in.use", this, resilience -> resilience.maxConcurrentStreams - resilience.streamBulkhead.availablePermits())
+            .description("Chamadas simultâneas em andamento para a API de imagens")
+            .tag("type", "streams")
+            .register(meterRegistry);
+        this.rejectedOpen = rejectionCounter(meterRegistry, "circuit_open");
+        this.rejectedBulkhead = rejectionCounter(meterRegistry, "bulkhead_full");
+        this.retries = Counter.builder("images.api.retries")
+            .description("Novas tentativas de leituras após falha transitória")
+            .register(meterRegistry);
+        this.circuitOpened = Counter.builder("images.api.circuit.opened")
+            .description("Vezes em que o circuito da API de imagens abriu")
+            .register(meterRegistry);
+    }
+
+    private static Counter rejectionCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("images.api.calls.rejected")
+            .description("Chamadas à API de imagens recusadas sem ir à rede")
+            .tag("reason", reason)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Define o health probe (true = API respondeu) e o executa periodicamente (health-interval-ms; 0 desliga)
+     */
+    public void setHealthProbe(BooleanSupplier probe) {
+        if (healthIntervalMillis <= 0) {
+            return;
+        }
+        healthExecutor.scheduleWithFixedDelay(() -> runProbe(probe), 0, healthIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void runProbe(BooleanSupplier probe) {
+        boolean up;
+        try {
+            up = probe.getAsBoolean();
+        } catch (Exception e) {
+            up = false;
+        }
+        if (up != healthy) {
+            logger.info("API de imagens {}", up ? "disponível" : "indisponível");
+        }
+        healthy = up;
+
+        synchronized (this) {
+            if (!up && state != CircuitState.OPEN) {
+                open(); // não espera as requisições falharem para começar a falhar rápido
+            } else if (up && state == CircuitState.OPEN) {
+                state = CircuitState.HALF_OPEN; // a próxima chamada já é o teste
+            }
+        }
+    }
+
+    /**
+     * Status em cache: último health probe com sucesso e circuito não aberto
+     */
+    public boolean isAvailable() {
+        return healthy && getCircuitState() != CircuitState.OPEN;
+    }
+
+    synchronized CircuitState getCircuitState() {
+        return state;
+    }
+
+    /**
+     * Executa uma chamada com circuit breaker e bulkhead, sem retry (escritas)
+     */
+    public <T> T execute(Supplier<T> call) {
+        return execute(bulkhead, call);
+    }
+
+    /**
+     * Executa uma transmissão de imagem: como {@link #execute}, no bulkhead de transmissões.
+     * {@link ImageStreamAbortedException} (cliente desconectou) não conta como falha da API.
+     */
+    public <T> T executeStream(Supplier<T> call) {
+        return execute(streamBulkhead, call);
+    }
+
+    private <T> T execute(Semaphore bulkhead, Supplier<T> call) {
+        boolean trial = acquirePermission();
+        try {
+            if (!bulkhead.tryAcquire(bulkheadWaitMillis, TimeUnit.MILLISECONDS)) {
+                rejectedBulkhead.increment();
+                releaseTrial(trial);
+                throw new ImagesApiUnavailableException("Limite de chamadas simultâneas à API de imagens atingido");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            releaseTrial(trial);
+            throw new ImagesApiUnavailableException("Interrompido aguardando a API de imagens");
+        }
+
+        try {
+            T result = call.get();
+            recordSuccess();
+            return result;
+        } catch (ImageStreamAbortedException e) {
+            recordSuccess(); // a API respondeu; quem saiu foi o cliente
+            throw e;
+        } catch (RestClientException e) {
+            if (isTransient(e)) {
+                recordFailure();
+            } else {
+                recordSuccess();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            recordFailure();
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Executa uma leitura idempotente: como {@link #execute}, com novas tentativas em falhas
+     * transitórias (backoff exponencial com jitter). Circuito aberto ou bulkhead cheio não são repetidos.
+     */
+    public <T> T executeRead(Supplier<T> call) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return execute(call);
+            } catch (ImagesApiUnavailableException e) {
+                throw e;
+            } catch (RestClientException e) {
+                if (attempt >= readAttempts || !isTransient(e)) {
+                    throw e;
+                }
+                retries.increment();
+                sleepBeforeRetry(attempt);
+            }
+        }
+    }
+
+    private void sleepBeforeRetry(int attempt) {
+        // Full jitter: espera aleatória entre 0 e backoff * 2^(tentativa - 1)
+        long maxDelay = retryBackoffMillis << Math.min(attempt - 1, 10);
+        long delay = maxDelay > 0 ? ThreadLocalRandom.current().nextLong(maxDelay + 1) : 0;
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ImagesApiUnavailableException("Interrompido aguardando nova tentativa na API de imagens");
+        }
+    }
+
+    /**
+     * Falhas que indicam API fora do ar ou sobrecarregada (rede, timeout, 5xx)
+     */
+    private static boolean isTransient(RestClientException e) {
+        return e instanceof ResourceAccessException || e instanceof HttpServerErrorException;
+    }
+
+    /**
+     * Libera a chamada ou lança ImagesApiUnavailableException
+     *
+     * @return true se a chamada é o teste do circuito meio aberto
+     */
+    private synchronized boolean acquirePermission() {
+        if (state == CircuitState.CLOSED) {
+            return false;
+        }
+        if (state == CircuitState.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                rejectedOpen.increment();
+                throw new ImagesApiUnavailableException("API de imagens não está disponível no momento");
+            }
+            state = CircuitState.HALF_OPEN;
+        }
+        // Meio aberto: uma única chamada de teste por vez
+        if (trialInFlight) {
+            rejectedOpen.increment();
+            throw new ImagesApiUnavailableException("API de imagens não está disponível no momento");
+        }
+        trialInFlight = true;
+        return true;
+    }
+
+    private synchronized void releaseTrial(boolean trial) {
+        if (trial) {
+            trialInFlight = false;
+        }
+    }
+
+    private synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        if (state != CircuitState.CLOSED) {
+            logger.info("Circuito da API de imagens fechado");
+            state = CircuitState.CLOSED;
+        }
+    }
+
+    private synchronized void recordFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (state == CircuitState.HALF_OPEN || (state == CircuitState.CLOSED && consecutiveFailures >= failureThreshold)) {
+            open();
+        }
+    }
+
+    /**
+     * Abre o circuito (chamado com o lock deste objeto)
+     */
+    private void open() {
+        state = CircuitState.OPEN;
+        openedAt = System.nanoTime();
+        trialInFlight = false;
+        circuitOpened.increment();
+        logger.warn("Circuito da API de imagens aberto por {} ms", TimeUnit.NANOSECONDS.toMillis(openNanos));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        healthExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,14 @@
+package com.scenario.automation.client;
+
+import org.springframework.web.client.RestClientException;
+
+/**
+ * Chamada à API de imagens recusada sem ir à rede: circuito aberto ou limite de chamadas simultâneas.
+ * É uma RestClientException, então os métodos do ImagesApiClient aplicam o mesmo fallback de uma falha de rede.
+ */
+public class ImagesApiUnavailableException extends RestClientException {
+
+    public ImagesApiUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,160 @@
+package com.scenario.automation.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Cache limitado com expiração: cada item vale por ttl e, com o cache cheio, sai o usado há mais tempo.
+ *
+ * O carregamento acontece fora do lock (uma chamada lenta não trava as leituras de outras chaves).
+ * Métricas no formato do cache do Spring: cache.gets (result=hit|miss), cache.evictions e cache.size,
+ * com a tag cache=<nome>. ttl ou capacidade 0 desligam o cache (toda leitura vai ao loader).
+ */
+public class TtlCache<K, V> {
+
+    private final long ttlNanos;
+    private final int maxEntries;
+
+    // Ordem de acesso: o primeiro item é o usado há mais tempo
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Incrementado a cada invalidação: um carregamento iniciado antes dela não é guardado
+    private long generation;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter expired;
+    private final Counter evictedBySize;
+    private final Counter invalidated;
+
+    public TtlCache(String name, long ttlMillis, int maxEntries, MeterRegistry meterRegistry) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+        this.hits = getsCounter(meterRegistry, name, "hit");
+        this.misses = getsCounter(meterRegistry, name, "miss");
+        this.expired = evictionCounter(meterRegistry, name, "expired");
+        this.evictedBySize = evictionCounter(meterRegistry, name, "size");
+        this.invalidated = evictionCounter(meterRegistry, name, "invalidated");
+        Gauge.builder("cache.size", this, TtlCache::size)
+            .description("Itens no cache")
+            .tag("cache", name)
+            .register(meterRegistry);
+    }
+
+    private static Counter getsCounter(MeterRegistry meterRegistry, String name, String result) {
+        return Counter.builder("cache.gets")
+            .description("Leituras do cache")
+            .tag("cache", name)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    private static Counter evictionCounter(MeterRegistry meterRegistry, String name, String cause) {
+        return Counter.builder("cache.evictions")
+            .description("Itens removidos do cache")
+            .tag("cache", name)
+            .tag("cause", cause)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Valor da chave, carregado pelo loader se ausente ou expirado.
+     * Um loader que devolve null (ex.: erro na API) não é guardado: a próxima leitura tenta de novo.
+     */
+    public V get(K key, Function<K, V> loader) {
+        if (ttlNanos <= 0 || maxEntries <= 0) {
+            return loader.apply(key);
+        }
+
+        long now = System.nanoTime();
+        long loadGeneration;
+        synchronized (this) {
+            loadGeneration = generation;
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (now - entry.loadedAt < ttlNanos) {
+                    hits.increment();
+                    return entry.value;
+                }
+                entries.remove(key);
+                expired.increment();
+            }
+        }
+
+        misses.increment();
+        V value = loader.apply(key);
+        if (value != null) {
+            put(key, value, now, loadGeneration);
+        }
+        return value;
+    }
+
+    private synchronized void put(K key, V value, long loadedAt, long loadGeneration) {
+        if (generation != loadGeneration) {
+            return; // invalidado durante o carregamento: o valor pode estar desatualizado
+        }
+        entries.put(key, new Entry<>(value, loadedAt));
+        Iterator<Entry<V>> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictedBySize.increment();
+        }
+    }
+
+    /**
+     * Remove a chave
+     */
+    public synchronized void invalidate(K key) {
+        generation++;
+        if (entries.remove(key) != null) {
+            invalidated.increment();
+        }
+    }
+
+    /**
+     * Remove os itens que satisfazem o predicado (chave, valor)
+     */
+    public synchronized void invalidateIf(BiPredicate<K, V> predicate) {
+        generation++;
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = iterator.next();
+            if (predicate.test(entry.getKey(), entry.getValue().value)) {
+                iterator.remove();
+                invalidated.increment();
+            }
+        }
+    }
+
+    /**
+     * Remove todos os itens
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        invalidated.increment(entries.size());
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long loadedAt;
+
+        Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
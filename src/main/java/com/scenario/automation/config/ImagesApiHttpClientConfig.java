@@ -0,0 +1,128 @@
+package com.scenario.automation.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * HTTP client da API de imagens: conexões keep-alive num pool limitado (total e por rota),
+ * timeouts de conexão, leitura e espera por conexão livre, e remoção de conexões ociosas.
+ *
+ * Transmissões de imagens usam um pool próprio, com max-concurrent-streams conexões: cada uma
+ * fica presa pelo tempo do download do cliente e não pode tirar conexões dos metadados e do
+ * health probe. O pool principal precisa de ao menos max-concurrent + 1 conexões por rota
+ * (chamadas do bulkhead + health probe); a aplicação não sobe com menos.
+ *
+ * Métricas dos pools (httpcomponents.httpclient.pool.*, tag httpclient=images-api ou
+ * images-api-streams): conexões em uso/disponíveis e requisições esperando conexão, que indicam saturação.
+ */
+@Configuration
+public class ImagesApiHttpClientConfig {
+
+    @Value("${app.images-api.http.connect-timeout-ms:2000}")
+    private long connectTimeoutMillis;
+
+    @Value("${app.images-api.http.read-timeout-ms:10000}")
+    private long readTimeoutMillis;
+
+    @Value("${app.images-api.http.connection-ttl-ms:300000}")
+    private long connectionTtlMillis;
+
+    @Value("${app.images-api.http.pool-timeout-ms:2000}")
+    private long poolTimeoutMillis;
+
+    @Value("${app.images-api.http.idle-timeout-ms:30000}")
+    private long idleTimeoutMillis;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager imagesApiConnectionManager(
+            @Value("${app.images-api.http.max-connections:50}") int maxConnections,
+            @Value("${app.images-api.http.max-connections-per-route:25}") int maxConnectionsPerRoute,
+            @Value("${app.images-api.resilience.max-concurrent:20}") int maxConcurrent,
+            MeterRegistry meterRegistry) {
+        int required = maxConcurrent + 1;
+        if (Math.min(maxConnections, maxConnectionsPerRoute) < required) {
+            throw new IllegalStateException("app.images-api.http.max-connections e max-connections-per-route devem ser "
+                + "pelo menos app.images-api.resilience.max-concurrent + 1 (" + required + ")");
+        }
+        return connectionManager(maxConnections, maxConnectionsPerRoute, "images-api", meterRegistry);
+    }
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager imagesApiStreamConnectionManager(
+            @Value("${app.images-api.resilience.max-concurrent-streams:20}") int maxConcurrentStreams,
+            MeterRegistry meterRegistry) {
+        // Uma conexão por vaga do bulkhead de transmissões: quem tem vaga não espera conexão
+        return connectionManager(maxConcurrentStreams, maxConcurrentStreams, "images-api-streams", meterRegistry);
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient imagesApiHttpClient(
+            @Qualifier("imagesApiConnectionManager") PoolingHttpClientConnectionManager connectionManager) {
+        return httpClient(connectionManager);
+    }
+
+    /**
+     * HTTP client das transmissões de imagens (ImagesApiClient.streamImage)
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient imagesApiStreamHttpClient(
+            @Qualifier("imagesApiStreamConnectionManager") PoolingHttpClientConnectionManager connectionManager) {
+        return httpClient(connectionManager);
+    }
+
+    /**
+     * RestTemplate do ImagesApiClient (pelo RestTemplateBuilder, para manter as métricas http.client.requests)
+     */
+    @Bean
+    public RestTemplate imagesApiRestTemplate(RestTemplateBuilder restTemplateBuilder,
+                                              @Qualifier("imagesApiHttpClient") CloseableHttpClient httpClient) {
+        return restTemplateBuilder
+            .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClient))
+            .build();
+    }
+
+    private PoolingHttpClientConnectionManager connectionManager(int maxConnections, int maxConnectionsPerRoute,
+                                                                 String name, MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxConnections)
+            .setMaxConnPerRoute(maxConnectionsPerRoute)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMillis))
+                .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMillis))
+                .setTimeToLive(TimeValue.ofMilliseconds(connectionTtlMillis))
+                // Conexão parada há mais de 2 s é validada antes de reutilizada (o servidor pode tê-la fechado)
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build())
+            .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, name).bindTo(meterRegistry);
+        return connectionManager;
+    }
+
+    private CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager) {
+        return HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                // Pool cheio: falha depois de esperar pool-timeout, em vez de prender a thread indefinidamente
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolTimeoutMillis))
+                .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMillis))
+                .build())
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.ofMilliseconds(idleTimeoutMillis))
+            .build();
+    }
+}
@@ -0,0 +1,23 @@
+package com.scenario.automation.config;
+
+import com.scenario.automation.websocket.LuminariaWebSocketHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    @Autowired
+    private LuminariaWebSocketHandler luminariaWebSocketHandler;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        // Handshake autenticado pelo JwtAuthenticationFilter, como as demais rotas da automação
+        registry.addHandler(luminariaWebSocketHandler, "/api/luminaires/automation/ws")
+            .setAllowedOriginPatterns("*");
+    }
+}
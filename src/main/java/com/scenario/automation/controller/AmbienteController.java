@@ -1,6 +1,8 @@
 package com.scenario.automation.controller;
 
+import com.scenario.automation.client.ImageStreamAbortedException;
 import com.scenario.automation.client.ImagesApiClient;
+import com.scenario.automation.client.ImagesApiUnavailableException;
 import com.scenario.automation.dto.images.EnvironmentImageDto;
 import com.scenario.automation.model.Ambiente;
 import com.scenario.automation.service.AmbienteImageService;
@@ -16,9 +18,14 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.multipart.MultipartFile;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -30,6 +37,9 @@ import java.util.Optional;
 @CrossOrigin(origins = "*")
 public class AmbienteController {
 
+    // Buffer da cópia da imagem da Images API para o cliente (memória fixa por requisição)
+    private static final int IMAGE_PROXY_BUFFER_SIZE = 8192;
+
     @Autowired
     private AmbienteService ambienteService;
 
@@ -442,7 +452,10 @@ public class AmbienteController {
     @GetMapping("/{id}/serve-image")
     public ResponseEntity<?> serveEnvironmentImage(
             @PathVariable Long id,
-            @RequestParam("token") String token) {
+            @RequestParam("token") String token,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            HttpServletResponse servletResponse) {
         try {
             System.out.println("🖼️ Tentativa de acesso à imagem do ambiente " + id);
             System.out.println("🔑 Token recebido: " + token.substring(0, Math.min(20, token.length())) + "...");
@@ -483,8 +496,9 @@ public class AmbienteController {
                 // Para fins de teste, vamos tentar servir uma imagem padrão que existe
                 System.out.println("🔄 Tentando servir imagem padrão do disco...");
                 try {
-                    ResponseEntity<Resource> response = proxyImageRequest("20250910_151045_4334a1f6.jpg");
-                    System.out.println("📁 Resposta da imagem padrão: " + response.getStatusCode());
+                    ResponseEntity<Resource> response =
+                        proxyImageRequest("20250910_151045_4334a1f6.jpg", range, ifRange, servletResponse);
+                    System.out.println("📁 Resposta da imagem padrão: " + describeProxyResponse(response, servletResponse));
                     return response;
                 } catch (Exception e) {
                     System.out.println("❌ Falha ao servir imagem padrão: " + e.getMessage());
@@ -498,8 +512,9 @@ public class AmbienteController {
 
             System.out.println("📸 Servindo imagem: " + images.get(0).getFileName());
             // Fazer proxy para a Images API
-            ResponseEntity<Resource> response = proxyImageRequest(images.get(0).getFileName());
-            System.out.println("🔄 Resposta do proxy: " + response.getStatusCode());
+            ResponseEntity<Resource> response =
+                proxyImageRequest(images.get(0).getFileName(), range, ifRange, servletResponse);
+            System.out.println("🔄 Resposta do proxy: " + describeProxyResponse(response, servletResponse));
             return response;
 
         } catch (Exception e) {
@@ -562,7 +577,10 @@ public class AmbienteController {
     public ResponseEntity<Resource> serveSpecificEnvironmentImage(
             @PathVariable Long id,
             @PathVariable String imageName,
-            @RequestParam("token") String token) {
+            @RequestParam("token") String token,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            HttpServletResponse servletResponse) {
         try {
             // Validar token para esta imagem específica
             if (!imageDownloadService.validateDownloadToken(token, id, imageName)) {
@@ -581,7 +599,7 @@ public class AmbienteController {
             }
 
             // Fazer proxy para a Images API
-            return proxyImageRequest(image.getFileName());
+            return proxyImageRequest(image.getFileName(), range, ifRange, servletResponse);
 
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
@@ -590,55 +608,124 @@ public class AmbienteController {
 
     /**
      * Método auxiliar para fazer proxy da requisição para a Images API
+     *
+     * O corpo é copiado da resposta da Images API direto para a saída do servlet com um buffer fixo
+     * (sem carregar a imagem em memória). Range/If-Range são repassados: a resposta pode ser 206 com
+     * Content-Range. Devolve null quando a imagem foi transmitida (resposta já escrita) ou a resposta
+     * de erro a enviar.
      */
-    private ResponseEntity<Resource> proxyImageRequest(String fileName) {
+    private ResponseEntity<Resource> proxyImageRequest(String fileName, String range, String ifRange,
+                                                       HttpServletResponse servletResponse) {
         try {
             System.out.println("🔄 Fazendo proxy para imagem: " + fileName);
-            
-            // Fazer chamada para a Images API usando o client
-            ResponseEntity<Resource> response = imagesApiClient.getImageAsResource(fileName);
-            
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                System.out.println("✅ Imagem encontrada na Images API");
-                
-                // Determinar Content-Type baseado na extensão do arquivo
-                String contentType = "application/octet-stream"; // default
-                String lowerFileName = fileName.toLowerCase();
-                if (lowerFileName.endsWith(".jpg") || lowerFileName.endsWith(".jpeg")) {
-                    contentType = "image/jpeg";
-                } else if (lowerFileName.endsWith(".png")) {
-                    contentType = "image/png";
-                } else if (lowerFileName.endsWith(".gif")) {
-                    contentType = "image/gif";
-                } else if (lowerFileName.endsWith(".webp")) {
-                    contentType = "image/webp";
-                }
-                
-                System.out.println("📋 Content-Type definido: " + contentType);
-                
-                // Criar headers com Content-Type correto e CORS
-                HttpHeaders headers = new HttpHeaders();
-                headers.setContentType(MediaType.parseMediaType(contentType));
-                headers.set("Access-Control-Allow-Origin", "*");
-                headers.set("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-                headers.set("Access-Control-Allow-Headers", "*");
-                headers.setCacheControl("max-age=3600"); // Cache por 1 hora
-                
-                return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(response.getBody());
-            } else {
-                System.out.println("❌ Imagem não encontrada na Images API: " + response.getStatusCode());
-                return ResponseEntity.notFound().build();
+            imagesApiClient.streamImage(fileName, range, ifRange, (status, upstreamHeaders, body) ->
+                copyImageResponse(fileName, status.value(), upstreamHeaders, body, servletResponse));
+            return null;
+        } catch (HttpStatusCodeException e) {
+            // 404, 416 (Range fora do arquivo) etc.: repassa o status da Images API
+            System.out.println("❌ Imagem não disponível na Images API: " + e.getStatusCode());
+            HttpHeaders headers = new HttpHeaders();
+            String contentRange = e.getResponseHeaders() != null
+                ? e.getResponseHeaders().getFirst(HttpHeaders.CONTENT_RANGE) : null;
+            if (contentRange != null) {
+                headers.set(HttpHeaders.CONTENT_RANGE, contentRange);
             }
-            
+            HttpStatus status = e.getStatusCode().value() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()
+                ? HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE : HttpStatus.NOT_FOUND;
+            return ResponseEntity.status(status).headers(headers).build();
+        } catch (ImageStreamAbortedException e) {
+            // Cliente desconectou: a resposta da Images API foi abortada, não é falha dela
+            System.out.println("⚠️ Cliente encerrou a conexão durante o envio da imagem " + fileName);
+            return null;
+        } catch (ImagesApiUnavailableException e) {
+            // Circuito aberto ou limite de chamadas simultâneas: nada foi enviado ao cliente
+            System.out.println("❌ Images API indisponível: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             System.out.println("❌ Erro no proxy da imagem: " + e.getMessage());
-            e.printStackTrace();
+            if (servletResponse.isCommitted()) {
+                return null; // parte da imagem já foi enviada: a conexão é encerrada
+            }
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    /**
+     * Escreve status, headers e corpo de uma imagem recebida da Images API na resposta do servlet.
+     * Falha ao escrever para o cliente (inclusive no flush) lança ImageStreamAbortedException.
+     */
+    private void copyImageResponse(String fileName, int status, HttpHeaders upstreamHeaders, InputStream body,
+                                   HttpServletResponse servletResponse) throws IOException {
+        servletResponse.setStatus(status);
+
+        MediaType upstreamType = upstreamHeaders.getContentType();
+        String contentType = upstreamType != null && !MediaType.APPLICATION_OCTET_STREAM.equalsTypeAndSubtype(upstreamType)
+            ? upstreamType.toString() : contentTypeFor(fileName);
+        servletResponse.setContentType(contentType);
+        System.out.println("📋 Content-Type definido: " + contentType);
+
+        // Tamanho, faixa e validadores vêm da Images API (sem Content-Length a resposta sai em chunks)
+        long contentLength = upstreamHeaders.getContentLength();
+        if (contentLength >= 0) {
+            servletResponse.setContentLengthLong(contentLength);
+        }
+        for (String header : new String[]{HttpHeaders.CONTENT_RANGE, HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED}) {
+            String value = upstreamHeaders.getFirst(header);
+            if (value != null) {
+                servletResponse.setHeader(header, value);
+            }
+        }
+        // Só anuncia Range se a Images API anunciar: sem ela, um Range seria respondido com 200 e a imagem inteira
+        String acceptRanges = upstreamHeaders.getFirst(HttpHeaders.ACCEPT_RANGES);
+        if (acceptRanges != null) {
+            servletResponse.setHeader(HttpHeaders.ACCEPT_RANGES, acceptRanges);
+        }
+
+        // CORS e cache
+        servletResponse.setHeader("Access-Control-Allow-Origin", "*");
+        servletResponse.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
+        servletResponse.setHeader("Access-Control-Allow-Headers", "*");
+        servletResponse.setHeader(HttpHeaders.CACHE_CONTROL, "max-age=3600"); // Cache por 1 hora
+
+        byte[] buffer = new byte[IMAGE_PROXY_BUFFER_SIZE];
+        OutputStream out = servletResponse.getOutputStream();
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            try {
+                out.write(buffer, 0, read);
+            } catch (IOException e) {
+                throw new ImageStreamAbortedException(e);
+            }
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new ImageStreamAbortedException(e);
+        }
+        System.out.println("✅ Imagem transmitida da Images API (status " + status + ")");
+    }
+
+    /**
+     * Content-Type pela extensão do arquivo, quando a Images API não informa
+     */
+    private static String contentTypeFor(String fileName) {
+        String lowerFileName = fileName.toLowerCase();
+        if (lowerFileName.endsWith(".jpg") || lowerFileName.endsWith(".jpeg")) {
+            return "image/jpeg";
+        } else if (lowerFileName.endsWith(".png")) {
+            return "image/png";
+        } else if (lowerFileName.endsWith(".gif")) {
+            return "image/gif";
+        } else if (lowerFileName.endsWith(".webp")) {
+            return "image/webp";
+        }
+        return "application/octet-stream";
+    }
+
+    private static String describeProxyResponse(ResponseEntity<Resource> response, HttpServletResponse servletResponse) {
+        return response != null ? response.getStatusCode().toString() : String.valueOf(servletResponse.getStatus());
+    }
+
     /**
      * ENDPOINT DE TESTE - Validar segurança de tokens
      */
@@ -1,14 +1,30 @@
 package com.scenario.automation.controller;
 
+import com.scenario.automation.dto.BulkStateRequest;
+import com.scenario.automation.dto.LevelRequest;
 import com.scenario.automation.service.LuminariaStateService;
+import com.scenario.automation.service.LuminariaStateService.StateChange;
+import com.scenario.automation.service.LuminariaTopologyService;
+import com.scenario.automation.service.sse.SseClient;
+import com.scenario.automation.service.sse.SseSnapshotFormat;
+import com.scenario.automation.service.sse.SseSubscription;
+import com.scenario.automation.service.state.LuminariaNotFoundException;
+import com.scenario.automation.service.state.LuminariaStateTable;
+import com.scenario.automation.service.state.StaleVersionException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import jakarta.validation.Valid;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/luminaires/automation")
@@ -18,34 +34,67 @@ public class LuminariaAutomationController {
     @Autowired
     private LuminariaStateService luminariaStateService;
 
+    @Autowired
+    private LuminariaTopologyService luminariaTopologyService;
+
     /**
      * Endpoint SSE para receber atualizações em tempo real do estado das luminárias
      * Suporta autenticação via query parameter: ?token=<jwt>
      * 
+     * Filtros opcionais (sem filtro recebe todas as luminárias):
+     * ?environmentIds=1,2&subambientes=Térreo&luminariaIds=10,11
+     * 
+     * Retomada: o header Last-Event-ID (enviado pelo EventSource ao reconectar) ou
+     * ?lastEventId= faz o servidor reenviar só os eventos perdidos, quando ainda disponíveis.
+     * 
+     * Snapshot: ?snapshot=compact (faixas de ids + bitset em base64) ou compact-gzip; padrão json.
+     * Com ?since=<id de um initial_state/state_diff anterior> o cliente recebe só o diff (state_diff).
+     * 
      * Eventos enviados:
-     * - initial_state: Estado inicial de todas as luminárias
-     * - state_change: Mudança de estado de uma luminária específica
+     * - initial_state: Estado inicial das luminárias da inscrição (levels: brilho/cor fora do padrão)
+     * - state_diff: Luminárias alteradas desde o snapshot informado em since
+     * - state_change: Mudança de estado de uma luminária específica (com versão, brilho e cor)
+     * - state_changes: Várias mudanças aplicadas de uma vez (comando em lote, passo de transições)
+     * - aggregates: Luminárias ligadas/total dos ambientes e subambientes da inscrição (na conexão e a cada mudança)
      */
     @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter streamLuminariaEvents() {
-        return luminariaStateService.addSseClient();
+    public SseEmitter streamLuminariaEvents(
+            @RequestParam(value = "environmentIds", required = false) List<Long> environmentIds,
+            @RequestParam(value = "subambientes", required = false) List<String> subambientes,
+            @RequestParam(value = "luminariaIds", required = false) List<Long> luminariaIds,
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam,
+            @RequestParam(value = "snapshot", required = false) String snapshot,
+            @RequestParam(value = "since", required = false) String since,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader) {
+        String lastEventId = lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam;
+        return luminariaStateService.addSseClient(
+            SseSubscription.of(environmentIds, subambientes, luminariaIds), lastEventId,
+            SseSnapshotFormat.of(snapshot), since);
     }
 
     /**
      * Liga uma luminária
+     * Com If-Match: "<versão>" o comando só é aplicado se a luminária ainda estiver nessa versão (senão 412)
      */
     @PostMapping("/{id}/turn-on")
-    public ResponseEntity<Map<String, Object>> turnOnLuminaria(@PathVariable Long id) {
+    public ResponseEntity<Map<String, Object>> turnOnLuminaria(
+            @PathVariable Long id,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         try {
-            luminariaStateService.turnOnLuminaria(id);
+            StateChange state = luminariaStateService.setLuminariaState(id, true, parseVersion(ifMatch));
             
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Luminária ligada com sucesso");
             response.put("luminariaId", id);
             response.put("isOn", true);
+            response.put("version", state.getVersion());
             response.put("timestamp", java.time.LocalDateTime.now());
             
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().eTag(String.valueOf(state.getVersion())).body(response);
+        } catch (StaleVersionException e) {
+            return preconditionFailed(e);
+        } catch (LuminariaNotFoundException e) {
+            return notFound(e);
         } catch (Exception e) {
             Map<String, Object> error = new HashMap<>();
             error.put("error", "Erro ao ligar luminária");
@@ -56,19 +105,27 @@ public class LuminariaAutomationController {
 
     /**
      * Desliga uma luminária
+     * Aceita If-Match como o turn-on
      */
     @PostMapping("/{id}/turn-off")
-    public ResponseEntity<Map<String, Object>> turnOffLuminaria(@PathVariable Long id) {
+    public ResponseEntity<Map<String, Object>> turnOffLuminaria(
+            @PathVariable Long id,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         try {
-            luminariaStateService.turnOffLuminaria(id);
+            StateChange state = luminariaStateService.setLuminariaState(id, false, parseVersion(ifMatch));
             
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Luminária desligada com sucesso");
             response.put("luminariaId", id);
             response.put("isOn", false);
+            response.put("version", state.getVersion());
             response.put("timestamp", java.time.LocalDateTime.now());
             
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().eTag(String.valueOf(state.getVersion())).body(response);
+        } catch (StaleVersionException e) {
+            return preconditionFailed(e);
+        } catch (LuminariaNotFoundException e) {
+            return notFound(e);
         } catch (Exception e) {
             Map<String, Object> error = new HashMap<>();
             error.put("error", "Erro ao desligar luminária");
@@ -79,19 +136,28 @@ public class LuminariaAutomationController {
 
     /**
      * Alterna o estado de uma luminária (toggle)
+     * Aceita If-Match como o turn-on
      */
     @PostMapping("/{id}/toggle")
-    public ResponseEntity<Map<String, Object>> toggleLuminaria(@PathVariable Long id) {
+    public ResponseEntity<Map<String, Object>> toggleLuminaria(
+            @PathVariable Long id,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         try {
-            boolean newState = luminariaStateService.toggleLuminaria(id);
+            StateChange state = luminariaStateService.toggleLuminaria(id, parseVersion(ifMatch));
+            boolean newState = state.getIsOn();
             
             Map<String, Object> response = new HashMap<>();
             response.put("message", newState ? "Luminária ligada" : "Luminária desligada");
             response.put("luminariaId", id);
             response.put("isOn", newState);
+            response.put("version", state.getVersion());
             response.put("timestamp", java.time.LocalDateTime.now());
             
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().eTag(String.valueOf(state.getVersion())).body(response);
+        } catch (StaleVersionException e) {
+            return preconditionFailed(e);
+        } catch (LuminariaNotFoundException e) {
+            return notFound(e);
         } catch (Exception e) {
             Map<String, Object> error = new HashMap<>();
             error.put("error", "Erro ao alternar luminária");
@@ -100,19 +166,133 @@ public class LuminariaAutomationController {
         }
     }
 
+    /**
+     * Define brilho e/ou cor de uma luminária, com transição opcional (transitionMs)
+     * Brilho maior que zero liga a luminária; zero a desliga. Aceita If-Match como o turn-on
+     */
+    @PostMapping("/{id}/level")
+    public ResponseEntity<Map<String, Object>> setLuminariaLevel(
+            @PathVariable Long id,
+            @Valid @RequestBody LevelRequest request,
+            @RequestHeader(value = "If-Match", required = false) String ifMatch) {
+        try {
+            if (!request.hasLevel()) {
+                Map<String, Object> error = new HashMap<>();
+                error.put("error", "Nenhum ajuste informado");
+                error.put("message", "Informe brightness e/ou color");
+                return ResponseEntity.badRequest().body(error);
+            }
+            
+            long transitionMs = request.getTransitionMs() != null ? request.getTransitionMs() : 0;
+            StateChange state = luminariaStateService.setLuminariaLevel(
+                id,
+                request.getBrightness(),
+                request.getColor() != null ? LuminariaStateTable.parseColor(request.getColor()) : null,
+                transitionMs,
+                parseVersion(ifMatch));
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", transitionMs > 0 ? "Transição iniciada" : "Luminária ajustada com sucesso");
+            response.put("luminariaId", id);
+            response.put("isOn", state.getIsOn());
+            response.put("brightness", state.getBrightness());
+            response.put("color", state.getColor());
+            response.put("version", state.getVersion());
+            response.put("transitionMs", transitionMs);
+            response.put("timestamp", java.time.LocalDateTime.now());
+            
+            return ResponseEntity.ok().eTag(String.valueOf(state.getVersion())).body(response);
+        } catch (StaleVersionException e) {
+            return preconditionFailed(e);
+        } catch (LuminariaNotFoundException e) {
+            return notFound(e);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Erro ao ajustar luminária");
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    /**
+     * Aplica o mesmo estado a várias luminárias numa única requisição
+     * Seletores (somados): luminariaIds, environmentId e/ou subambiente
+     * Gera um único evento SSE state_changes com todas as mudanças
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<Map<String, Object>> setLuminariaStates(@Valid @RequestBody BulkStateRequest request) {
+        try {
+            if (!request.hasSelector()) {
+                Map<String, Object> error = new HashMap<>();
+                error.put("error", "Nenhuma luminária selecionada");
+                error.put("message", "Informe luminariaIds, environmentId ou subambiente");
+                return ResponseEntity.badRequest().body(error);
+            }
+            
+            Set<Long> luminariaIds = new LinkedHashSet<>();
+            if (request.getLuminariaIds() != null) {
+                luminariaIds.addAll(request.getLuminariaIds());
+                luminariaIds.remove(null);
+            }
+            if (request.getEnvironmentId() != null) {
+                luminariaIds.addAll(luminariaTopologyService.getLuminariaIds(request.getEnvironmentId()));
+            }
+            if (request.getSubambiente() != null) {
+                luminariaIds.addAll(luminariaTopologyService.getLuminariaIdsBySubambiente(request.getSubambiente()));
+            }
+            
+            Set<Long> unknownIds = new LinkedHashSet<>();
+            for (Long luminariaId : luminariaIds) {
+                if (!luminariaTopologyService.containsLuminaria(luminariaId)) {
+                    unknownIds.add(luminariaId);
+                }
+            }
+            luminariaIds.removeAll(unknownIds);
+            
+            List<LuminariaStateService.StateChange> changes =
+                luminariaStateService.setLuminariaStates(luminariaIds, request.getIsOn());
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", request.getIsOn() ? "Luminárias ligadas com sucesso" : "Luminárias desligadas com sucesso");
+            response.put("isOn", request.getIsOn());
+            response.put("luminariaIds", luminariaIds);
+            response.put("requested", luminariaIds.size());
+            response.put("changed", changes.size());
+            if (!unknownIds.isEmpty()) {
+                response.put("unknownLuminariaIds", unknownIds);
+            }
+            response.put("timestamp", java.time.LocalDateTime.now());
+            
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Erro ao aplicar comando em lote");
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
     /**
      * Obtém o estado atual de uma luminária
      */
     @GetMapping("/{id}/state")
     public ResponseEntity<Map<String, Object>> getLuminariaState(@PathVariable Long id) {
-        boolean isOn = luminariaStateService.getLuminariaState(id);
+        StateChange state;
+        try {
+            state = luminariaStateService.getVersionedState(id);
+        } catch (LuminariaNotFoundException e) {
+            return notFound(e);
+        }
         
         Map<String, Object> response = new HashMap<>();
         response.put("luminariaId", id);
-        response.put("isOn", isOn);
+        response.put("isOn", state.getIsOn());
+        response.put("brightness", state.getBrightness());
+        response.put("color", state.getColor());
+        response.put("version", state.getVersion());
         response.put("timestamp", java.time.LocalDateTime.now());
         
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok().eTag(String.valueOf(state.getVersion())).body(response);
     }
 
     /**
@@ -128,4 +308,82 @@ public class LuminariaAutomationController {
         
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Luminárias ligadas e total por ambiente e por subambiente ("N de M ligadas").
+     * Contadores mantidos a cada mudança publicada: não percorre as luminárias.
+     */
+    @GetMapping("/aggregates")
+    public ResponseEntity<LuminariaStateService.AggregatesEvent> getAggregates() {
+        return ResponseEntity.ok(luminariaStateService.getAggregates());
+    }
+
+    /**
+     * Saúde das conexões de eventos (SSE e WebSocket) abertas nesta instância
+     * Conexões com escrita parada ou bytes pendentes acima dos limites são removidas automaticamente
+     */
+    @GetMapping("/connections")
+    public ResponseEntity<Map<String, Object>> getConnections() {
+        List<Map<String, Object>> connections = new ArrayList<>();
+        for (SseClient client : luminariaStateService.getClients()) {
+            Map<String, Object> connection = new HashMap<>();
+            connection.put("id", client.getId());
+            connection.put("connectedMs", client.getConnectedMillis());
+            connection.put("queueSize", client.getQueueSize());
+            connection.put("pendingBytes", client.getPendingBytes());
+            connection.put("framesSent", client.getFramesSent());
+            connection.put("bytesSent", client.getBytesSent());
+            connection.put("avgWriteMs", client.getAverageWriteMillis());
+            connection.put("maxWriteMs", client.getMaxWriteMillis());
+            connection.put("writeInProgressMs", client.getWriteInProgressMillis());
+            connection.put("idleMs", client.getIdleMillis());
+            connections.add(connection);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("count", connections.size());
+        response.put("evicted", luminariaStateService.getEvictedClientCount());
+        response.put("connections", connections);
+        response.put("timestamp", java.time.LocalDateTime.now());
+        
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Versão esperada do header If-Match ("3", 3 ou W/"3"); null se ausente ou "*"
+     */
+    private Long parseVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String value = ifMatch.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        value = value.replace("\"", "");
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("If-Match inválido: " + ifMatch);
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> notFound(LuminariaNotFoundException e) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", "Luminária não encontrada");
+        error.put("message", e.getMessage());
+        error.put("luminariaId", e.getLuminariaId());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+    }
+
+    private ResponseEntity<Map<String, Object>> preconditionFailed(StaleVersionException e) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", "Estado da luminária foi alterado");
+        error.put("message", e.getMessage());
+        error.put("luminariaId", e.getLuminariaId());
+        error.put("currentVersion", e.getCurrentVersion());
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                .eTag(String.valueOf(e.getCurrentVersion()))
+                .body(error);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,138 @@
+package com.scenario.automation.controller;
+
+import com.scenario.automation.model.Scene;
+import com.scenario.automation.service.LuminariaStateService.StateChange;
+import com.scenario.automation.service.SceneService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.validation.Valid;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/scenes")
+@CrossOrigin(origins = "*")
+public class SceneController {
+
+    @Autowired
+    private SceneService sceneService;
+
+    /**
+     * Criar nova cena
+     */
+    @PostMapping
+    public ResponseEntity<?> createScene(@Valid @RequestBody Scene scene) {
+        try {
+            Scene novaScene = sceneService.createScene(scene);
+            return ResponseEntity.status(HttpStatus.CREATED).body(novaScene);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro ao criar cena");
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro interno do servidor");
+            error.put("message", e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
+    /**
+     * Listar cenas (opcionalmente filtradas por ambiente)
+     */
+    @GetMapping
+    public ResponseEntity<List<Scene>> getScenes(@RequestParam(required = false) Long environmentId) {
+        List<Scene> scenes = sceneService.getScenes(environmentId);
+        return ResponseEntity.ok(scenes);
+    }
+
+    /**
+     * Buscar cena por ID
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getSceneById(@PathVariable Long id) {
+        Optional<Scene> scene = sceneService.getSceneById(id);
+        if (scene.isPresent()) {
+            return ResponseEntity.ok(scene.get());
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Atualizar cena
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<?> updateScene(@PathVariable Long id, @Valid @RequestBody Scene sceneAtualizada) {
+        try {
+            Scene scene = sceneService.updateScene(id, sceneAtualizada);
+            return ResponseEntity.ok(scene);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro ao atualizar cena");
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro interno do servidor");
+            error.put("message", e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
+    /**
+     * Deletar cena
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> deleteScene(@PathVariable Long id) {
+        try {
+            sceneService.deleteScene(id);
+            Map<String, String> response = new HashMap<>();
+            response.put("message", "Cena deletada com sucesso");
+            return ResponseEntity.ok(response);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro ao deletar cena");
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro interno do servidor");
+            error.put("message", e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
+    /**
+     * Ativar cena: aplica todos os estados de uma vez
+     */
+    @PostMapping("/{id}/activate")
+    public ResponseEntity<?> activateScene(@PathVariable Long id) {
+        try {
+            List<StateChange> changes = sceneService.activateScene(id);
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Cena ativada com sucesso");
+            response.put("sceneId", id);
+            response.put("changed", changes.size());
+            response.put("timestamp", LocalDateTime.now());
+            return ResponseEntity.ok(response);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro ao ativar cena");
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro interno do servidor");
+            error.put("message", e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.scenario.automation.controller;
+
+import com.scenario.automation.model.Schedule;
+import com.scenario.automation.service.ScheduleService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.validation.Valid;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/schedules")
+@CrossOrigin(origins = "*")
+public class ScheduleController {
+
+    @Autowired
+    private ScheduleService scheduleService;
+
+    /**
+     * Criar novo agendamento
+     */
+    @PostMapping
+    public ResponseEntity<?> createSchedule(@Valid @RequestBody Schedule schedule) {
+        try {
+            Schedule novoSchedule = scheduleService.createSchedule(schedule);
+            return ResponseEntity.status(HttpStatus.CREATED).body(novoSchedule);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro ao criar agendamento");
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro interno do servidor");
+            error.put("message", e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
+    /**
+     * Listar todos os agendamentos (ordenados pela próxima execução)
+     */
+    @GetMapping
+    public ResponseEntity<List<Schedule>> getAllSchedules() {
+        List<Schedule> schedules = scheduleService.getAllSchedules();
+        return ResponseEntity.ok(schedules);
+    }
+
+    /**
+     * Buscar agendamento por ID
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getScheduleById(@PathVariable Long id) {
+        Optional<Schedule> schedule = scheduleService.getScheduleById(id);
+        if (schedule.isPresent()) {
+            return ResponseEntity.ok(schedule.get());
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Atualizar agendamento
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<?> updateSchedule(@PathVariable Long id, @Valid @RequestBody Schedule scheduleAtualizado) {
+        try {
+            Schedule schedule = scheduleService.updateSchedule(id, scheduleAtualizado);
+            return ResponseEntity.ok(schedule);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro ao atualizar agendamento");
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro interno do servidor");
+            error.put("message", e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
+    /**
+     * Deletar agendamento
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> deleteSchedule(@PathVariable Long id) {
+        try {
+            scheduleService.deleteSchedule(id);
+            Map<String, String> response = new HashMap<>();
+            response.put("message", "Agendamento deletado com sucesso");
+            return ResponseEntity.ok(response);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro ao deletar agendamento");
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Erro interno do servidor");
+            error.put("message", e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+}
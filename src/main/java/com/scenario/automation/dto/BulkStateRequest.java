@@ -0,0 +1,76 @@
+package com.scenario.automation.dto;
+
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+/**
+ * Comando em lote: aplica o mesmo estado às luminárias listadas, às de um ambiente
+ * e/ou às de um subambiente (os seletores informados são somados)
+ */
+public class BulkStateRequest {
+
+    private List<Long> luminariaIds;
+
+    private Long environmentId;
+
+    private String subambiente;
+
+    @NotNull(message = "isOn é obrigatório")
+    private Boolean isOn;
+
+    // Construtores
+    public BulkStateRequest() {}
+
+    // Getters e Setters
+    public List<Long> getLuminariaIds() {
+        return luminariaIds;
+    }
+
+    public void setLuminariaIds(List<Long> luminariaIds) {
+        this.luminariaIds = luminariaIds;
+    }
+
+    public Long getEnvironmentId() {
+        return environmentId;
+    }
+
+    public void setEnvironmentId(Long environmentId) {
+        this.environmentId = environmentId;
+    }
+
+    public String getSubambiente() {
+        return subambiente;
+    }
+
+    public void setSubambiente(String subambiente) {
+        this.subambiente = subambiente;
+    }
+
+    public Boolean getIsOn() {
+        return isOn;
+    }
+
+    public void setIsOn(Boolean isOn) {
+        this.isOn = isOn;
+    }
+
+    /**
+     * Indica se ao menos um seletor de luminárias foi informado
+     */
+    public boolean hasSelector() {
+        return (luminariaIds != null && !luminariaIds.isEmpty())
+                || environmentId != null
+                || (subambiente != null && !subambiente.trim().isEmpty());
+    }
+
+    @Override
+    public String toString() {
+        return "BulkStateRequest{" +
+                "luminariaIds=" + luminariaIds +
+                ", environmentId=" + environmentId +
+                ", subambiente='" + subambiente + '\'' +
+                ", isOn=" + isOn +
+                '}';
+    }
+}
@@ -0,0 +1,67 @@
+package com.scenario.automation.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+
+/**
+ * Comando de brilho e/ou cor de uma luminária, opcionalmente com transição (fade)
+ * Ex.: {"brightness": 30, "transitionMs": 5000} leva a luminária a 30% em 5 segundos
+ */
+public class LevelRequest {
+
+    @Min(value = 0, message = "Brilho deve estar entre 0 e 100")
+    @Max(value = 100, message = "Brilho deve estar entre 0 e 100")
+    private Integer brightness;
+
+    @Pattern(regexp = "^#[0-9A-Fa-f]{6}$", message = "Cor deve estar no formato #RRGGBB")
+    private String color;
+
+    @Min(value = 0, message = "Duração da transição não pode ser negativa")
+    @Max(value = 3600000, message = "Duração da transição deve ser de no máximo 1 hora")
+    private Long transitionMs;
+
+    // Construtores
+    public LevelRequest() {}
+
+    // Getters e Setters
+    public Integer getBrightness() {
+        return brightness;
+    }
+
+    public void setBrightness(Integer brightness) {
+        this.brightness = brightness;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public void setColor(String color) {
+        this.color = color;
+    }
+
+    public Long getTransitionMs() {
+        return transitionMs;
+    }
+
+    public void setTransitionMs(Long transitionMs) {
+        this.transitionMs = transitionMs;
+    }
+
+    /**
+     * Indica se brilho ou cor foi informado
+     */
+    public boolean hasLevel() {
+        return brightness != null || color != null;
+    }
+
+    @Override
+    public String toString() {
+        return "LevelRequest{" +
+                "brightness=" + brightness +
+                ", color='" + color + '\'' +
+                ", transitionMs=" + transitionMs +
+                '}';
+    }
+}
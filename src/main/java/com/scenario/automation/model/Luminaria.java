@@ -3,6 +3,7 @@ package com.scenario.automation.model;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*;
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -29,6 +30,20 @@ public class Luminaria {
     @Transient
     private Long environmentId;
 
+    // Último estado ligado/desligado persistido pelo LuminariaStateStore (escrito via JDBC, nunca pelo JPA)
+    @JsonIgnore
+    @Column(name = "status", updatable = false, columnDefinition = "boolean default false")
+    private Boolean status = false;
+
+    // Último brilho (0-100) e cor (#RRGGBB) persistidos pelo LuminariaStateStore, como o status
+    @JsonIgnore
+    @Column(name = "brightness", updatable = false, columnDefinition = "integer default 0")
+    private Integer brightness = 0;
+
+    @JsonIgnore
+    @Column(name = "color", updatable = false, length = 7, columnDefinition = "varchar(7) default '#FFFFFF'")
+    private String color = "#FFFFFF";
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -78,6 +93,30 @@ public class Luminaria {
         this.environmentId = environmentId;
     }
 
+    public Boolean getStatus() {
+        return status;
+    }
+
+    public void setStatus(Boolean status) {
+        this.status = status;
+    }
+
+    public Integer getBrightness() {
+        return brightness;
+    }
+
+    public void setBrightness(Integer brightness) {
+        this.brightness = brightness;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public void setColor(String color) {
+        this.color = color;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
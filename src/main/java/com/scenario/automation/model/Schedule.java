@@ -0,0 +1,213 @@
+package com.scenario.automation.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Agendamento de uma cena ou de um comando de luminária.
+ *
+ * Execução única ({@code runAt}, ou {@code delaySeconds} a partir de agora) ou recorrente
+ * ({@code timeOfDay}, opcionalmente restrito a {@code daysOfWeek}, ex.: "MON,TUE,WED,THU,FRI").
+ */
+@Entity
+@Table(name = "schedules")
+public class Schedule {
+
+    /**
+     * Ação executada no disparo; {@code targetId} é o id da cena ou da luminária
+     */
+    public enum Action {
+        ACTIVATE_SCENE,
+        TURN_ON,
+        TURN_OFF,
+        TOGGLE
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @NotBlank(message = "Nome é obrigatório")
+    @Size(min = 2, max = 100, message = "Nome deve ter entre 2 e 100 caracteres")
+    @Column(nullable = false, length = 100)
+    private String name;
+
+    @NotNull(message = "Ação é obrigatória")
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Action action;
+
+    @NotNull(message = "Alvo é obrigatório")
+    @Column(name = "target_id", nullable = false)
+    private Long targetId;
+
+    @Column(name = "run_at")
+    private LocalDateTime runAt;
+
+    @Column(name = "time_of_day")
+    private LocalTime timeOfDay;
+
+    @Size(max = 30, message = "Dias da semana devem ter no máximo 30 caracteres")
+    @Column(name = "days_of_week", length = 30)
+    private String daysOfWeek;
+
+    // Atalho para "daqui a N segundos" (convertido em runAt na criação)
+    @Transient
+    private Long delaySeconds;
+
+    @Column(nullable = false)
+    private Boolean enabled = true;
+
+    @Column(name = "next_run_at")
+    private LocalDateTime nextRunAt;
+
+    @Column(name = "last_run_at")
+    private LocalDateTime lastRunAt;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Construtores
+    public Schedule() {}
+
+    // Getters e Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public void setAction(Action action) {
+        this.action = action;
+    }
+
+    public Long getTargetId() {
+        return targetId;
+    }
+
+    public void setTargetId(Long targetId) {
+        this.targetId = targetId;
+    }
+
+    public LocalDateTime getRunAt() {
+        return runAt;
+    }
+
+    public void setRunAt(LocalDateTime runAt) {
+        this.runAt = runAt;
+    }
+
+    public LocalTime getTimeOfDay() {
+        return timeOfDay;
+    }
+
+    public void setTimeOfDay(LocalTime timeOfDay) {
+        this.timeOfDay = timeOfDay;
+    }
+
+    public String getDaysOfWeek() {
+        return daysOfWeek;
+    }
+
+    public void setDaysOfWeek(String daysOfWeek) {
+        this.daysOfWeek = daysOfWeek;
+    }
+
+    public Long getDelaySeconds() {
+        return delaySeconds;
+    }
+
+    public void setDelaySeconds(Long delaySeconds) {
+        this.delaySeconds = delaySeconds;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public LocalDateTime getNextRunAt() {
+        return nextRunAt;
+    }
+
+    public void setNextRunAt(LocalDateTime nextRunAt) {
+        this.nextRunAt = nextRunAt;
+    }
+
+    public LocalDateTime getLastRunAt() {
+        return lastRunAt;
+    }
+
+    public void setLastRunAt(LocalDateTime lastRunAt) {
+        this.lastRunAt = lastRunAt;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * Indica se o agendamento se repete (horário do dia) ou executa uma única vez
+     */
+    @JsonIgnore
+    public boolean isRecurring() {
+        return timeOfDay != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Schedule{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", action=" + action +
+                ", targetId=" + targetId +
+                ", runAt=" + runAt +
+                ", timeOfDay=" + timeOfDay +
+                ", daysOfWeek='" + daysOfWeek + '\'' +
+                ", enabled=" + enabled +
+                ", nextRunAt=" + nextRunAt +
+                '}';
+    }
+}
@@ -2,9 +2,12 @@ package com.scenario.automation.repository;
 
 import com.scenario.automation.model.Luminaria;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface LuminariaRepository extends JpaRepository<Luminaria, Long> {
@@ -23,4 +26,16 @@ public interface LuminariaRepository extends JpaRepository<Luminaria, Long> {
      * Verificar se existe luminária com nome específico no ambiente (excluindo ID específico)
      */
     boolean existsByNameIgnoreCaseAndAmbienteIdAndIdNot(String name, Long ambienteId, Long id);
-}
\ No newline at end of file
+
+    /**
+     * Buscar pares (id da luminária, id do ambiente) sem carregar as entidades
+     */
+    @Query("SELECT l.id, l.ambiente.id FROM Luminaria l")
+    List<Object[]> findAllIdAndEnvironmentId();
+
+    /**
+     * Buscar o id do ambiente de uma luminária sem carregar a entidade
+     */
+    @Query("SELECT l.ambiente.id FROM Luminaria l WHERE l.id = :id")
+    Optional<Long> findEnvironmentIdById(@Param("id") Long id);
+}
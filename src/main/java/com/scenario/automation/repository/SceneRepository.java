@@ -0,0 +1,46 @@
+package com.scenario.automation.repository;
+
+import com.scenario.automation.model.Scene;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SceneRepository extends JpaRepository<Scene, Long> {
+
+    /**
+     * Buscar cenas por ambiente ordenadas por nome
+     */
+    List<Scene> findByAmbienteIdOrderByNameAsc(Long ambienteId);
+
+    /**
+     * Verificar se existe cena com nome específico no ambiente
+     */
+    boolean existsByNameIgnoreCaseAndAmbienteId(String name, Long ambienteId);
+
+    /**
+     * Verificar se existe cena com nome específico no ambiente (excluindo ID específico)
+     */
+    boolean existsByNameIgnoreCaseAndAmbienteIdAndIdNot(String name, Long ambienteId, Long id);
+
+    /**
+     * Buscar todas as cenas com seus estados e o id do ambiente (usando fetch join para evitar N+1)
+     */
+    @Query("SELECT DISTINCT s FROM Scene s LEFT JOIN FETCH s.states JOIN FETCH s.ambiente")
+    List<Scene> findAllWithStates();
+
+    /**
+     * Buscar uma cena com seus estados e o id do ambiente
+     */
+    @Query("SELECT s FROM Scene s LEFT JOIN FETCH s.states JOIN FETCH s.ambiente WHERE s.id = :id")
+    Optional<Scene> findByIdWithStates(@Param("id") Long id);
+
+    /**
+     * Remover as cenas de um ambiente
+     */
+    void deleteByAmbienteId(Long ambienteId);
+}
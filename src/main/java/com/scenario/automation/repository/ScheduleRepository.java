@@ -0,0 +1,60 @@
+package com.scenario.automation.repository;
+
+import com.scenario.automation.model.Schedule;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ScheduleRepository extends JpaRepository<Schedule, Long> {
+
+    /**
+     * Buscar agendamentos ativos
+     */
+    List<Schedule> findByEnabledTrue();
+
+    /**
+     * Buscar agendamentos ordenados pela próxima execução
+     */
+    List<Schedule> findAllByOrderByNextRunAtAsc();
+
+    /**
+     * Buscar agendamentos alterados depois do instante informado
+     */
+    List<Schedule> findByUpdatedAtAfter(LocalDateTime updatedAt);
+
+    /**
+     * Reservar uma execução: registra o disparo só se o agendamento ainda está ativo e com a
+     * próxima execução esperada. Devolve 0 se outra instância já a reservou (ou o agendamento mudou).
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Schedule s SET s.lastRunAt = :lastRunAt, s.nextRunAt = :nextRunAt, s.enabled = :enabled " +
+           "WHERE s.id = :id AND s.enabled = true AND s.nextRunAt = :expectedRunAt")
+    int claimRun(@Param("id") Long id, @Param("expectedRunAt") LocalDateTime expectedRunAt,
+                 @Param("lastRunAt") LocalDateTime lastRunAt, @Param("nextRunAt") LocalDateTime nextRunAt,
+                 @Param("enabled") Boolean enabled);
+
+    /**
+     * Trocar a próxima execução, só se ela ainda for a esperada
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Schedule s SET s.nextRunAt = :nextRunAt WHERE s.id = :id AND s.nextRunAt = :expectedRunAt")
+    int rescheduleRun(@Param("id") Long id, @Param("expectedRunAt") LocalDateTime expectedRunAt,
+                      @Param("nextRunAt") LocalDateTime nextRunAt);
+
+    /**
+     * Definir a próxima execução de um agendamento ativo que ainda não tem uma
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Schedule s SET s.nextRunAt = :nextRunAt WHERE s.id = :id AND s.enabled = true AND s.nextRunAt IS NULL")
+    int initNextRun(@Param("id") Long id, @Param("nextRunAt") LocalDateTime nextRunAt);
+}
@@ -19,8 +19,16 @@ public class JwtTokenProvider {
     @Value("${app.jwt.expiration:86400000}") // 24 horas em millisegundos
     private long jwtExpirationMs;
 
+    // Chave derivada do segredo uma única vez (o segredo não muda em execução)
+    private volatile SecretKey signingKey;
+
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        SecretKey key = signingKey;
+        if (key == null) {
+            key = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+            signingKey = key;
+        }
+        return key;
     }
 
     public String generateToken(String username) {
@@ -0,0 +1,145 @@
+package com.scenario.automation.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Token JWT do usuário de sistema para chamadas entre APIs (ex.: API de imagens).
+ *
+ * O token é assinado uma vez e reutilizado até faltar refresh-ahead-ms para expirar; a partir daí
+ * um novo é assinado em segundo plano enquanto os chamadores continuam usando o atual. Só há
+ * assinatura no thread do chamador na primeira chamada ou se o token já expirou.
+ */
+@Component
+public class ServiceCredentialManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServiceCredentialManager.class);
+
+    private static final String SYSTEM_SUBJECT = "system";
+
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+
+    private final long tokenTtlMillis;
+    private final long refreshAheadMillis;
+
+    private volatile Credential credential;
+
+    // Evita duas renovações em segundo plano ao mesmo tempo
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "service-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Counter syncRefreshes;
+    private final Counter backgroundRefreshes;
+    private final Counter failedRefreshes;
+
+    public ServiceCredentialManager(@Value("${app.service-token.ttl-ms:3600000}") long tokenTtlMillis,
+                                    @Value("${app.service-token.refresh-ahead-ms:300000}") long refreshAheadMillis,
+                                    MeterRegistry meterRegistry) {
+        this.tokenTtlMillis = tokenTtlMillis;
+        this.refreshAheadMillis = Math.min(refreshAheadMillis, tokenTtlMillis / 2);
+        this.syncRefreshes = refreshCounter(meterRegistry, "sync");
+        this.backgroundRefreshes = refreshCounter(meterRegistry, "background");
+        this.failedRefreshes = Counter.builder("service.token.refresh.failures")
+            .description("Renovações do token de sistema que falharam")
+            .register(meterRegistry);
+        Gauge.builder("service.token.expires.in", this, ServiceCredentialManager::getSecondsToExpiry)
+            .description("Segundos até o token de sistema atual expirar")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+    }
+
+    private static Counter refreshCounter(MeterRegistry meterRegistry, String mode) {
+        return Counter.builder("service.token.refreshes")
+            .description("Tokens de sistema assinados")
+            .tag("mode", mode)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Token de sistema válido; agenda a renovação se estiver perto de expirar
+     */
+    public String getToken() {
+        Credential current = credential;
+        long now = System.currentTimeMillis();
+        if (current == null || now >= current.expiresAt) {
+            return refreshNow(now);
+        }
+        if (now >= current.expiresAt - refreshAheadMillis && refreshing.compareAndSet(false, true)) {
+            refreshExecutor.execute(this::refreshInBackground);
+        }
+        return current.token;
+    }
+
+    /**
+     * Assina no thread do chamador (sem token ou token expirado); só um chamador assina
+     */
+    private synchronized String refreshNow(long now) {
+        Credential current = credential;
+        if (current != null && now < current.expiresAt) {
+            return current.token; // outro chamador já renovou
+        }
+        credential = mint();
+        syncRefreshes.increment();
+        return credential.token;
+    }
+
+    private void refreshInBackground() {
+        try {
+            Credential renewed = mint();
+            synchronized (this) {
+                credential = renewed;
+            }
+            backgroundRefreshes.increment();
+            logger.debug("Token de sistema renovado em segundo plano");
+        } catch (Exception e) {
+            // O token atual continua valendo; a próxima chamada tenta de novo
+            failedRefreshes.increment();
+            logger.warn("Erro ao renovar token de sistema: {}", e.getMessage());
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    private Credential mint() {
+        long issuedAt = System.currentTimeMillis();
+        String token = tokenProvider.generateTokenWithClaims(SYSTEM_SUBJECT, null, tokenTtlMillis);
+        return new Credential(token, issuedAt + tokenTtlMillis);
+    }
+
+    private double getSecondsToExpiry() {
+        Credential current = credential;
+        return current != null ? Math.max(0, current.expiresAt - System.currentTimeMillis()) / 1000.0 : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private static final class Credential {
+        private final String token;
+        private final long expiresAt;
+
+        Credential(String token, long expiresAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
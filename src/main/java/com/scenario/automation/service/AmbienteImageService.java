@@ -31,7 +31,7 @@ public class AmbienteImageService {
             throw new RuntimeException("Ambiente não encontrado com ID: " + environmentId);
         }
 
-        // Verificar se a API de imagens está disponível
+        // Verificar se a API de imagens está disponível (status em cache: falha rápido sem round trip)
         if (!imagesApiClient.isImagesApiAvailable()) {
             throw new RuntimeException("API de imagens não está disponível no momento");
         }
@@ -3,6 +3,9 @@ package com.scenario.automation.service;
 import com.scenario.automation.client.ImagesApiClient;
 import com.scenario.automation.model.Ambiente;
 import com.scenario.automation.repository.AmbienteRepository;
+import com.scenario.automation.repository.SceneRepository;
+import com.scenario.automation.service.replication.StateReplicator;
+import com.scenario.automation.service.replication.StateReplicator.TopologyChange;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -11,6 +14,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @Transactional
@@ -19,9 +23,21 @@ public class AmbienteService {
     @Autowired
     private AmbienteRepository ambienteRepository;
 
+    @Autowired
+    private SceneRepository sceneRepository;
+
     @Autowired
     private ImagesApiClient imagesApiClient;
 
+    @Autowired
+    private LuminariaTopologyService topologyService;
+
+    @Autowired
+    private LuminariaStateService luminariaStateService;
+
+    @Autowired
+    private StateReplicator replicator;
+
     /**
      * Criar novo ambiente
      */
@@ -30,7 +46,9 @@ public class AmbienteService {
         if (ambienteRepository.existsByNameIgnoreCase(ambiente.getName())) {
             throw new RuntimeException("Já existe um ambiente com o nome: " + ambiente.getName());
         }
-        return ambienteRepository.save(ambiente);
+        Ambiente savedAmbiente = ambienteRepository.save(ambiente);
+        TransactionCallbacks.afterCommit(() -> registerAmbiente(savedAmbiente));
+        return savedAmbiente;
     }
 
     /**
@@ -93,7 +111,17 @@ public class AmbienteService {
         ambienteExistente.setName(ambienteAtualizado.getName());
         ambienteExistente.setDescription(ambienteAtualizado.getDescription());
 
-        return ambienteRepository.save(ambienteExistente);
+        Ambiente savedAmbiente = ambienteRepository.save(ambienteExistente);
+        TransactionCallbacks.afterCommit(() -> registerAmbiente(savedAmbiente));
+        return savedAmbiente;
+    }
+
+    /**
+     * Registra o ambiente na topologia desta instância e das demais (chamado depois do commit)
+     */
+    private void registerAmbiente(Ambiente ambiente) {
+        topologyService.registerAmbiente(ambiente.getId(), ambiente.getSubambiente());
+        replicator.replicateTopology(TopologyChange.ambiente(ambiente.getId(), ambiente.getSubambiente(), false));
     }
 
     /**
@@ -111,8 +139,17 @@ public class AmbienteService {
             System.err.println("Erro ao deletar imagens do ambiente " + id + ": " + e.getMessage());
         }
         
-        // Depois, deletar o ambiente
+        // Remover as cenas do ambiente
+        sceneRepository.deleteByAmbienteId(id);
+
+        // Depois, deletar o ambiente (as luminárias são removidas em cascata)
+        Set<Long> luminariaIds = topologyService.getLuminariaIds(id);
         ambienteRepository.delete(ambiente);
+        TransactionCallbacks.afterCommit(() -> {
+            topologyService.removeAmbiente(id);
+            luminariaStateService.removeLuminarias(luminariaIds);
+            replicator.replicateTopology(TopologyChange.ambiente(id, null, true));
+        });
     }
 
     /**
@@ -3,6 +3,8 @@ package com.scenario.automation.service;
 import com.scenario.automation.model.Luminaria;
 import com.scenario.automation.model.Ambiente;
 import com.scenario.automation.repository.LuminariaRepository;
+import com.scenario.automation.service.replication.StateReplicator;
+import com.scenario.automation.service.replication.StateReplicator.TopologyChange;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -20,6 +22,15 @@ public class LuminariaService {
     @Autowired
     private AmbienteService ambienteService;
 
+    @Autowired
+    private LuminariaTopologyService topologyService;
+
+    @Autowired
+    private LuminariaStateService luminariaStateService;
+
+    @Autowired
+    private StateReplicator replicator;
+
     /**
      * Criar nova luminária
      */
@@ -44,6 +55,12 @@ public class LuminariaService {
         }
 
         Luminaria savedLuminaria = luminariaRepository.save(luminaria);
+        Long environmentId = ambiente.getId();
+        TransactionCallbacks.afterCommit(() -> {
+            topologyService.registerLuminaria(savedLuminaria.getId(), environmentId);
+            replicator.replicateTopology(TopologyChange.luminaria(savedLuminaria.getId(), environmentId, false));
+            luminariaStateService.publishAggregates(List.of(environmentId));
+        });
         // Preencher o campo environmentId para o front-end
         savedLuminaria.setEnvironmentId(ambiente.getId());
         return savedLuminaria;
@@ -116,6 +133,15 @@ public class LuminariaService {
         if (!luminariaRepository.existsById(id)) {
             throw new RuntimeException("Luminária não encontrada com ID: " + id);
         }
+        Long environmentId = topologyService.getEnvironmentId(id);
         luminariaRepository.deleteById(id);
+        TransactionCallbacks.afterCommit(() -> {
+            topologyService.removeLuminaria(id);
+            luminariaStateService.removeLuminarias(List.of(id));
+            replicator.replicateTopology(TopologyChange.luminaria(id, environmentId, true));
+            if (environmentId != null) {
+                luminariaStateService.publishAggregates(List.of(environmentId));
+            }
+        });
     }
-}
\ No newline at end of file
+}
@@ -1,199 +1,1345 @@
 package com.scenario.automation.service;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.scenario.automation.service.replication.StateReplicator;
+import com.scenario.automation.service.replication.StateReplicator.TopologyChange;
+import com.scenario.automation.service.replication.StateReplicator.TopologyKind;
+import com.scenario.automation.service.sse.SseClient;
+import com.scenario.automation.service.sse.SseDispatcher;
+import com.scenario.automation.service.sse.SseFrame;
+import com.scenario.automation.service.sse.SseFrameEncoder;
+import com.scenario.automation.service.sse.SseSink;
+import com.scenario.automation.service.sse.SseSnapshotFormat;
+import com.scenario.automation.service.sse.SseSubscription;
+import com.scenario.automation.service.state.CompactStates;
+import com.scenario.automation.service.state.EventRingBuffer;
+import com.scenario.automation.service.state.LuminariaNotFoundException;
+import com.scenario.automation.service.state.LuminariaStateSnapshot;
+import com.scenario.automation.service.state.LuminariaStateStore;
+import com.scenario.automation.service.state.LuminariaStateTable;
+import com.scenario.automation.service.state.LuminariaTransitionEngine;
+import com.scenario.automation.service.state.LuminariaTransitionEngine.Fade;
+import com.scenario.automation.service.state.PackedLongTable;
+import com.scenario.automation.service.state.StaleVersionException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Iterator;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 public class LuminariaStateService {
     
     private static final Logger logger = LoggerFactory.getLogger(LuminariaStateService.class);
     
-    // Armazena o estado das luminárias em memória (id -> isOn)
-    private final Map<Long, Boolean> luminariaStates = new ConcurrentHashMap<>();
+    // Versões são não negativas: valor devolvido por publishedVersions/remoteVersions para luminária ausente
+    private static final long NOT_PUBLISHED = -1L;
     
-    // Lista de clientes SSE conectados
-    private final CopyOnWriteArrayList<SseEmitter> sseEmitters = new CopyOnWriteArrayList<>();
+    // Estado das luminárias em memória, com versão por luminária (alterado por CAS, sem locks)
+    private final LuminariaStateTable stateTable;
     
-    // Executor para heartbeat
-    private final ScheduledExecutorService heartbeatExecutor = Executors.newSingleThreadScheduledExecutor();
+    // Última versão publicada de cada luminária (alterada com o publishLock)
+    private final PackedLongTable publishedVersions;
     
-    public LuminariaStateService() {
-        // Iniciar heartbeat a cada 30 segundos
-        heartbeatExecutor.scheduleAtFixedRate(() -> sendHeartbeat(), 30, 30, TimeUnit.SECONDS);
+    // Sequência do último evento que publicou cada luminária (alterada com o publishLock);
+    // vai para as cópias de estado e permite enviar só o diff desde uma epoch anterior
+    private final PackedLongTable publishedSequences;
+    
+    // Fan-out assíncrono para os clientes SSE conectados
+    @Autowired
+    private SseDispatcher sseDispatcher;
+    
+    @Autowired
+    private SseFrameEncoder sseFrameEncoder;
+    
+    // Replicação do estado entre instâncias (desligada sem app.replication.transport)
+    @Autowired
+    private StateReplicator replicator;
+    
+    // Versão aplicada de mudanças vindas de outras instâncias ainda não publicadas (com o publishLock):
+    // publicadas aqui para os clientes SSE, mas não regravadas no store nem replicadas de volta
+    private final PackedLongTable remoteVersions;
+    
+    // Ambiente/subambiente de cada luminária, para filtrar as inscrições sem consultar o banco
+    @Autowired
+    private LuminariaTopologyService topologyService;
+    
+    // Sequência monotônica dos eventos de estado (usada como id SSE). Começa em
+    // currentTimeMillis * 1000 para continuar crescendo entre reinícios da aplicação.
+    private final AtomicLong eventSequence = new AtomicLong(System.currentTimeMillis() * 1000);
+    
+    // Primeira sequência desta execução: epochs anteriores (outra execução) não servem para diff
+    private final long firstSequence = eventSequence.get();
+    
+    // Sequência atual na última remoção de luminárias (alterada com o publishLock). O state_diff só leva
+    // luminárias alteradas, então cópias até essa epoch precisam de um initial_state completo
+    private volatile long lastRemovalEpoch = -1;
+    
+    // Incrementado a cada remoção de luminárias (com o publishLock): uma cópia obtida antes
+    // de uma remoção pode ter as luminárias removidas e não serve mais para novos clientes
+    private volatile long removalGeneration;
+    
+    // Serializa atribuição de sequência, buffer e enfileiramento, e o registro de novos clientes
+    private final Object publishLock = new Object();
+    
+    // Luminárias alteradas ainda não publicadas. Os comandos só adicionam (sem lock); o publicador
+    // esvazia com o publishLock. Dentro da janela de agrupamento, várias mudanças da mesma luminária
+    // viram uma só (vale o estado atual na hora da publicação)
+    private final Set<Long> pendingChanges = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+    
+    // Janela de agrupamento das mudanças num único evento (0 = publica cada comando na hora)
+    private final long coalesceWindowMillis;
+    
+    private final ScheduledExecutorService coalesceExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "luminaria-event-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    // Últimos eventos de estado, para retomar clientes que reconectam com Last-Event-ID
+    private final EventRingBuffer<LuminariaStateEvent> recentEvents;
+    
+    // Cópia imutável compartilhada do estado (substituída com o publishLock) e o initial_state
+    // sem filtro já serializado a partir dela
+    private volatile LuminariaStateSnapshot snapshot = LuminariaStateSnapshot.EMPTY;
+    
+    // Criação das cópias, fora do publishLock: uma por vez, e quem chega durante a criação usa a mesma
+    private final Object snapshotLock = new Object();
+    private volatile EncodedSnapshot encodedSnapshot;
+    
+    // Idade máxima da cópia entregue a novos clientes SSE (eles recebem a cópia + eventos posteriores)
+    private final long snapshotMaxAgeMillis;
+    
+    // Transições de brilho/cor em andamento, avançadas por uma única thread (um evento por tick)
+    private final LuminariaTransitionEngine transitionEngine;
+    
+    // Persistência write-behind do estado (não bloqueia os comandos)
+    @Autowired
+    private LuminariaStateStore stateStore;
+    
+    // Métricas do caminho de publicação (no lugar de logs por evento)
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private Counter stateChangeEvents;
+    private Counter stateChangesEvents;
+    private Counter publishedChanges;
+    private Counter clientsNotified;
+    private Timer fanoutTimer;
+    
+    public LuminariaStateService(@Value("${app.sse.replay-buffer-size:1024}") int replayBufferSize,
+                                 @Value("${app.luminaires.state-table.expected-size:1024}") int expectedLuminarias,
+                                 @Value("${app.luminaires.state-table.off-heap:false}") boolean offHeap,
+                                 @Value("${app.sse.snapshot-max-age-ms:1000}") long snapshotMaxAgeMillis,
+                                 @Value("${app.luminaires.transition.tick-ms:50}") long transitionTickMillis,
+                                 @Value("${app.sse.coalesce-window-ms:20}") long coalesceWindowMillis) {
+        this.recentEvents = new EventRingBuffer<>(replayBufferSize);
+        this.coalesceWindowMillis = coalesceWindowMillis;
+        this.snapshotMaxAgeMillis = snapshotMaxAgeMillis;
+        this.stateTable = new LuminariaStateTable(expectedLuminarias, offHeap);
+        this.publishedSequences = new PackedLongTable(expectedLuminarias, offHeap);
+        this.publishedVersions = new PackedLongTable(expectedLuminarias, offHeap);
+        // Normalmente pequena; cresce só com o estado completo recebido numa sincronização
+        this.remoteVersions = new PackedLongTable(0, offHeap);
+        this.transitionEngine = new LuminariaTransitionEngine(transitionTickMillis, this::applyTransitionStep);
+    }
+    
+    @PostConstruct
+    public void init() {
+        stateChangeEvents = eventCounter("state_change");
+        stateChangesEvents = eventCounter("state_changes");
+        publishedChanges = Counter.builder("luminaria.events.changes")
+            .description("Mudanças de luminárias publicadas (um evento em lote conta várias)")
+            .register(meterRegistry);
+        clientsNotified = Counter.builder("luminaria.events.clients.notified")
+            .description("Entregas enfileiradas para clientes (eventos x clientes interessados)")
+            .register(meterRegistry);
+        fanoutTimer = Timer.builder("luminaria.events.fanout")
+            .description("Tempo para serializar um evento e enfileirá-lo em todos os clientes interessados")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        
+        restoreStates();
+        replicator.setRemoteChangeHandler(this::applyRemoteChanges);
+        replicator.setLocalStateSource(consumer -> stateTable.forEach(consumer::accept));
+        replicator.setTopologyChangeHandler(this::applyRemoteTopologyChange);
+        replicator.setResyncListener(this::reloadTopology);
+        // Versões recomeçam do zero a cada execução: busca as das outras instâncias
+        replicator.requestSync();
+        // Fila colapsada pela política SNAPSHOT: o cliente recebe o estado completo atual
+        sseDispatcher.setSnapshotSupplier(client ->
+            createInitialStateFrame(currentSnapshot(), client.getSubscription(), client.getSnapshotFormat()));
+        // Heartbeat por conexão, enviado pelo dispatcher às conexões ociosas
+        sseDispatcher.setHeartbeatSupplier(this::createHeartbeatFrame);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        transitionEngine.stop();
+        coalesceExecutor.shutdown();
+        // Mudanças ainda na janela de agrupamento seguem para o store antes do flush final dele
+        synchronized (publishLock) {
+            publishPending();
+        }
+    }
+    
+    private Counter eventCounter(String eventType) {
+        return Counter.builder("luminaria.events.published")
+            .description("Eventos de estado publicados")
+            .tag("type", eventType)
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Reconstrói o mapa de estados a partir do store na criação do bean, antes de o servidor web
+     * aceitar requisições: nenhum cliente SSE recebe um initial_state com tudo desligado, e os estados
+     * restaurados não precisam gerar evento. Uma falha aqui interrompe a inicialização.
+     */
+    private void restoreStates() {
+        Map<Long, Long> persisted;
+        try {
+            persisted = stateStore.loadAll();
+        } catch (Exception e) {
+            throw new IllegalStateException("Erro ao restaurar estados das luminárias: " + e.getMessage(), e);
+        }
+        persisted.forEach(stateTable::restore);
+        for (Long luminariaId : persisted.keySet()) {
+            topologyService.updateOnState(luminariaId, LuminariaStateTable.isOn(stateTable.get(luminariaId)));
+        }
+        logger.info("Estados restaurados para {} luminárias", persisted.size());
     }
     
     /**
      * Liga uma luminária
      */
-    public void turnOnLuminaria(Long luminariaId) {
-        logger.info("Ligando luminária {}", luminariaId);
-        luminariaStates.put(luminariaId, true);
-        broadcastStateChange(luminariaId, true);
+    public StateChange turnOnLuminaria(Long luminariaId) {
+        return setLuminariaState(luminariaId, true, null);
     }
     
     /**
      * Desliga uma luminária
      */
-    public void turnOffLuminaria(Long luminariaId) {
-        logger.info("Desligando luminária {}", luminariaId);
-        luminariaStates.put(luminariaId, false);
-        broadcastStateChange(luminariaId, false);
+    public StateChange turnOffLuminaria(Long luminariaId) {
+        return setLuminariaState(luminariaId, false, null);
     }
     
     /**
      * Alterna o estado de uma luminária
      */
     public boolean toggleLuminaria(Long luminariaId) {
-        boolean currentState = luminariaStates.getOrDefault(luminariaId, false);
-        boolean newState = !currentState;
-        logger.info("Alternando luminária {} de {} para {}", luminariaId, currentState, newState);
-        luminariaStates.put(luminariaId, newState);
-        broadcastStateChange(luminariaId, newState);
-        return newState;
+        return toggleLuminaria(luminariaId, null).getIsOn();
+    }
+    
+    /**
+     * Define o estado de uma luminária.
+     * 
+     * @param expectedVersion se informado, o comando só é aplicado se a luminária ainda estiver
+     *                        nessa versão (If-Match); caso contrário lança StaleVersionException
+     * @return estado e versão resultantes
+     */
+    public StateChange setLuminariaState(Long luminariaId, boolean isOn, Long expectedVersion) {
+        requireLuminaria(luminariaId);
+        logger.debug("{} luminária {}", isOn ? "Ligando" : "Desligando", luminariaId);
+        transitionEngine.cancel(luminariaId);
+        long previous = expectedVersion != null
+            ? stateTable.compareAndSet(luminariaId, expectedVersion, isOn)
+            : stateTable.set(luminariaId, isOn);
+        long current = LuminariaStateTable.applied(previous, isOn);
+        if (current != previous) {
+            requireStillPresent(luminariaId);
+            publishStateChange(luminariaId);
+        }
+        return StateChange.of(luminariaId, current);
+    }
+    
+    /**
+     * Alterna o estado de uma luminária de forma atômica (dois toggles concorrentes nunca se anulam)
+     * 
+     * @param expectedVersion versão esperada (If-Match), ou null para alternar incondicionalmente
+     * @return estado e versão resultantes
+     */
+    public StateChange toggleLuminaria(Long luminariaId, Long expectedVersion) {
+        requireLuminaria(luminariaId);
+        transitionEngine.cancel(luminariaId);
+        long previous = expectedVersion != null
+            ? stateTable.compareAndToggle(luminariaId, expectedVersion)
+            : stateTable.toggle(luminariaId);
+        requireStillPresent(luminariaId);
+        boolean newState = !LuminariaStateTable.isOn(previous);
+        logger.debug("Alternando luminária {} de {} para {}", luminariaId, !newState, newState);
+        publishStateChange(luminariaId);
+        return StateChange.of(luminariaId, LuminariaStateTable.applied(previous, newState));
+    }
+    
+    /**
+     * Define brilho e/ou cor de uma luminária, imediatamente ou com transição (fade).
+     * 
+     * Brilho maior que zero liga a luminária; brilho zero a desliga (ao final da transição).
+     * Uma transição começa do valor atual (do brilho 0, se a luminária estava desligada) e é
+     * avançada pelo motor de transições; outro comando sobre a luminária a interrompe.
+     * 
+     * @param brightness brilho alvo (0-100), ou null para manter
+     * @param color cor alvo (0xRRGGBB), ou null para manter
+     * @param transitionMillis duração da transição; 0 aplica imediatamente
+     * @param expectedVersion versão esperada (If-Match), ou null
+     * @return estado e versão resultantes (no início da transição, quando houver)
+     */
+    public StateChange setLuminariaLevel(Long luminariaId, Integer brightness, Integer color,
+                                         long transitionMillis, Long expectedVersion) {
+        requireLuminaria(luminariaId);
+        if (brightness != null && (brightness < 0 || brightness > LuminariaStateTable.MAX_BRIGHTNESS)) {
+            throw new RuntimeException("Brilho deve estar entre 0 e " + LuminariaStateTable.MAX_BRIGHTNESS);
+        }
+        logger.debug("Ajustando luminária {}: brilho {}, cor {}, transição {} ms", luminariaId, brightness,
+                    color != null ? LuminariaStateTable.formatColor(color) : null, transitionMillis);
+        transitionEngine.cancel(luminariaId);
+        
+        if (transitionMillis <= 0) {
+            long previous = stateTable.update(luminariaId, expectedVersion, current -> withLevel(current, brightness, color));
+            long current = withLevel(previous, brightness, color);
+            if (current != previous) {
+                requireStillPresent(luminariaId);
+                publishStateChange(luminariaId);
+            }
+            return StateChange.of(luminariaId, current);
+        }
+        
+        long previous = stateTable.update(luminariaId, expectedVersion, current -> fadeStart(current, brightness));
+        long start = fadeStart(previous, brightness);
+        requireStillPresent(luminariaId);
+        if (start != previous) {
+            publishStateChange(luminariaId);
+        }
+        transitionEngine.start(new Fade(
+            luminariaId,
+            start,
+            brightness != null ? brightness : LuminariaStateTable.brightness(start),
+            color != null ? color : LuminariaStateTable.color(start),
+            brightness != null ? brightness > 0 : LuminariaStateTable.isOn(start),
+            transitionMillis));
+        return StateChange.of(luminariaId, start);
+    }
+    
+    /**
+     * Quantidade de transições em andamento
+     */
+    public int getActiveTransitionCount() {
+        return transitionEngine.getActiveCount();
+    }
+    
+    /**
+     * Valor com o brilho e a cor pedidos (null mantém); brilho zero desliga, maior que zero liga
+     */
+    private static long withLevel(long current, Integer brightness, Integer color) {
+        return LuminariaStateTable.leveled(
+            current,
+            brightness != null ? brightness > 0 : LuminariaStateTable.isOn(current),
+            brightness != null ? brightness : LuminariaStateTable.brightness(current),
+            color != null ? color : LuminariaStateTable.color(current));
+    }
+    
+    /**
+     * Valor no início de uma transição: luminária desligada que vai acender liga com brilho 0
+     */
+    private static long fadeStart(long current, Integer brightness) {
+        if (brightness == null || brightness == 0 || LuminariaStateTable.isOn(current)) {
+            return current;
+        }
+        return LuminariaStateTable.leveled(current, true, 0, LuminariaStateTable.color(current));
+    }
+    
+    /**
+     * Aplica os passos de um tick do motor de transições num único evento state_changes.
+     * Cada passo só vale se a luminária ainda estiver na versão escrita pela própria transição.
+     */
+    private void applyTransitionStep(List<Fade> step) {
+        synchronized (publishLock) {
+            boolean changed = false;
+            for (Fade fade : step) {
+                long previous;
+                try {
+                    previous = stateTable.update(fade.getLuminariaId(), fade.getExpectedVersion(), current ->
+                        LuminariaStateTable.leveled(current, fade.isOn(), fade.getBrightness(), fade.getColor()));
+                } catch (StaleVersionException e) {
+                    fade.supersede(); // alterada por outro comando
+                    continue;
+                }
+                long current = LuminariaStateTable.leveled(previous, fade.isOn(), fade.getBrightness(), fade.getColor());
+                if (current != previous) {
+                    fade.markApplied(LuminariaStateTable.version(current));
+                    pendingChanges.add(fade.getLuminariaId());
+                    changed = true;
+                }
+            }
+            if (changed) {
+                schedulePublish();
+            }
+        }
+    }
+    
+    /**
+     * Aplica o mesmo estado a várias luminárias de uma vez.
+     * 
+     * Todas as mudanças são aplicadas sob o lock de publicação (nenhum snapshot SSE vê o lote
+     * pela metade) e saem num único evento state_changes, junto com as demais mudanças da
+     * janela de agrupamento. Luminárias que já estavam no estado pedido ou que não existem
+     * não geram mudança.
+     * 
+     * @return mudanças efetivamente aplicadas
+     */
+    public List<StateChange> setLuminariaStates(Collection<Long> luminariaIds, boolean isOn) {
+        logger.info("Comando em lote: {} luminárias -> {}", luminariaIds.size(), isOn ? "ligadas" : "desligadas");
+        
+        List<StateChange> changes = new ArrayList<>();
+        synchronized (publishLock) {
+            for (Long luminariaId : luminariaIds) {
+                applyState(luminariaId, isOn, changes);
+            }
+            if (!changes.isEmpty()) {
+                schedulePublish();
+            }
+        }
+        return changes;
+    }
+    
+    /**
+     * Aplica estados individuais a várias luminárias numa única passada (ex.: ativação de cena).
+     * Mesmas garantias de {@link #setLuminariaStates}: aplicação atômica e um único evento state_changes.
+     * 
+     * @param luminariaIds ids das luminárias
+     * @param states estado alvo de cada luminária (mesma posição do array de ids)
+     * @return mudanças efetivamente aplicadas
+     */
+    public List<StateChange> applyStates(long[] luminariaIds, boolean[] states) {
+        List<StateChange> changes = new ArrayList<>();
+        synchronized (publishLock) {
+            for (int i = 0; i < luminariaIds.length; i++) {
+                applyState(luminariaIds[i], states[i], changes);
+            }
+            if (!changes.isEmpty()) {
+                schedulePublish();
+            }
+        }
+        return changes;
+    }
+    
+    /**
+     * Aplica o estado de uma luminária e registra a mudança, se houver (chamado com o publishLock)
+     */
+    private void applyState(Long luminariaId, boolean isOn, List<StateChange> changes) {
+        if (!topologyService.containsLuminaria(luminariaId)) {
+            return;
+        }
+        transitionEngine.cancel(luminariaId);
+        long previous = stateTable.set(luminariaId, isOn);
+        long current = LuminariaStateTable.applied(previous, isOn);
+        if (current != previous) {
+            pendingChanges.add(luminariaId);
+            changes.add(StateChange.of(luminariaId, current));
+        }
+    }
+    
+    /**
+     * Adiciona à lista o estado atual da luminária se ele ainda não foi publicado (chamado com o publishLock).
+     * 
+     * Os comandos alteram o estado fora do lock; aqui cada luminária só é publicada com versão
+     * crescente, então um evento atrasado nunca sobrescreve um mais novo nos clientes nem no store.
+     */
+    private void collectChange(Long luminariaId, List<StateChange> changes, Set<Long> changedEnvironments) {
+        if (!stateTable.contains(luminariaId)) {
+            return; // excluída depois de marcada (removeLuminarias)
+        }
+        long current = stateTable.get(luminariaId);
+        long version = LuminariaStateTable.version(current);
+        if (publishedVersions.get(luminariaId, NOT_PUBLISHED) >= version) {
+            return; // uma publicação posterior já levou este estado
+        }
+        publishedVersions.update(luminariaId, version, previous -> version);
+        long remoteVersion = remoteVersions.get(luminariaId, NOT_PUBLISHED);
+        remoteVersions.remove(luminariaId);
+        if (remoteVersion != version) {
+            // Mudança feita nesta instância: a origem persiste e replica
+            stateStore.save(luminariaId, LuminariaStateTable.isOn(current),
+                            LuminariaStateTable.brightness(current), LuminariaStateTable.color(current));
+            replicator.replicate(luminariaId, current);
+        }
+        Long environmentId = topologyService.updateOnState(luminariaId, LuminariaStateTable.isOn(current));
+        if (environmentId != null) {
+            changedEnvironments.add(environmentId);
+        }
+        changes.add(StateChange.of(luminariaId, current));
+    }
+    
+    /**
+     * Aplica mudanças recebidas de outra instância (maior versão prevalece) e as publica
+     * para os clientes SSE desta instância
+     */
+    private void applyRemoteChanges(long[] luminariaIds, long[] values) {
+        // Luminária fora do índice: criada em outra instância (busca no banco, fora do lock) ou já
+        // excluída, e então a mudança é descartada para não recriar o estado dela
+        for (long luminariaId : luminariaIds) {
+            isKnownLuminaria(luminariaId);
+        }
+        synchronized (publishLock) {
+            boolean changed = false;
+            for (int i = 0; i < luminariaIds.length; i++) {
+                if (!topologyService.containsLuminaria(luminariaIds[i])) {
+                    continue;
+                }
+                long previous = stateTable.merge(luminariaIds[i], values[i]);
+                long current = LuminariaStateTable.merged(previous, values[i]);
+                if (current != previous) {
+                    transitionEngine.cancel(luminariaIds[i]);
+                    long version = LuminariaStateTable.version(current);
+                    remoteVersions.update(luminariaIds[i], version, remote -> version);
+                    pendingChanges.add(luminariaIds[i]);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                schedulePublish();
+            }
+        }
+    }
+    
+    /**
+     * Aplica uma mudança de topologia feita (e gravada no banco) por outra instância: atualiza o
+     * índice, remove o estado das luminárias excluídas e publica os contadores do ambiente
+     */
+    private void applyRemoteTopologyChange(TopologyChange change) {
+        Long id = change.getId();
+        if (change.getKind() == TopologyKind.AMBIENTE) {
+            if (change.isRemoved()) {
+                Set<Long> luminariaIds = topologyService.getLuminariaIds(id);
+                topologyService.removeAmbiente(id);
+                removeLuminarias(luminariaIds);
+            } else {
+                topologyService.registerAmbiente(id, change.getSubambiente());
+            }
+            return;
+        }
+        
+        Long environmentId = change.isRemoved() ? topologyService.getEnvironmentId(id) : change.getEnvironmentId();
+        if (change.isRemoved()) {
+            topologyService.removeLuminaria(id);
+            removeLuminarias(List.of(id));
+        } else {
+            topologyService.registerLuminaria(id, environmentId);
+        }
+        if (environmentId != null) {
+            publishAggregates(List.of(environmentId));
+        }
+    }
+    
+    /**
+     * Recarrega a topologia do banco quando mudanças de outras instâncias podem ter se perdido,
+     * removendo o estado das luminárias que não existem mais
+     */
+    private void reloadTopology() {
+        removeLuminarias(topologyService.reload());
+    }
+    
+    /**
+     * Se a luminária está no índice. Com replicação, uma luminária ausente é buscada no banco:
+     * pode ter sido criada em outra instância e a mudança de topologia ainda não ter chegado.
+     */
+    private boolean isKnownLuminaria(Long luminariaId) {
+        return topologyService.containsLuminaria(luminariaId)
+            || (replicator.isEnabled() && topologyService.loadLuminaria(luminariaId));
+    }
+    
+    /**
+     * Remove o estado de luminárias excluídas (tabela, versões publicadas e transições).
+     * Deve ser chamado depois do commit da exclusão e de removê-las da topologia; um comando
+     * que passou pela validação antes disso desfaz a própria escrita (requireStillPresent).
+     */
+    public void removeLuminarias(Collection<Long> luminariaIds) {
+        if (luminariaIds.isEmpty()) {
+            return;
+        }
+        synchronized (publishLock) {
+            for (Long luminariaId : luminariaIds) {
+                transitionEngine.cancel(luminariaId);
+                pendingChanges.remove(luminariaId);
+                publishedVersions.remove(luminariaId);
+                remoteVersions.remove(luminariaId);
+                publishedSequences.remove(luminariaId);
+                stateTable.remove(luminariaId);
+            }
+            lastRemovalEpoch = eventSequence.get();
+            snapshot = LuminariaStateSnapshot.EMPTY; // a próxima cópia já não tem as luminárias removidas
+            removalGeneration++;
+        }
+        logger.info("Estado removido para {} luminárias excluídas", luminariaIds.size());
+    }
+    
+    /**
+     * Lança LuminariaNotFoundException se a luminária não existe (consulta o índice em memória e,
+     * com replicação, o banco se ela não estiver no índice)
+     */
+    private void requireLuminaria(Long luminariaId) {
+        if (!isKnownLuminaria(luminariaId)) {
+            throw new LuminariaNotFoundException(luminariaId);
+        }
+    }
+    
+    /**
+     * Confere, depois da escrita na tabela, se a luminária não foi excluída durante o comando.
+     * Se foi, remove a entrada recriada pela escrita (a exclusão pode já ter limpado o estado)
+     * e lança LuminariaNotFoundException.
+     */
+    private void requireStillPresent(Long luminariaId) {
+        if (!topologyService.containsLuminaria(luminariaId)) {
+            stateTable.remove(luminariaId);
+            throw new LuminariaNotFoundException(luminariaId);
+        }
     }
     
     /**
      * Obtém o estado atual de uma luminária
      */
     public boolean getLuminariaState(Long luminariaId) {
-        return luminariaStates.getOrDefault(luminariaId, false);
+        return LuminariaStateTable.isOn(stateTable.get(luminariaId));
     }
     
     /**
-     * Obtém todos os estados das luminárias
+     * Obtém o estado atual de uma luminária (ligada, brilho e cor) com a sua versão (usada como ETag)
+     */
+    public StateChange getVersionedState(Long luminariaId) {
+        requireLuminaria(luminariaId);
+        return StateChange.of(luminariaId, stateTable.get(luminariaId));
+    }
+    
+    /**
+     * Obtém todos os estados das luminárias.
+     * Cópia imutável compartilhada: leitores da mesma epoch recebem o mesmo objeto, sem cópia.
      */
     public Map<Long, Boolean> getAllStates() {
-        return new ConcurrentHashMap<>(luminariaStates);
+        return currentSnapshot().asMap();
     }
     
     /**
-     * Adiciona um novo cliente SSE
+     * Cópia do estado na sequência de eventos atual; criada no máximo uma vez por epoch
      */
-    public SseEmitter addSseClient() {
-        SseEmitter emitter = new SseEmitter(0L); // Timeout infinito (0L significa sem timeout)
-        sseEmitters.add(emitter);
+    private LuminariaStateSnapshot currentSnapshot() {
+        LuminariaStateSnapshot current = snapshot;
+        if (current.getEpoch() == eventSequence.get()) {
+            return current;
+        }
+        return refreshSnapshot();
+    }
+    
+    /**
+     * Recria a cópia se a sequência avançou, sem o publishLock: copiar e ordenar a tabela
+     * não bloqueia publicações, comandos nem novos clientes (não chamar com o publishLock).
+     * 
+     * A epoch é lida antes da cópia, então a cópia tem tudo o que foi publicado até ela e talvez
+     * mudanças posteriores (os eventos seguintes entregues junto com ela são filtrados pela versão,
+     * ver {@link #withoutStaleChanges}). Uma cópia que cruzou uma remoção de luminárias é refeita.
+     */
+    private LuminariaStateSnapshot refreshSnapshot() {
+        synchronized (snapshotLock) {
+            while (true) {
+                LuminariaStateSnapshot current = snapshot;
+                long epoch = eventSequence.get();
+                if (current.getEpoch() == epoch) {
+                    return current;
+                }
+                
+                long generation = removalGeneration;
+                LuminariaStateSnapshot created = LuminariaStateSnapshot.of(epoch, stateTable, publishedSequences);
+                synchronized (publishLock) {
+                    if (removalGeneration == generation) {
+                        if (snapshot.getEpoch() < epoch) {
+                            snapshot = created;
+                        }
+                        return created;
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Cópia atual criada com o publishLock (consistente com a epoch). Só para o caso raro em que
+     * a cópia preparada para um novo cliente deixou de servir enquanto ele esperava o lock.
+     */
+    private LuminariaStateSnapshot refreshSnapshotLocked() {
+        long epoch = eventSequence.get();
+        if (snapshot.getEpoch() != epoch) {
+            snapshot = LuminariaStateSnapshot.of(epoch, stateTable, publishedSequences);
+        }
+        return snapshot;
+    }
+    
+    /**
+     * Percorre as entradas de uma cópia que interessam a uma inscrição
+     */
+    private void forEachInScope(LuminariaStateSnapshot states, SseSubscription subscription,
+                                LuminariaStateTable.EntryConsumer consumer) {
+        if (subscription.isUnfiltered()) {
+            states.forEach(consumer);
+            return;
+        }
         
-        logger.info("Novo cliente SSE conectado. Total de conexões: {}", sseEmitters.size());
+        if (subscription.getEnvironmentIds().isEmpty() && subscription.getSubambientes().isEmpty()) {
+            // Só luminárias específicas: busca binária na cópia, sem percorrê-la inteira (em ordem de id)
+            for (Long luminariaId : new TreeSet<>(subscription.getLuminariaIds())) {
+                if (states.contains(luminariaId)) {
+                    consumer.accept(luminariaId, states.get(luminariaId, LuminariaStateTable.INITIAL));
+                }
+            }
+            return;
+        }
         
-        // Remove o emitter quando a conexão for fechada
-        emitter.onCompletion(() -> {
-            sseEmitters.remove(emitter);
-            logger.info("Cliente SSE desconectado (completion). Total de conexões: {}", sseEmitters.size());
-        });
-        emitter.onTimeout(() -> {
-            sseEmitters.remove(emitter);
-            logger.info("Cliente SSE desconectado (timeout). Total de conexões: {}", sseEmitters.size());
-        });
-        emitter.onError((ex) -> {
-            sseEmitters.remove(emitter);
-            logger.error("Erro na conexão SSE. Total de conexões: {}. Erro: {}", sseEmitters.size(), ex.getMessage());
+        states.forEach((luminariaId, packed) -> {
+            Long environmentId = topologyService.getEnvironmentId(luminariaId);
+            if (subscription.matches(luminariaId, environmentId, topologyService.getSubambiente(environmentId))) {
+                consumer.accept(luminariaId, packed);
+            }
         });
+    }
+    
+    /**
+     * Adiciona um novo cliente SSE inscrito nas luminárias indicadas (estado inicial em JSON)
+     */
+    public SseEmitter addSseClient(SseSubscription subscription, String lastEventId) {
+        return addSseClient(subscription, lastEventId, SseSnapshotFormat.JSON, null);
+    }
+    
+    /**
+     * Adiciona um novo cliente SSE inscrito nas luminárias indicadas.
+     * 
+     * Se o cliente informar o último evento recebido (Last-Event-ID) e esse ponto ainda
+     * estiver no buffer de eventos recentes, recebe apenas os eventos perdidos. Senão, se
+     * informar o id de um snapshot que já possui ({@code since}, desta execução),
+     * recebe um state_diff só com as luminárias publicadas depois dela; caso contrário (ou se
+     * alguma luminária foi removida depois dela) recebe o initial_state completo.
+     * 
+     * @param snapshotFormat formato do initial_state/state_diff
+     * @param since id do snapshot que o cliente já possui, ou null
+     */
+    public SseEmitter addSseClient(SseSubscription subscription, String lastEventId,
+                                   SseSnapshotFormat snapshotFormat, String since) {
+        SseEmitter emitter = new SseEmitter(0L); // Timeout infinito (0L significa sem timeout)
         
-        // Envia o estado atual de todas as luminárias para o novo cliente
-        try {
-            LuminariaStateEvent initialEvent = new LuminariaStateEvent(
-                "initial_state", 
-                getAllStates(), 
-                LocalDateTime.now()
-            );
-            emitter.send(SseEmitter.event()
-                .name("initial_state")
-                .data(initialEvent)
-                .id(String.valueOf(System.currentTimeMillis())));
-            
-            logger.info("Estado inicial enviado para novo cliente SSE");
-        } catch (IOException e) {
-            sseEmitters.remove(emitter);
-            logger.error("Erro ao enviar estado inicial para cliente SSE: {}", e.getMessage());
+        // Cópia e initial_state preparados fora do lock; sob o mesmo lock da publicação só se
+        // enfileiram, então nenhum evento fica entre o snapshot/replay e a fila do cliente
+        PreparedState prepared = prepareInitialState(subscription, snapshotFormat, lastEventId, since);
+        synchronized (publishLock) {
+            SseClient client = sseDispatcher.register(emitter, subscription, snapshotFormat);
+            logger.info("Novo cliente SSE conectado. Total de conexões: {}", sseDispatcher.getClientCount());
+            sendInitialEvents(client, lastEventId, since, prepared);
         }
         
         return emitter;
     }
     
     /**
-     * Transmite mudança de estado para todos os clientes conectados
+     * Adiciona um cliente WebSocket: mesma inscrição, retomada e fila do SSE, com os frames
+     * entregues ao {@code sink} da conexão. Deve ser removido com {@link #removeClient(SseClient)}.
+     */
+    public SseClient addWebSocketClient(SseSink sink, SseSubscription subscription, String lastEventId, String since) {
+        PreparedState prepared = prepareInitialState(subscription, SseSnapshotFormat.JSON, lastEventId, since);
+        synchronized (publishLock) {
+            SseClient client = sseDispatcher.register(sink, subscription, SseSnapshotFormat.JSON);
+            logger.info("Novo cliente WebSocket conectado. Total de conexões: {}", sseDispatcher.getClientCount());
+            sendInitialEvents(client, lastEventId, since, prepared);
+            return client;
+        }
+    }
+    
+    /**
+     * Remove um cliente registrado com {@link #addWebSocketClient}
+     */
+    public void removeClient(SseClient client) {
+        sseDispatcher.unregister(client);
+        logger.info("Cliente WebSocket desconectado. Total de conexões: {}", sseDispatcher.getClientCount());
+    }
+    
+    /**
+     * Conexões de eventos abertas (SSE e WebSocket), com a saúde de cada uma
      */
-    private void broadcastStateChange(Long luminariaId, boolean isOn) {
-        logger.info("🔥 BROADCASTING STATE CHANGE: luminária {} está {}", luminariaId, isOn ? "ligada" : "desligada");
-        logger.info("📊 Clientes SSE conectados: {}", sseEmitters.size());
+    public List<SseClient> getClients() {
+        return sseDispatcher.getClients();
+    }
+    
+    /**
+     * Conexões removidas automaticamente por não acompanharem os eventos
+     */
+    public long getEvictedClientCount() {
+        return sseDispatcher.getEvictedCount();
+    }
+    
+    /**
+     * Prepara, sem o publishLock, a cópia e o initial_state (ou state_diff) de um novo cliente.
+     * A cópia compartilhada só é refeita se estiver velha demais ou for anterior ao snapshot
+     * que o cliente já tem.
+     * 
+     * @return null se o cliente deve ser retomado pelo Last-Event-ID
+     */
+    private PreparedState prepareInitialState(SseSubscription subscription, SseSnapshotFormat snapshotFormat,
+                                              String lastEventId, String since) {
+        if (findMissedEvents(lastEventId) != null) {
+            return null;
+        }
+        
+        // Geração lida antes da cópia: se não mudar até o registro, a cópia não tem luminárias removidas
+        long generation = removalGeneration;
+        Long sinceEpoch = parseEventId(since);
+        boolean diff = canSendDiff(sinceEpoch);
+        
+        LuminariaStateSnapshot states = snapshot;
+        if (states.getEpoch() < 0 || states.getAgeMillis() > snapshotMaxAgeMillis
+                || (diff && sinceEpoch > states.getEpoch())) {
+            states = refreshSnapshot();
+        }
+        return new PreparedState(states, generation,
+            createInitialFrame(states, subscription, snapshotFormat, diff ? sinceEpoch : null));
+    }
+    
+    /**
+     * Se um cliente com a cópia de sinceEpoch pode receber só o state_diff desde ela
+     */
+    private boolean canSendDiff(Long sinceEpoch) {
+        return sinceEpoch != null && sinceEpoch >= firstSequence && sinceEpoch <= eventSequence.get()
+            && sinceEpoch > lastRemovalEpoch; // a cópia do cliente pode ter luminárias já removidas
+    }
+    
+    /**
+     * initial_state da cópia, ou state_diff desde sinceEpoch se não for null
+     */
+    private SseFrame createInitialFrame(LuminariaStateSnapshot states, SseSubscription subscription,
+                                        SseSnapshotFormat snapshotFormat, Long sinceEpoch) {
+        return sinceEpoch != null
+            ? createStateFrame("state_diff", states.since(sinceEpoch), subscription, snapshotFormat, sinceEpoch)
+            : createInitialStateFrame(states, subscription, snapshotFormat);
+    }
+    
+    /**
+     * Enfileira para um cliente recém-registrado os eventos perdidos, ou o estado preparado
+     * e os eventos posteriores a ele (chamado com o publishLock)
+     */
+    private void sendInitialEvents(SseClient client, String lastEventId, String since, PreparedState prepared) {
+        SseSubscription subscription = client.getSubscription();
+        SseSnapshotFormat snapshotFormat = client.getSnapshotFormat();
+        
+        List<LuminariaStateEvent> missedEvents = findMissedEvents(lastEventId);
+        if (missedEvents != null) {
+            int replayed = 0;
+            for (LuminariaStateEvent event : missedEvents) {
+                SseFrame frame = encodeForSubscription(subscription, event);
+                if (frame != null) {
+                    sseDispatcher.send(client, frame);
+                    replayed++;
+                }
+            }
+            logger.info("Cliente SSE retomado a partir do evento {}: {} eventos reenviados", lastEventId, replayed);
+            sendAggregates(client);
+            return;
+        }
+        
+        // Cópia preparada + eventos posteriores a ela. Só é refeita aqui (com o lock) se houve uma
+        // remoção de luminárias ou o buffer deixou de cobrir os eventos desde a sua epoch
+        LuminariaStateSnapshot states = prepared != null ? prepared.states : LuminariaStateSnapshot.EMPTY;
+        List<LuminariaStateEvent> laterEvents = states.getEpoch() == eventSequence.get()
+            ? Collections.emptyList()
+            : states.getEpoch() >= 0 ? recentEvents.since(states.getEpoch()) : null;
+        SseFrame stateFrame;
+        if (prepared != null && laterEvents != null && prepared.removalGeneration == removalGeneration) {
+            stateFrame = prepared.frame;
+        } else {
+            Long sinceEpoch = parseEventId(since);
+            boolean diff = canSendDiff(sinceEpoch);
+            states = refreshSnapshotLocked();
+            laterEvents = Collections.emptyList();
+            stateFrame = createInitialFrame(states, subscription, snapshotFormat, diff ? sinceEpoch : null);
+        }
+        
+        // Estado (ou diff) das luminárias da inscrição é o primeiro item da fila do cliente
+        sseDispatcher.sendSnapshot(client, stateFrame);
+        for (LuminariaStateEvent event : laterEvents) {
+            LuminariaStateEvent newer = withoutStaleChanges(states, event);
+            SseFrame frame = newer != null ? encodeForSubscription(subscription, newer) : null;
+            if (frame != null) {
+                sseDispatcher.send(client, frame);
+            }
+        }
+        sendAggregates(client);
+    }
+    
+    /**
+     * Enfileira os contadores atuais do escopo do cliente, se houver (chamado com o publishLock)
+     */
+    private void sendAggregates(SseClient client) {
+        AggregatesEvent event = createAggregatesEvent(environmentsInScope(client.getSubscription()), client.getSubscription());
+        if (!event.isEmpty()) {
+            sseDispatcher.send(client, sseFrameEncoder.encode(event.getEventType(), null, event));
+        }
+    }
+    
+    /**
+     * Eventos posteriores ao Last-Event-ID, ou null se o cliente precisa de um snapshot completo
+     */
+    private List<LuminariaStateEvent> findMissedEvents(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return null;
+        }
+        
+        Long lastSequence = parseEventId(lastEventId);
+        if (lastSequence == null) {
+            return null;
+        }
+        
+        if (lastSequence == eventSequence.get()) {
+            return Collections.emptyList(); // Nada perdido
+        }
+        return recentEvents.since(lastSequence);
+    }
+    
+    /**
+     * Id SSE de uma sequência. Com replicação o id leva a instância ("<instância>.<sequência>"),
+     * já que cada instância tem a própria sequência e o cliente pode reconectar em outra.
+     */
+    private String eventId(long sequence) {
+        return replicator.isEnabled() ? replicator.getNodeId() + "." + sequence : String.valueOf(sequence);
+    }
+    
+    /**
+     * Sequência de um id SSE desta instância, ou null se inválido ou gerado por outra instância
+     */
+    private Long parseEventId(String eventId) {
+        if (eventId == null || eventId.isBlank()) {
+            return null;
+        }
+        String value = eventId.trim();
+        if (replicator.isEnabled()) {
+            String prefix = replicator.getNodeId() + ".";
+            if (!value.startsWith(prefix)) {
+                return null;
+            }
+            value = value.substring(prefix.length());
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    private boolean matches(SseSubscription subscription, Long luminariaId) {
+        Long environmentId = topologyService.getEnvironmentId(luminariaId);
+        return subscription.matches(luminariaId, environmentId, topologyService.getSubambiente(environmentId));
+    }
+    
+    /**
+     * Evento sem as mudanças que a cópia já tem em versão igual ou mais nova (a cópia é criada
+     * sem o publishLock e pode ter mudanças publicadas depois da sua epoch), ou null se não sobra nenhuma
+     */
+    private LuminariaStateEvent withoutStaleChanges(LuminariaStateSnapshot states, LuminariaStateEvent event) {
+        if (!"state_changes".equals(event.getEventType())) {
+            return isNewer(states, event.getLuminariaId(), event.getVersion()) ? event : null;
+        }
+        
+        List<StateChange> newerChanges = new ArrayList<>();
+        for (StateChange change : event.getChanges()) {
+            if (isNewer(states, change.getLuminariaId(), change.getVersion())) {
+                newerChanges.add(change);
+            }
+        }
+        if (newerChanges.size() == event.getChanges().size()) {
+            return event;
+        }
+        if (newerChanges.isEmpty()) {
+            return null;
+        }
+        
+        LuminariaStateEvent newerEvent = new LuminariaStateEvent("state_changes", newerChanges, event.getTimestamp());
+        newerEvent.setSequence(event.getSequence());
+        return newerEvent;
+    }
+    
+    private static boolean isNewer(LuminariaStateSnapshot states, Long luminariaId, Long version) {
+        return version == null || !states.contains(luminariaId)
+            || version > LuminariaStateTable.version(states.get(luminariaId, LuminariaStateTable.INITIAL));
+    }
+    
+    /**
+     * Frame de um evento de estado no escopo de uma inscrição, ou null se nada interessa a ela.
+     * Eventos em lote são reduzidos às mudanças das luminárias da inscrição.
+     */
+    private SseFrame encodeForSubscription(SseSubscription subscription, LuminariaStateEvent event) {
+        if (!"state_changes".equals(event.getEventType())) {
+            return matches(subscription, event.getLuminariaId()) ? encodeStateChange(event) : null;
+        }
+        
+        List<StateChange> visibleChanges = new ArrayList<>();
+        for (StateChange change : event.getChanges()) {
+            if (matches(subscription, change.getLuminariaId())) {
+                visibleChanges.add(change);
+            }
+        }
+        if (visibleChanges.isEmpty()) {
+            return null;
+        }
+        if (visibleChanges.size() == event.getChanges().size()) {
+            return encodeStateChange(event);
+        }
+        
+        LuminariaStateEvent scopedEvent = new LuminariaStateEvent("state_changes", visibleChanges, event.getTimestamp());
+        scopedEvent.setSequence(event.getSequence());
+        return encodeStateChange(scopedEvent);
+    }
+    
+    /**
+     * Cria o evento initial_state de uma cópia no escopo da inscrição do cliente.
+     * O id é a epoch da cópia: um cliente que reconectar a partir dele recebe só os eventos seguintes.
+     * Sem filtro, o frame é serializado uma vez por cópia e formato, e compartilhado.
+     */
+    private SseFrame createInitialStateFrame(LuminariaStateSnapshot states, SseSubscription subscription,
+                                             SseSnapshotFormat format) {
+        if (!subscription.isUnfiltered()) {
+            return createStateFrame("initial_state", states, subscription, format, null);
+        }
+        
+        EncodedSnapshot encoded = encodedSnapshot;
+        if (encoded == null || encoded.snapshot != states) {
+            encoded = new EncodedSnapshot(states);
+            encodedSnapshot = encoded;
+        }
+        SseFrame frame = encoded.frames[format.ordinal()];
+        if (frame == null) {
+            frame = createStateFrame("initial_state", states, subscription, format, null);
+            encoded.frames[format.ordinal()] = frame;
+        }
+        return frame;
+    }
+    
+    /**
+     * Cria um evento com os estados de uma cópia (inteira ou diff) no escopo da inscrição e no formato pedido
+     */
+    private SseFrame createStateFrame(String eventType, LuminariaStateSnapshot states, SseSubscription subscription,
+                                      SseSnapshotFormat format, Long sinceEpoch) {
+        LuminariaStateEvent event;
+        if (format == SseSnapshotFormat.JSON) {
+            // Brilho e cor só das luminárias fora do padrão (ausentes em levels: brilho 100, branco)
+            Map<Long, Boolean> scopedStates = subscription.isUnfiltered() ? states.asMap() : new HashMap<>();
+            Map<Long, Level> levels = new HashMap<>();
+            forEachInScope(states, subscription, (luminariaId, packed) -> {
+                if (!subscription.isUnfiltered()) {
+                    scopedStates.put(luminariaId, LuminariaStateTable.isOn(packed));
+                }
+                int brightness = LuminariaStateTable.brightness(packed);
+                int color = LuminariaStateTable.color(packed);
+                if (brightness != LuminariaStateTable.DEFAULT_BRIGHTNESS || color != LuminariaStateTable.DEFAULT_COLOR) {
+                    levels.put(luminariaId, new Level(brightness, LuminariaStateTable.formatColor(color)));
+                }
+            });
+            event = new LuminariaStateEvent(eventType, scopedStates, LocalDateTime.now());
+            event.setLevels(levels.isEmpty() ? null : levels);
+        } else {
+            CompactStates.Builder compact = new CompactStates.Builder();
+            forEachInScope(states, subscription, compact::add);
+            event = new LuminariaStateEvent(eventType, (Map<Long, Boolean>) null, LocalDateTime.now());
+            event.setCompact(compact.build(format == SseSnapshotFormat.COMPACT_GZIP));
+        }
+        
+        long sequence = states.getEpoch();
+        event.setSequence(sequence);
+        event.setSince(sinceEpoch);
+        return sseFrameEncoder.encode(eventType, eventId(sequence), event);
+    }
+    
+    private SseFrame encodeStateChange(LuminariaStateEvent event) {
+        return sseFrameEncoder.encode(event.getEventType(), eventId(event.getSequence()), event);
+    }
+    
+    /**
+     * Marca a luminária como alterada; a mudança sai no próximo evento publicado.
+     * Sem lock (com janela de agrupamento): os comandos concorrentes não disputam o publishLock.
+     */
+    private void publishStateChange(Long luminariaId) {
+        pendingChanges.add(luminariaId);
+        schedulePublish();
+    }
+    
+    /**
+     * Publica as mudanças pendentes agora (janela 0) ou ao fim da janela de agrupamento.
+     * 
+     * publishPending limpa a flag antes de esvaziar o conjunto: uma luminária adicionada depois
+     * da limpeza é vista por essa publicação ou agenda a seguinte.
+     */
+    private void schedulePublish() {
+        if (coalesceWindowMillis <= 0) {
+            synchronized (publishLock) {
+                publishPending();
+            }
+            return;
+        }
+        if (publishScheduled.compareAndSet(false, true)) {
+            coalesceExecutor.schedule(this::publishPendingQuietly, coalesceWindowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private void publishPendingQuietly() {
+        try {
+            synchronized (publishLock) {
+                publishPending();
+            }
+        } catch (Exception e) {
+            logger.error("Erro ao publicar mudanças de estado: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Publica o estado atual de cada luminária pendente: uma mudança sai como state_change,
+     * várias num único state_changes (chamado com o publishLock)
+     */
+    private void publishPending() {
+        publishScheduled.set(false);
+        if (pendingChanges.isEmpty()) {
+            return;
+        }
+        
+        List<StateChange> changes = new ArrayList<>(pendingChanges.size());
+        Set<Long> changedEnvironments = new LinkedHashSet<>();
+        // Retira antes de ler o estado: uma mudança posterior volta ao conjunto para a próxima publicação
+        for (Iterator<Long> pending = pendingChanges.iterator(); pending.hasNext(); ) {
+            Long luminariaId = pending.next();
+            pending.remove();
+            collectChange(luminariaId, changes, changedEnvironments);
+        }
+        
+        if (changes.isEmpty()) {
+            return;
+        }
+        long sequence = changes.size() == 1 ? broadcastStateChange(changes.get(0)) : broadcastStateChanges(changes);
+        for (StateChange change : changes) {
+            publishedSequences.update(change.getLuminariaId(), sequence, previous -> sequence);
+        }
+        if (!changedEnvironments.isEmpty()) {
+            broadcastAggregates(changedEnvironments);
+        }
+    }
+    
+    /**
+     * Contadores ligadas/total de todos os ambientes e subambientes (mantidos a cada mudança publicada)
+     */
+    public AggregatesEvent getAggregates() {
+        return createAggregatesEvent(topologyService.getEnvironmentIds(), SseSubscription.all());
+    }
+    
+    /**
+     * Publica os contadores atuais dos ambientes indicados e dos seus subambientes
+     * (ex.: depois de criar ou excluir luminárias)
+     */
+    public void publishAggregates(Collection<Long> environmentIds) {
+        synchronized (publishLock) {
+            broadcastAggregates(environmentIds);
+        }
+    }
+    
+    /**
+     * Transmite os contadores dos ambientes alterados e dos seus subambientes (chamado com o publishLock).
+     * Sem id: os contadores são valores atuais, não entram na sequência de eventos nem no replay.
+     */
+    private void broadcastAggregates(Collection<Long> environmentIds) {
+        Set<String> topics = new HashSet<>();
+        for (Long environmentId : environmentIds) {
+            topics.addAll(SseSubscription.topicsForEnvironment(environmentId, topologyService.getSubambiente(environmentId)));
+        }
+        
+        AggregatesEvent event = createAggregatesEvent(environmentIds, SseSubscription.all());
+        sseDispatcher.publish(sseFrameEncoder.encode(event.getEventType(), null, event), topics, subscription -> {
+            AggregatesEvent scoped = createAggregatesEvent(environmentIds, subscription);
+            return scoped.isEmpty() ? null : sseFrameEncoder.encode(scoped.getEventType(), null, scoped);
+        });
+    }
+    
+    /**
+     * Evento aggregates com os ambientes indicados e seus subambientes, no escopo da inscrição.
+     * Inscrições só por luminária não recebem contadores.
+     */
+    private AggregatesEvent createAggregatesEvent(Collection<Long> environmentIds, SseSubscription subscription) {
+        List<Aggregate> environments = new ArrayList<>();
+        Set<String> subambientes = new TreeSet<>();
+        for (Long environmentId : new TreeSet<>(environmentIds)) {
+            String subambiente = topologyService.getSubambiente(environmentId);
+            boolean subambienteInScope = subscription.isUnfiltered()
+                || (subambiente != null && subscription.getSubambientes().contains(subambiente));
+            if (subambienteInScope || subscription.getEnvironmentIds().contains(environmentId)) {
+                LuminariaTopologyService.Counts counts = topologyService.getEnvironmentCounts(environmentId);
+                environments.add(new Aggregate(environmentId, null, counts.getOn(), counts.getTotal()));
+            }
+            if (subambienteInScope && subambiente != null) {
+                subambientes.add(subambiente);
+            }
+        }
+        
+        List<Aggregate> subambienteAggregates = new ArrayList<>(subambientes.size());
+        for (String subambiente : subambientes) {
+            LuminariaTopologyService.Counts counts = topologyService.getSubambienteCounts(subambiente);
+            subambienteAggregates.add(new Aggregate(null, subambiente, counts.getOn(), counts.getTotal()));
+        }
+        return new AggregatesEvent(environments, subambienteAggregates, LocalDateTime.now());
+    }
+    
+    /**
+     * Ambientes cujos contadores interessam a uma inscrição (todos, para quem não tem filtro)
+     */
+    private Set<Long> environmentsInScope(SseSubscription subscription) {
+        if (subscription.isUnfiltered()) {
+            return topologyService.getEnvironmentIds();
+        }
+        Set<Long> environmentIds = new HashSet<>();
+        for (Long environmentId : subscription.getEnvironmentIds()) {
+            if (topologyService.containsAmbiente(environmentId)) {
+                environmentIds.add(environmentId);
+            }
+        }
+        for (Long environmentId : topologyService.getEnvironmentIds()) {
+            String subambiente = topologyService.getSubambiente(environmentId);
+            if (subambiente != null && subscription.getSubambientes().contains(subambiente)) {
+                environmentIds.add(environmentId);
+            }
+        }
+        return environmentIds;
+    }
+    
+    /**
+     * Transmite a mudança de estado de uma luminária para os clientes interessados (chamado com o publishLock)
+     * 
+     * @return sequência do evento
+     */
+    private long broadcastStateChange(StateChange change) {
+        long started = System.nanoTime();
+        Long luminariaId = change.getLuminariaId();
         
         LuminariaStateEvent event = new LuminariaStateEvent(
             "state_change", 
             luminariaId, 
-            isOn, 
+            change.getIsOn(), 
             LocalDateTime.now()
         );
+        event.setVersion(change.getVersion());
+        event.setBrightness(change.getBrightness());
+        event.setColor(change.getColor());
         
-        logger.info("📤 Evento criado: {}", event);
-        
-        AtomicInteger clientsRemoved = new AtomicInteger(0);
-        AtomicInteger clientsNotified = new AtomicInteger(0);
-        
-        // Remove emitters que falharam
-        sseEmitters.removeIf(emitter -> {
-            try {
-                logger.info("📤 Enviando para cliente SSE...");
-                emitter.send(SseEmitter.event()
-                    .name("state_change")
-                    .data(event)
-                    .id(String.valueOf(System.currentTimeMillis())));
-                clientsNotified.incrementAndGet();
-                logger.info("✅ Evento enviado com sucesso para cliente");
-                return false; // Mantém na lista
-            } catch (IOException e) {
-                logger.warn("❌ Removendo cliente SSE devido a erro de envio: {}", e.getMessage());
-                clientsRemoved.incrementAndGet();
-                return true; // Remove da lista
-            }
-        });
+        Long environmentId = topologyService.getEnvironmentId(luminariaId);
+        List<String> topics = SseSubscription.topicsFor(luminariaId, environmentId, topologyService.getSubambiente(environmentId));
+        
+        long sequence = eventSequence.incrementAndGet();
+        event.setSequence(sequence);
+        recentEvents.add(sequence, event);
+        
+        // Serializado uma única vez; os mesmos bytes vão para todos os clientes interessados
+        int clientsQueued = sseDispatcher.publish(encodeStateChange(event), topics);
         
-        logger.info("🎯 RESULTADO BROADCAST: {} clientes notificados, {} clientes removidos", 
-                   clientsNotified.get(), clientsRemoved.get());
+        recordBroadcast(stateChangeEvents, 1, clientsQueued, started);
+        logger.trace("Evento {}: luminária {} {} (versão {}), enfileirado para {} clientes", sequence, luminariaId,
+                     change.getIsOn() ? "ligada" : "desligada", change.getVersion(), clientsQueued);
+        return sequence;
     }
     
     /**
-     * Envia heartbeat para todos os clientes conectados
+     * Transmite várias mudanças num único evento state_changes (deve ser chamado com o publishLock).
+     * Clientes filtrados recebem só as mudanças da sua inscrição.
+     * 
+     * @return sequência do evento
      */
-    private void sendHeartbeat() {
-        if (sseEmitters.isEmpty()) {
-            return;
+    private long broadcastStateChanges(List<StateChange> changes) {
+        long started = System.nanoTime();
+        LuminariaStateEvent event = new LuminariaStateEvent("state_changes", changes, LocalDateTime.now());
+        
+        Set<String> topics = new HashSet<>();
+        for (StateChange change : changes) {
+            Long environmentId = topologyService.getEnvironmentId(change.getLuminariaId());
+            topics.addAll(SseSubscription.topicsFor(
+                change.getLuminariaId(), environmentId, topologyService.getSubambiente(environmentId)));
         }
         
-        logger.debug("Enviando heartbeat para {} clientes SSE", sseEmitters.size());
+        long sequence = eventSequence.incrementAndGet();
+        event.setSequence(sequence);
+        recentEvents.add(sequence, event);
         
-        AtomicInteger clientsRemoved = new AtomicInteger(0);
-        AtomicInteger clientsNotified = new AtomicInteger(0);
+        SseFrame fullFrame = encodeStateChange(event);
+        int clientsQueued = sseDispatcher.publish(fullFrame, topics,
+            subscription -> encodeForSubscription(subscription, event));
         
-        sseEmitters.removeIf(emitter -> {
-            try {
-                emitter.send(SseEmitter.event()
-                    .name("heartbeat")
-                    .data("{\"type\":\"heartbeat\",\"timestamp\":\"" + LocalDateTime.now() + "\"}")
-                    .id(String.valueOf(System.currentTimeMillis())));
-                clientsNotified.incrementAndGet();
-                return false; // Mantém na lista
-            } catch (IOException e) {
-                logger.warn("Removendo cliente SSE durante heartbeat: {}", e.getMessage());
-                clientsRemoved.incrementAndGet();
-                return true; // Remove da lista
-            }
-        });
+        recordBroadcast(stateChangesEvents, changes.size(), clientsQueued, started);
+        logger.trace("Evento {}: lote de {} mudanças enfileirado para {} clientes", sequence, changes.size(), clientsQueued);
+        return sequence;
+    }
+    
+    private void recordBroadcast(Counter events, int changes, int clientsQueued, long startedNanos) {
+        fanoutTimer.record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+        events.increment();
+        publishedChanges.increment(changes);
+        clientsNotified.increment(clientsQueued);
+    }
+    
+    /**
+     * Cria o evento de heartbeat
+     */
+    private SseFrame createHeartbeatFrame() {
+        // Sem id: o heartbeat não altera o Last-Event-ID do cliente
+        return sseFrameEncoder.encode(
+            "heartbeat",
+            null,
+            "{\"type\":\"heartbeat\",\"timestamp\":\"" + LocalDateTime.now() + "\"}");
+    }
+    
+    /**
+     * Estado inicial de um novo cliente preparado fora do publishLock: a cópia, a geração de
+     * remoções lida antes dela e o frame já serializado (initial_state ou state_diff)
+     */
+    private static final class PreparedState {
+        private final LuminariaStateSnapshot states;
+        private final long removalGeneration;
+        private final SseFrame frame;
+        
+        PreparedState(LuminariaStateSnapshot states, long removalGeneration, SseFrame frame) {
+            this.states = states;
+            this.removalGeneration = removalGeneration;
+            this.frame = frame;
+        }
+    }
+    
+    /**
+     * initial_state sem filtro já serializado para uma cópia, por formato
+     */
+    private static final class EncodedSnapshot {
+        private final LuminariaStateSnapshot snapshot;
+        private final SseFrame[] frames = new SseFrame[SseSnapshotFormat.values().length];
         
-        if (clientsRemoved.get() > 0) {
-            logger.info("Heartbeat: {} clientes ativos, {} clientes removidos", 
-                       clientsNotified.get(), clientsRemoved.get());
+        EncodedSnapshot(LuminariaStateSnapshot snapshot) {
+            this.snapshot = snapshot;
         }
     }
     
@@ -202,9 +1348,17 @@ public class LuminariaStateService {
      */
     public static class LuminariaStateEvent {
         private String eventType;
+        private Long sequence;
         private Long luminariaId;
         private Boolean isOn;
+        private Long version;
+        private Integer brightness;
+        private String color;
         private Map<Long, Boolean> allStates;
+        private Map<Long, Level> levels;
+        private Long since;
+        private CompactStates compact;
+        private List<StateChange> changes;
         private LocalDateTime timestamp;
         
         // Construtor para mudança de estado individual
@@ -222,18 +1376,142 @@ public class LuminariaStateService {
             this.timestamp = timestamp;
         }
         
+        // Construtor para várias mudanças num único evento (state_changes)
+        public LuminariaStateEvent(String eventType, List<StateChange> changes, LocalDateTime timestamp) {
+            this.eventType = eventType;
+            this.changes = changes;
+            this.timestamp = timestamp;
+        }
+        
         // Getters
         public String getEventType() { return eventType; }
+        public Long getSequence() { return sequence; }
         public Long getLuminariaId() { return luminariaId; }
         public Boolean getIsOn() { return isOn; }
+        public Long getVersion() { return version; }
+        public Integer getBrightness() { return brightness; }
+        public String getColor() { return color; }
         public Map<Long, Boolean> getAllStates() { return allStates; }
+        public Map<Long, Level> getLevels() { return levels; }
+        public Long getSince() { return since; }
+        public CompactStates getCompact() { return compact; }
+        public List<StateChange> getChanges() { return changes; }
         public LocalDateTime getTimestamp() { return timestamp; }
         
         // Setters
         public void setEventType(String eventType) { this.eventType = eventType; }
+        public void setSequence(Long sequence) { this.sequence = sequence; }
         public void setLuminariaId(Long luminariaId) { this.luminariaId = luminariaId; }
         public void setIsOn(Boolean isOn) { this.isOn = isOn; }
+        public void setVersion(Long version) { this.version = version; }
+        public void setBrightness(Integer brightness) { this.brightness = brightness; }
+        public void setColor(String color) { this.color = color; }
         public void setAllStates(Map<Long, Boolean> allStates) { this.allStates = allStates; }
+        public void setLevels(Map<Long, Level> levels) { this.levels = levels; }
+        public void setSince(Long since) { this.since = since; }
+        public void setCompact(CompactStates compact) { this.compact = compact; }
+        public void setChanges(List<StateChange> changes) { this.changes = changes; }
         public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
     }
-}
\ No newline at end of file
+    
+    /**
+     * Evento com os contadores ligadas/total de ambientes e subambientes
+     */
+    public static class AggregatesEvent {
+        private final String eventType = "aggregates";
+        private final List<Aggregate> environments;
+        private final List<Aggregate> subambientes;
+        private final LocalDateTime timestamp;
+        
+        public AggregatesEvent(List<Aggregate> environments, List<Aggregate> subambientes, LocalDateTime timestamp) {
+            this.environments = environments;
+            this.subambientes = subambientes;
+            this.timestamp = timestamp;
+        }
+        
+        @JsonIgnore
+        public boolean isEmpty() {
+            return environments.isEmpty() && subambientes.isEmpty();
+        }
+        
+        public String getEventType() { return eventType; }
+        public List<Aggregate> getEnvironments() { return environments; }
+        public List<Aggregate> getSubambientes() { return subambientes; }
+        public LocalDateTime getTimestamp() { return timestamp; }
+    }
+    
+    /**
+     * Luminárias ligadas e total de um ambiente (environmentId) ou subambiente (subambiente)
+     */
+    public static class Aggregate {
+        private final Long environmentId;
+        private final String subambiente;
+        private final int on;
+        private final int total;
+        
+        public Aggregate(Long environmentId, String subambiente, int on, int total) {
+            this.environmentId = environmentId;
+            this.subambiente = subambiente;
+            this.on = on;
+            this.total = total;
+        }
+        
+        public Long getEnvironmentId() { return environmentId; }
+        public String getSubambiente() { return subambiente; }
+        public int getOn() { return on; }
+        public int getTotal() { return total; }
+    }
+    
+    /**
+     * Brilho e cor de uma luminária no initial_state
+     */
+    public static class Level {
+        private final Integer brightness;
+        private final String color;
+        
+        public Level(Integer brightness, String color) {
+            this.brightness = brightness;
+            this.color = color;
+        }
+        
+        public Integer getBrightness() { return brightness; }
+        public String getColor() { return color; }
+    }
+    
+    /**
+     * Estado de uma luminária após uma mudança, com a versão correspondente
+     */
+    public static class StateChange {
+        private final Long luminariaId;
+        private final Boolean isOn;
+        private final Long version;
+        private final Integer brightness;
+        private final String color;
+        
+        public StateChange(Long luminariaId, Boolean isOn, Long version, Integer brightness, String color) {
+            this.luminariaId = luminariaId;
+            this.isOn = isOn;
+            this.version = version;
+            this.brightness = brightness;
+            this.color = color;
+        }
+        
+        /**
+         * Estado a partir do valor empacotado da tabela
+         */
+        public static StateChange of(Long luminariaId, long packed) {
+            return new StateChange(
+                luminariaId,
+                LuminariaStateTable.isOn(packed),
+                LuminariaStateTable.version(packed),
+                LuminariaStateTable.brightness(packed),
+                LuminariaStateTable.formatColor(LuminariaStateTable.color(packed)));
+        }
+        
+        public Long getLuminariaId() { return luminariaId; }
+        public Boolean getIsOn() { return isOn; }
+        public Long getVersion() { return version; }
+        public Integer getBrightness() { return brightness; }
+        public String getColor() { return color; }
+    }
+}
@@ -0,0 +1,398 @@
+package com.scenario.automation.service;
+
+import com.scenario.automation.model.Ambiente;
+import com.scenario.automation.repository.AmbienteRepository;
+import com.scenario.automation.repository.LuminariaRepository;
+import com.scenario.automation.service.state.LongHashSet;
+import com.scenario.automation.service.state.LuminariaIdIndex;
+import com.scenario.automation.service.state.PackedLongTable;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mantém em memória a relação luminária -> ambiente -> subambiente.
+ *
+ * Usado no caminho quente (broadcast SSE, filtros de inscrição) para não consultar o banco.
+ * Carregado na criação do bean e atualizado pelos serviços de ambiente e luminária (após o commit)
+ * e pelas mudanças de topologia replicadas das outras instâncias.
+ */
+@Service
+public class LuminariaTopologyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LuminariaTopologyService.class);
+
+    // Ids de ambiente são positivos: valor devolvido pela tabela quando a luminária não tem ambiente
+    private static final long NO_ENVIRONMENT = 0L;
+
+    // id da luminária -> id do ambiente (sem boxing; alterado só com o lock de environmentCounts)
+    private final PackedLongTable luminariaEnvironments;
+
+    // Luminárias existentes (bitmap), para validar comandos sem consultar o banco
+    private final LuminariaIdIndex luminariaIds = new LuminariaIdIndex();
+
+    // id do ambiente -> ids das luminárias (índice reverso, para comandos em lote)
+    private final Map<Long, LongHashSet> environmentLuminarias = new ConcurrentHashMap<>();
+
+    // Ambientes existentes
+    private final Set<Long> environments = ConcurrentHashMap.newKeySet();
+
+    // id do ambiente -> subambiente normalizado (ausente quando o ambiente não tem subambiente)
+    private final Map<Long, String> environmentSubambientes = new ConcurrentHashMap<>();
+
+    // Luminárias ligadas (estado publicado) e contadores ligadas/total por ambiente; alterados
+    // só com o lock de environmentCounts, para que as duas contagens andem juntas
+    private final LuminariaIdIndex onLuminarias = new LuminariaIdIndex();
+    private final Map<Long, EnvironmentCount> environmentCounts = new HashMap<>();
+
+    @Autowired
+    private LuminariaRepository luminariaRepository;
+
+    @Autowired
+    private AmbienteRepository ambienteRepository;
+
+    public LuminariaTopologyService(@Value("${app.luminaires.state-table.expected-size:1024}") int expectedLuminarias,
+                                    @Value("${app.luminaires.state-table.off-heap:false}") boolean offHeap) {
+        this.luminariaEnvironments = new PackedLongTable(expectedLuminarias, offHeap);
+    }
+
+    /**
+     * Carrega a topologia do banco na criação do bean, antes de o servidor web aceitar requisições.
+     * Sem ela o índice de ids ficaria vazio e todo comando seria recusado com 404, então uma falha
+     * aqui interrompe a inicialização.
+     */
+    @PostConstruct
+    public void load() {
+        try {
+            for (Ambiente ambiente : ambienteRepository.findAll()) {
+                registerAmbiente(ambiente.getId(), ambiente.getSubambiente());
+            }
+            for (Object[] row : luminariaRepository.findAllIdAndEnvironmentId()) {
+                registerLuminaria((Long) row[0], (Long) row[1]);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Erro ao carregar topologia de luminárias: " + e.getMessage(), e);
+        }
+        logger.info("Topologia carregada: {} ambientes, {} luminárias (índice de ids: {} bytes, ambientes: {} bytes)",
+                   environments.size(), luminariaEnvironments.size(), luminariaIds.memoryBytes(),
+                   luminariaEnvironments.memoryBytes());
+    }
+
+    /**
+     * Recarrega a topologia do banco quando mudanças de outras instâncias podem ter se perdido:
+     * registra luminárias e ambientes novos ou alterados e remove os que não existem mais.
+     * Só remove o que já estava no índice antes da consulta (o registrado depois dela veio de um
+     * commit posterior).
+     *
+     * @return luminárias removidas do índice (o estado delas também deve ser removido)
+     */
+    public Set<Long> reload() {
+        Set<Long> missingAmbientes = new HashSet<>(environments);
+        LongHashSet missingLuminarias = new LongHashSet();
+        luminariaEnvironments.forEach((luminariaId, environmentId) -> missingLuminarias.add(luminariaId));
+
+        for (Ambiente ambiente : ambienteRepository.findAll()) {
+            registerAmbiente(ambiente.getId(), ambiente.getSubambiente());
+            missingAmbientes.remove(ambiente.getId());
+        }
+        for (Object[] row : luminariaRepository.findAllIdAndEnvironmentId()) {
+            registerLuminaria((Long) row[0], (Long) row[1]);
+            missingLuminarias.remove((Long) row[0]);
+        }
+
+        Set<Long> removed = missingLuminarias.toSet();
+        for (Long luminariaId : removed) {
+            removeLuminaria(luminariaId);
+        }
+        for (Long environmentId : missingAmbientes) {
+            removed.addAll(getLuminariaIds(environmentId));
+            removeAmbiente(environmentId);
+        }
+        logger.info("Topologia recarregada: {} ambientes e {} luminárias removidos",
+                   missingAmbientes.size(), removed.size());
+        return removed;
+    }
+
+    /**
+     * Busca no banco uma luminária ausente do índice (ex.: criada em outra instância cuja mudança
+     * de topologia ainda não chegou) e a registra
+     *
+     * @return true se a luminária existe
+     */
+    public boolean loadLuminaria(Long luminariaId) {
+        if (luminariaId == null) {
+            return false;
+        }
+        Optional<Long> environmentId = luminariaRepository.findEnvironmentIdById(luminariaId);
+        environmentId.ifPresent(id -> registerLuminaria(luminariaId, id));
+        return environmentId.isPresent();
+    }
+
+    /**
+     * Registra (ou atualiza) o ambiente de uma luminária
+     */
+    public void registerLuminaria(Long luminariaId, Long environmentId) {
+        if (luminariaId == null || environmentId == null) {
+            return;
+        }
+        luminariaIds.add(luminariaId);
+        Long previousEnvironmentId;
+        synchronized (environmentCounts) {
+            previousEnvironmentId = getEnvironmentId(luminariaId);
+            luminariaEnvironments.update(luminariaId, environmentId, previous -> environmentId);
+            if (!environmentId.equals(previousEnvironmentId)) {
+                int on = onLuminarias.contains(luminariaId) ? 1 : 0;
+                if (previousEnvironmentId != null) {
+                    environmentCount(previousEnvironmentId).add(-on, -1);
+                }
+                environmentCount(environmentId).add(on, 1);
+            }
+        }
+        if (previousEnvironmentId != null && !previousEnvironmentId.equals(environmentId)) {
+            removeFromEnvironment(previousEnvironmentId, luminariaId);
+        }
+        // compute (e não computeIfAbsent + add) para não perder a inclusão se o conjunto for removido ao mesmo tempo
+        environmentLuminarias.compute(environmentId, (key, luminariaIds) -> {
+            LongHashSet ids = luminariaIds != null ? luminariaIds : new LongHashSet();
+            ids.add(luminariaId);
+            return ids;
+        });
+    }
+
+    /**
+     * Remove uma luminária da topologia
+     */
+    public void removeLuminaria(Long luminariaId) {
+        luminariaIds.remove(luminariaId);
+        Long environmentId;
+        synchronized (environmentCounts) {
+            environmentId = getEnvironmentId(luminariaId);
+            luminariaEnvironments.remove(luminariaId);
+            boolean wasOn = onLuminarias.remove(luminariaId);
+            if (environmentId != null) {
+                environmentCount(environmentId).add(wasOn ? -1 : 0, -1);
+            }
+        }
+        if (environmentId != null) {
+            removeFromEnvironment(environmentId, luminariaId);
+        }
+    }
+
+    /**
+     * Registra (ou atualiza) o subambiente de um ambiente
+     */
+    public void registerAmbiente(Long environmentId, String subambiente) {
+        if (environmentId == null) {
+            return;
+        }
+        environments.add(environmentId);
+        String normalized = normalizeSubambiente(subambiente);
+        if (normalized == null) {
+            environmentSubambientes.remove(environmentId);
+        } else {
+            environmentSubambientes.put(environmentId, normalized);
+        }
+    }
+
+    /**
+     * Remove um ambiente e todas as suas luminárias da topologia
+     */
+    public void removeAmbiente(Long environmentId) {
+        environments.remove(environmentId);
+        environmentSubambientes.remove(environmentId);
+        LongHashSet removed = environmentLuminarias.remove(environmentId);
+        synchronized (environmentCounts) {
+            environmentCounts.remove(environmentId);
+            if (removed != null) {
+                removed.forEach(luminariaId -> {
+                    luminariaIds.remove(luminariaId);
+                    luminariaEnvironments.remove(luminariaId);
+                    onLuminarias.remove(luminariaId);
+                });
+            }
+        }
+    }
+
+    /**
+     * Atualiza a contagem de ligadas do ambiente da luminária com o estado publicado
+     *
+     * @return ambiente cuja contagem mudou, ou null se nada mudou (ou a luminária é desconhecida)
+     */
+    public Long updateOnState(Long luminariaId, boolean isOn) {
+        synchronized (environmentCounts) {
+            Long environmentId = getEnvironmentId(luminariaId);
+            if (environmentId == null) {
+                return null;
+            }
+            boolean changed = isOn ? onLuminarias.add(luminariaId) : onLuminarias.remove(luminariaId);
+            if (!changed) {
+                return null;
+            }
+            environmentCount(environmentId).add(isOn ? 1 : -1, 0);
+            return environmentId;
+        }
+    }
+
+    /**
+     * Luminárias ligadas e total de um ambiente (zeros se o ambiente não tem luminárias)
+     */
+    public Counts getEnvironmentCounts(Long environmentId) {
+        synchronized (environmentCounts) {
+            EnvironmentCount count = environmentCounts.get(environmentId);
+            return count != null ? new Counts(count.on, count.total) : Counts.ZERO;
+        }
+    }
+
+    /**
+     * Luminárias ligadas e total de um subambiente (soma dos seus ambientes, sem percorrer luminárias)
+     */
+    public Counts getSubambienteCounts(String subambiente) {
+        String normalized = normalizeSubambiente(subambiente);
+        int on = 0;
+        int total = 0;
+        synchronized (environmentCounts) {
+            for (Map.Entry<Long, String> entry : environmentSubambientes.entrySet()) {
+                EnvironmentCount count = environmentCounts.get(entry.getKey());
+                if (count != null && entry.getValue().equals(normalized)) {
+                    on += count.on;
+                    total += count.total;
+                }
+            }
+        }
+        return new Counts(on, total);
+    }
+
+    /**
+     * Ambientes existentes
+     */
+    public Set<Long> getEnvironmentIds() {
+        return new HashSet<>(environments);
+    }
+
+    /**
+     * Subambientes existentes (normalizados)
+     */
+    public Set<String> getSubambientes() {
+        return new HashSet<>(environmentSubambientes.values());
+    }
+
+    /**
+     * Verifica se a luminária existe (sem consultar o banco)
+     */
+    public boolean containsLuminaria(Long luminariaId) {
+        return luminariaId != null && luminariaIds.contains(luminariaId);
+    }
+
+    /**
+     * Verifica se o ambiente existe
+     */
+    public boolean containsAmbiente(Long environmentId) {
+        return environmentId != null && environments.contains(environmentId);
+    }
+
+    /**
+     * Ambiente da luminária, ou null se desconhecida
+     */
+    public Long getEnvironmentId(Long luminariaId) {
+        if (luminariaId == null) {
+            return null;
+        }
+        long environmentId = luminariaEnvironments.get(luminariaId, NO_ENVIRONMENT);
+        return environmentId != NO_ENVIRONMENT ? environmentId : null;
+    }
+
+    /**
+     * Subambiente normalizado do ambiente, ou null se não houver
+     */
+    public String getSubambiente(Long environmentId) {
+        return environmentId != null ? environmentSubambientes.get(environmentId) : null;
+    }
+
+    /**
+     * Luminárias de um ambiente
+     */
+    public Set<Long> getLuminariaIds(Long environmentId) {
+        LongHashSet luminariaIds = environmentLuminarias.get(environmentId);
+        return luminariaIds != null ? luminariaIds.toSet() : new HashSet<>();
+    }
+
+    /**
+     * Luminárias de todos os ambientes de um subambiente
+     */
+    public Set<Long> getLuminariaIdsBySubambiente(String subambiente) {
+        String normalized = normalizeSubambiente(subambiente);
+        Set<Long> luminariaIds = new HashSet<>();
+        if (normalized == null) {
+            return luminariaIds;
+        }
+        environmentSubambientes.forEach((environmentId, environmentSubambiente) -> {
+            if (normalized.equals(environmentSubambiente)) {
+                luminariaIds.addAll(getLuminariaIds(environmentId));
+            }
+        });
+        return luminariaIds;
+    }
+
+    /**
+     * Contador do ambiente, criado se necessário (chamado com o lock de environmentCounts)
+     */
+    private EnvironmentCount environmentCount(Long environmentId) {
+        return environmentCounts.computeIfAbsent(environmentId, id -> new EnvironmentCount());
+    }
+
+    private void removeFromEnvironment(Long environmentId, Long luminariaId) {
+        environmentLuminarias.computeIfPresent(environmentId, (key, luminariaIds) -> {
+            luminariaIds.remove(luminariaId);
+            return luminariaIds.isEmpty() ? null : luminariaIds;
+        });
+    }
+
+    /**
+     * Subambientes são comparados sem diferenciar maiúsculas (como no AmbienteRepository)
+     */
+    public static String normalizeSubambiente(String subambiente) {
+        if (subambiente == null || subambiente.trim().isEmpty()) {
+            return null;
+        }
+        return subambiente.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Luminárias ligadas e total de um ambiente ou subambiente
+     */
+    public static final class Counts {
+        static final Counts ZERO = new Counts(0, 0);
+
+        private final int on;
+        private final int total;
+
+        Counts(int on, int total) {
+            this.on = on;
+            this.total = total;
+        }
+
+        public int getOn() { return on; }
+        public int getTotal() { return total; }
+    }
+
+    private static final class EnvironmentCount {
+        private int on;
+        private int total;
+
+        void add(int onDelta, int totalDelta) {
+            on += onDelta;
+            total += totalDelta;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.scenario.automation.service;
+
+import com.scenario.automation.model.Ambiente;
+import com.scenario.automation.model.Scene;
+import com.scenario.automation.repository.SceneRepository;
+import com.scenario.automation.service.LuminariaStateService.StateChange;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cenas de iluminação: estados alvo de luminárias de um ambiente.
+ *
+ * Cada cena é pré-compilada em arrays (ids / estados) para que a ativação
+ * não consulte o banco e gere um único evento state_changes. Cenas fora da cache
+ * (ex.: criadas em outra instância) são carregadas do banco na primeira ativação.
+ */
+@Service
+@Transactional
+public class SceneService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SceneService.class);
+
+    // id da cena -> cena compilada
+    private final Map<Long, CompiledScene> compiledScenes = new ConcurrentHashMap<>();
+
+    @Autowired
+    private SceneRepository sceneRepository;
+
+    @Autowired
+    private AmbienteService ambienteService;
+
+    @Autowired
+    private LuminariaTopologyService topologyService;
+
+    @Autowired
+    private LuminariaStateService luminariaStateService;
+
+    /**
+     * Compila todas as cenas na criação do bean, antes de o servidor web aceitar requisições.
+     * Uma falha aqui interrompe a inicialização, como a carga da topologia.
+     */
+    @PostConstruct
+    public void compileAll() {
+        try {
+            for (Scene scene : sceneRepository.findAllWithStates()) {
+                compiledScenes.put(scene.getId(), CompiledScene.of(scene));
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Erro ao compilar cenas: " + e.getMessage(), e);
+        }
+        logger.info("Cenas compiladas: {}", compiledScenes.size());
+    }
+
+    /**
+     * Criar nova cena
+     */
+    public Scene createScene(Scene scene) {
+        if (scene.getEnvironmentId() == null) {
+            throw new RuntimeException("É obrigatório informar o ambiente da cena");
+        }
+        Ambiente ambiente = ambienteService.getById(scene.getEnvironmentId());
+        scene.setAmbiente(ambiente);
+
+        // Verificar se já existe cena com o mesmo nome no ambiente
+        if (sceneRepository.existsByNameIgnoreCaseAndAmbienteId(scene.getName(), ambiente.getId())) {
+            throw new RuntimeException("Já existe uma cena com o nome '" + scene.getName() +
+                                     "' no ambiente '" + ambiente.getName() + "'");
+        }
+        validateStates(scene.getStates(), ambiente.getId());
+
+        Scene savedScene = sceneRepository.save(scene);
+        savedScene.setEnvironmentId(ambiente.getId());
+        compileAfterCommit(savedScene);
+        return savedScene;
+    }
+
+    /**
+     * Listar cenas (opcionalmente de um ambiente)
+     */
+    @Transactional(readOnly = true)
+    public List<Scene> getScenes(Long environmentId) {
+        List<Scene> scenes;
+        if (environmentId != null) {
+            ambienteService.getById(environmentId); // Verificar se o ambiente existe
+            scenes = sceneRepository.findByAmbienteIdOrderByNameAsc(environmentId);
+        } else {
+            scenes = sceneRepository.findAllWithStates();
+        }
+        // Preencher o campo environmentId para o front-end
+        for (Scene scene : scenes) {
+            scene.setEnvironmentId(scene.getAmbiente().getId());
+        }
+        return scenes;
+    }
+
+    /**
+     * Buscar cena por ID
+     */
+    @Transactional(readOnly = true)
+    public Optional<Scene> getSceneById(Long id) {
+        Optional<Scene> scene = sceneRepository.findById(id);
+        scene.ifPresent(s -> s.setEnvironmentId(s.getAmbiente().getId()));
+        return scene;
+    }
+
+    /**
+     * Atualizar cena (nome, descrição e estados; o ambiente não muda)
+     */
+    public Scene updateScene(Long id, Scene sceneAtualizada) {
+        Scene scene = sceneRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Cena não encontrada com ID: " + id));
+        Ambiente ambiente = scene.getAmbiente();
+
+        // Verificar se o nome não conflita com outra cena no mesmo ambiente
+        if (sceneRepository.existsByNameIgnoreCaseAndAmbienteIdAndIdNot(
+                sceneAtualizada.getName(), ambiente.getId(), id)) {
+            throw new RuntimeException("Já existe uma cena com o nome '" + sceneAtualizada.getName() +
+                                     "' no ambiente '" + ambiente.getName() + "'");
+        }
+        validateStates(sceneAtualizada.getStates(), ambiente.getId());
+
+        scene.setName(sceneAtualizada.getName());
+        scene.setDescription(sceneAtualizada.getDescription());
+        scene.getStates().clear();
+        scene.getStates().putAll(sceneAtualizada.getStates());
+
+        Scene savedScene = sceneRepository.save(scene);
+        savedScene.setEnvironmentId(ambiente.getId());
+        compileAfterCommit(savedScene);
+        return savedScene;
+    }
+
+    /**
+     * Deletar cena
+     */
+    public void deleteScene(Long id) {
+        if (!sceneRepository.existsById(id)) {
+            throw new RuntimeException("Cena não encontrada com ID: " + id);
+        }
+        sceneRepository.deleteById(id);
+        TransactionCallbacks.afterCommit(() -> compiledScenes.remove(id));
+    }
+
+    /**
+     * Ativa a cena: aplica todos os estados de uma vez, sem acessar o banco (exceto cena fora da cache).
+     * Luminárias removidas (ou movidas de ambiente) desde a compilação são ignoradas.
+     *
+     * @return mudanças efetivamente aplicadas
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<StateChange> activateScene(Long id) {
+        CompiledScene compiled = compiledScenes.get(id);
+        if (compiled == null) {
+            compiled = loadScene(id);
+        }
+        if (compiled != null && !topologyService.containsAmbiente(compiled.environmentId)) {
+            // Ambiente removido (as cenas foram apagadas junto)
+            compiledScenes.remove(id, compiled);
+            compiled = null;
+        }
+        if (compiled == null) {
+            throw new RuntimeException("Cena não encontrada com ID: " + id);
+        }
+
+        long[] luminariaIds = compiled.luminariaIds;
+        boolean[] states = compiled.states;
+        int valid = 0;
+        for (long luminariaId : luminariaIds) {
+            if (compiled.environmentId.equals(topologyService.getEnvironmentId(luminariaId))) {
+                valid++;
+            }
+        }
+        if (valid < luminariaIds.length) {
+            long[] validIds = new long[valid];
+            boolean[] validStates = new boolean[valid];
+            for (int i = 0, j = 0; i < luminariaIds.length; i++) {
+                if (compiled.environmentId.equals(topologyService.getEnvironmentId(luminariaIds[i]))) {
+                    validIds[j] = luminariaIds[i];
+                    validStates[j++] = states[i];
+                }
+            }
+            luminariaIds = validIds;
+            states = validStates;
+        }
+
+        List<StateChange> changes = luminariaStateService.applyStates(luminariaIds, states);
+        logger.info("Cena {} ativada: {} luminárias, {} mudanças", id, luminariaIds.length, changes.size());
+        return changes;
+    }
+
+    /**
+     * Verifica se todas as luminárias da cena existem e pertencem ao ambiente
+     */
+    private void validateStates(Map<Long, Boolean> states, Long environmentId) {
+        if (states == null || states.isEmpty()) {
+            throw new RuntimeException("A cena deve definir o estado de ao menos uma luminária");
+        }
+        for (Map.Entry<Long, Boolean> entry : states.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                throw new RuntimeException("Estados da cena não podem conter valores nulos");
+            }
+            if (!environmentId.equals(topologyService.getEnvironmentId(entry.getKey()))) {
+                throw new RuntimeException("Luminária " + entry.getKey() +
+                                         " não encontrada no ambiente " + environmentId);
+            }
+        }
+    }
+
+    /**
+     * Compila uma cena que não está na cache (criada em outra instância), ou null se não existe
+     */
+    private CompiledScene loadScene(Long id) {
+        Optional<Scene> scene = sceneRepository.findByIdWithStates(id);
+        if (scene.isEmpty()) {
+            return null;
+        }
+        CompiledScene compiled = CompiledScene.of(scene.get());
+        CompiledScene existing = compiledScenes.putIfAbsent(id, compiled);
+        return existing != null ? existing : compiled;
+    }
+
+    /**
+     * Recompila a cena só depois do commit, para a cache não refletir uma alteração desfeita
+     */
+    private void compileAfterCommit(Scene scene) {
+        CompiledScene compiled = CompiledScene.of(scene);
+        TransactionCallbacks.afterCommit(() -> compiledScenes.put(scene.getId(), compiled));
+    }
+
+    /**
+     * Cena compilada: arrays paralelos de ids e estados alvo
+     */
+    private static final class CompiledScene {
+        private final Long environmentId;
+        private final long[] luminariaIds;
+        private final boolean[] states;
+
+        private CompiledScene(Long environmentId, long[] luminariaIds, boolean[] states) {
+            this.environmentId = environmentId;
+            this.luminariaIds = luminariaIds;
+            this.states = states;
+        }
+
+        static CompiledScene of(Scene scene) {
+            Map<Long, Boolean> sceneStates = scene.getStates();
+            long[] luminariaIds = new long[sceneStates.size()];
+            boolean[] states = new boolean[sceneStates.size()];
+            int i = 0;
+            for (Map.Entry<Long, Boolean> entry : sceneStates.entrySet()) {
+                luminariaIds[i] = entry.getKey();
+                states[i++] = entry.getValue();
+            }
+            return new CompiledScene(scene.getAmbiente().getId(), luminariaIds, states);
+        }
+    }
+}
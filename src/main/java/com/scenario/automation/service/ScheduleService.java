@@ -0,0 +1,530 @@
+package com.scenario.automation.service;
+
+import com.scenario.automation.model.Schedule;
+import com.scenario.automation.repository.SceneRepository;
+import com.scenario.automation.repository.ScheduleRepository;
+import com.scenario.automation.service.schedule.HashedTimingWheel;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agendamentos de cenas e comandos de luminárias.
+ *
+ * Os agendamentos são persistidos via JPA; os disparos pendentes ficam numa única
+ * {@link HashedTimingWheel}, sem uma tarefa de ScheduledExecutorService por timer.
+ * As ações são executadas num thread próprio, fora do thread da roda.
+ *
+ * Com várias instâncias, todas armam os agendamentos, mas cada execução é reservada no banco
+ * (UPDATE condicionado à próxima execução esperada) e só a instância que a reserva executa.
+ * Quem perde a reserva rearma com o que está no banco. Agendamentos criados ou alterados em
+ * outra instância são buscados a cada app.scheduler.sync-ms (pela data de alteração).
+ */
+@Service
+@Transactional
+public class ScheduleService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScheduleService.class);
+
+    // Nova tentativa de reservar uma execução quando o banco não responde
+    private static final long CLAIM_RETRY_MILLIS = 5000;
+
+    // Margem da busca por alterações: transações ainda abertas na busca anterior e relógios diferentes
+    private static final Duration SYNC_OVERLAP = Duration.ofMinutes(1);
+
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+
+    @Autowired
+    private SceneRepository sceneRepository;
+
+    @Autowired
+    private SceneService sceneService;
+
+    @Autowired
+    private LuminariaStateService luminariaStateService;
+
+    @Autowired
+    private LuminariaTopologyService topologyService;
+
+    // id do agendamento -> disparo armado na roda
+    private final Map<Long, ArmedSchedule> armed = new ConcurrentHashMap<>();
+
+    private final ZoneId zone;
+    private final ExecutorService fireExecutor;
+    private final HashedTimingWheel timingWheel;
+
+    // Busca periódica de agendamentos alterados em outras instâncias (0 = desligada)
+    private final long syncMillis;
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "schedule-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Início da última busca por alterações (relógio do servidor, como o updated_at)
+    private volatile LocalDateTime lastSync;
+
+    public ScheduleService(@Value("${app.scheduler.tick-ms:100}") long tickMillis,
+                           @Value("${app.scheduler.wheel-size:512}") int wheelSize,
+                           @Value("${app.scheduler.zone:}") String zone,
+                           @Value("${app.scheduler.sync-ms:30000}") long syncMillis) {
+        this.zone = zone == null || zone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(zone);
+        this.syncMillis = syncMillis;
+        this.fireExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "schedule-fire");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timingWheel = new HashedTimingWheel("schedule-timing-wheel", tickMillis, wheelSize, fireExecutor);
+    }
+
+    /**
+     * Arma os agendamentos ativos quando a aplicação sobe.
+     * Execuções únicas perdidas enquanto a aplicação estava fora disparam imediatamente;
+     * execuções recorrentes perdidas não, e a próxima é gravada (condicionada ao valor lido,
+     * já que outra instância pode estar disparando o mesmo agendamento).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void armAll() {
+        try {
+            lastSync = LocalDateTime.now();
+            ZonedDateTime now = ZonedDateTime.now(zone);
+            for (Schedule schedule : scheduleRepository.findByEnabledTrue()) {
+                LocalDateTime stored = schedule.getNextRunAt();
+                LocalDateTime nextRunAt = computeNextRun(schedule, now);
+                if (Objects.equals(stored, nextRunAt)) {
+                    arm(schedule);
+                    continue;
+                }
+                int updated = stored != null
+                        ? scheduleRepository.rescheduleRun(schedule.getId(), stored, nextRunAt)
+                        : nextRunAt != null ? scheduleRepository.initNextRun(schedule.getId(), nextRunAt) : 0;
+                if (updated == 1) {
+                    schedule.setNextRunAt(nextRunAt);
+                    arm(schedule);
+                } else {
+                    // Alterado por outra instância depois da leitura
+                    scheduleRepository.findById(schedule.getId()).ifPresent(this::arm);
+                }
+            }
+            logger.info("Agendamentos armados: {}", armed.size());
+        } catch (Exception e) {
+            logger.error("Erro ao armar agendamentos: {}", e.getMessage());
+        }
+        if (syncMillis > 0) {
+            syncExecutor.scheduleWithFixedDelay(this::syncQuietly, syncMillis, syncMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        syncExecutor.shutdownNow();
+        timingWheel.stop();
+        fireExecutor.shutdownNow();
+    }
+
+    /**
+     * Rearma os agendamentos criados ou alterados (em qualquer instância) desde a última busca.
+     * Os excluídos não aparecem aqui: o disparo deles não consegue reservar a execução e é descartado.
+     */
+    void syncChanges() {
+        LocalDateTime started = LocalDateTime.now();
+        LocalDateTime since = lastSync.minus(SYNC_OVERLAP);
+        int rearmed = 0;
+        for (Schedule schedule : scheduleRepository.findByUpdatedAtAfter(since)) {
+            ArmedSchedule current = armed.get(schedule.getId());
+            boolean active = Boolean.TRUE.equals(schedule.getEnabled()) && schedule.getNextRunAt() != null;
+            if (current != null ? !current.matches(schedule) : active) {
+                arm(schedule);
+                rearmed++;
+            }
+        }
+        lastSync = started;
+        if (rearmed > 0) {
+            logger.info("Agendamentos alterados em outras instâncias rearmados: {}", rearmed);
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            syncChanges();
+        } catch (Exception e) {
+            logger.warn("Erro ao buscar agendamentos alterados: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Criar novo agendamento
+     */
+    public Schedule createSchedule(Schedule schedule) {
+        ZonedDateTime now = ZonedDateTime.now(zone);
+        if (schedule.getDelaySeconds() != null) {
+            if (schedule.getDelaySeconds() < 0) {
+                throw new RuntimeException("delaySeconds não pode ser negativo");
+            }
+            schedule.setRunAt(now.plusSeconds(schedule.getDelaySeconds()).toLocalDateTime());
+        }
+        if (schedule.getEnabled() == null) {
+            schedule.setEnabled(true);
+        }
+        validate(schedule);
+        schedule.setNextRunAt(Boolean.TRUE.equals(schedule.getEnabled()) ? computeNextRun(schedule, now) : null);
+
+        Schedule savedSchedule = scheduleRepository.save(schedule);
+        TransactionCallbacks.afterCommit(() -> arm(savedSchedule));
+        return savedSchedule;
+    }
+
+    /**
+     * Listar todos os agendamentos
+     */
+    @Transactional(readOnly = true)
+    public List<Schedule> getAllSchedules() {
+        return scheduleRepository.findAllByOrderByNextRunAtAsc();
+    }
+
+    /**
+     * Buscar agendamento por ID
+     */
+    @Transactional(readOnly = true)
+    public Optional<Schedule> getScheduleById(Long id) {
+        return scheduleRepository.findById(id);
+    }
+
+    /**
+     * Atualizar agendamento
+     */
+    public Schedule updateSchedule(Long id, Schedule scheduleAtualizado) {
+        Schedule schedule = scheduleRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Agendamento não encontrado com ID: " + id));
+
+        ZonedDateTime now = ZonedDateTime.now(zone);
+        schedule.setName(scheduleAtualizado.getName());
+        schedule.setAction(scheduleAtualizado.getAction());
+        schedule.setTargetId(scheduleAtualizado.getTargetId());
+        schedule.setRunAt(scheduleAtualizado.getDelaySeconds() != null
+                ? now.plusSeconds(scheduleAtualizado.getDelaySeconds()).toLocalDateTime()
+                : scheduleAtualizado.getRunAt());
+        schedule.setTimeOfDay(scheduleAtualizado.getTimeOfDay());
+        schedule.setDaysOfWeek(scheduleAtualizado.getDaysOfWeek());
+        if (scheduleAtualizado.getEnabled() != null) {
+            schedule.setEnabled(scheduleAtualizado.getEnabled());
+        }
+        validate(schedule);
+        schedule.setNextRunAt(Boolean.TRUE.equals(schedule.getEnabled()) ? computeNextRun(schedule, now) : null);
+
+        Schedule savedSchedule = scheduleRepository.save(schedule);
+        TransactionCallbacks.afterCommit(() -> arm(savedSchedule));
+        return savedSchedule;
+    }
+
+    /**
+     * Deletar agendamento
+     */
+    public void deleteSchedule(Long id) {
+        if (!scheduleRepository.existsById(id)) {
+            throw new RuntimeException("Agendamento não encontrado com ID: " + id);
+        }
+        scheduleRepository.deleteById(id);
+        disarm(id);
+    }
+
+    /**
+     * Quantidade de disparos pendentes na roda
+     */
+    public long getPendingCount() {
+        return timingWheel.getPendingCount();
+    }
+
+    /**
+     * Próxima execução a partir de {@code now}, ou null se não houver (execução única já realizada)
+     */
+    LocalDateTime computeNextRun(Schedule schedule, ZonedDateTime now) {
+        if (!schedule.isRecurring()) {
+            // Execução única: mesmo atrasada, roda uma vez se ainda não rodou
+            boolean alreadyRun = schedule.getLastRunAt() != null
+                    && !schedule.getLastRunAt().isBefore(schedule.getRunAt());
+            return alreadyRun ? null : schedule.getRunAt();
+        }
+        Set<DayOfWeek> days = parseDaysOfWeek(schedule.getDaysOfWeek());
+        ZonedDateTime candidate = now.toLocalDate().atTime(schedule.getTimeOfDay()).atZone(zone);
+        if (!candidate.isAfter(now)) {
+            candidate = candidate.plusDays(1);
+        }
+        for (int i = 0; i < 7 && !days.contains(candidate.getDayOfWeek()); i++) {
+            candidate = candidate.plusDays(1);
+        }
+        // Recalcula o horário no dia escolhido (mudanças de horário de verão)
+        return candidate.toLocalDate().atTime(schedule.getTimeOfDay());
+    }
+
+    private void validate(Schedule schedule) {
+        if (schedule.getRunAt() == null && schedule.getTimeOfDay() == null) {
+            throw new RuntimeException("Informe runAt, delaySeconds ou timeOfDay");
+        }
+        if (schedule.getRunAt() != null && schedule.getTimeOfDay() != null) {
+            throw new RuntimeException("Informe apenas um entre runAt/delaySeconds e timeOfDay");
+        }
+        if (schedule.getDaysOfWeek() != null && !schedule.isRecurring()) {
+            throw new RuntimeException("daysOfWeek só se aplica a agendamentos com timeOfDay");
+        }
+        schedule.setDaysOfWeek(formatDaysOfWeek(schedule.getDaysOfWeek()));
+        if (schedule.getRunAt() != null) {
+            // Precisão do banco: a reserva da execução compara a próxima execução armada com a gravada
+            schedule.setRunAt(schedule.getRunAt().truncatedTo(ChronoUnit.MICROS));
+        }
+        if (schedule.getTimeOfDay() != null) {
+            schedule.setTimeOfDay(schedule.getTimeOfDay().truncatedTo(ChronoUnit.MICROS));
+        }
+
+        if (!targetExists(schedule)) {
+            throw new RuntimeException((schedule.getAction() == Schedule.Action.ACTIVATE_SCENE
+                    ? "Cena" : "Luminária") + " não encontrada com ID: " + schedule.getTargetId());
+        }
+    }
+
+    /**
+     * Verifica se a cena ou luminária alvo do agendamento ainda existe
+     */
+    private boolean targetExists(Schedule schedule) {
+        if (schedule.getAction() == Schedule.Action.ACTIVATE_SCENE) {
+            return sceneRepository.existsById(schedule.getTargetId());
+        }
+        return topologyService.containsLuminaria(schedule.getTargetId());
+    }
+
+    private void arm(Schedule schedule) {
+        if (!Boolean.TRUE.equals(schedule.getEnabled()) || schedule.getNextRunAt() == null) {
+            disarm(schedule.getId());
+            return;
+        }
+        armIn(schedule, Duration.between(ZonedDateTime.now(zone), schedule.getNextRunAt().atZone(zone)).toMillis());
+    }
+
+    private void armIn(Schedule schedule, long delayMillis) {
+        disarm(schedule.getId());
+        ArmedSchedule armedSchedule = new ArmedSchedule(schedule);
+        // Registrar antes de agendar: o disparo confere se ainda é o armado atual
+        armed.put(schedule.getId(), armedSchedule);
+        armedSchedule.timeout = timingWheel.schedule(() -> fire(armedSchedule), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void disarm(Long scheduleId) {
+        ArmedSchedule previous = armed.remove(scheduleId);
+        if (previous != null && previous.timeout != null) {
+            previous.timeout.cancel();
+        }
+    }
+
+    /**
+     * Reserva a execução no banco e, se conseguir, executa a ação e rearma (recorrente) ou desativa
+     * (execução única) o agendamento. Se a cena ou luminária alvo foi removida, o agendamento é
+     * desativado sem executar. Sem a reserva (outra instância executou, ou o agendamento mudou
+     * nela) rearma com o que está no banco.
+     */
+    private void fire(ArmedSchedule armedSchedule) {
+        Schedule schedule = armedSchedule.schedule;
+        Long scheduleId = schedule.getId();
+        if (armed.get(scheduleId) != armedSchedule) {
+            return; // alterado ou removido depois de armado
+        }
+
+        boolean orphan = !isTargetPresent(schedule);
+        ZonedDateTime now = ZonedDateTime.now(zone);
+        LocalDateTime lastRunAt = orphan ? schedule.getLastRunAt() : now.toLocalDateTime();
+        LocalDateTime nextRunAt = !orphan && schedule.isRecurring() ? computeNextRun(schedule, now) : null;
+        int claimed;
+        try {
+            claimed = scheduleRepository.claimRun(scheduleId, schedule.getNextRunAt(), lastRunAt, nextRunAt, nextRunAt != null);
+        } catch (Exception e) {
+            logger.warn("Erro ao reservar execução do agendamento {}: {}, nova tentativa em {} ms",
+                    scheduleId, e.getMessage(), CLAIM_RETRY_MILLIS);
+            if (armed.get(scheduleId) == armedSchedule) {
+                armIn(schedule, CLAIM_RETRY_MILLIS);
+            }
+            return;
+        }
+        if (claimed == 0) {
+            rearmFromDatabase(armedSchedule);
+            return;
+        }
+
+        if (orphan) {
+            armed.remove(scheduleId, armedSchedule);
+            logger.warn("Agendamento {} desativado: {} {} não existe mais",
+                    scheduleId, schedule.getAction(), schedule.getTargetId());
+            return;
+        }
+
+        schedule.setLastRunAt(lastRunAt);
+        schedule.setNextRunAt(nextRunAt);
+        if (nextRunAt == null) {
+            schedule.setEnabled(false);
+            armed.remove(scheduleId, armedSchedule);
+        } else if (armed.get(scheduleId) == armedSchedule) {
+            arm(schedule);
+        }
+
+        try {
+            execute(schedule);
+        } catch (Exception e) {
+            logger.warn("Falha ao executar agendamento {}: {}", scheduleId, e.getMessage());
+        }
+    }
+
+    /**
+     * Rearma com o estado gravado um agendamento cuja execução não pôde ser reservada
+     * (desarma se ele foi excluído ou desativado)
+     */
+    private void rearmFromDatabase(ArmedSchedule armedSchedule) {
+        Long scheduleId = armedSchedule.schedule.getId();
+        try {
+            Optional<Schedule> stored = scheduleRepository.findById(scheduleId);
+            if (armed.get(scheduleId) != armedSchedule) {
+                return; // alterado nesta instância enquanto isso
+            }
+            if (stored.isPresent()) {
+                arm(stored.get());
+            } else {
+                armed.remove(scheduleId, armedSchedule);
+            }
+        } catch (Exception e) {
+            logger.warn("Erro ao recarregar agendamento {}: {}", scheduleId, e.getMessage());
+        }
+    }
+
+    private boolean isTargetPresent(Schedule schedule) {
+        try {
+            return targetExists(schedule);
+        } catch (Exception e) {
+            return true; // na dúvida (ex.: banco fora do ar) tenta executar normalmente
+        }
+    }
+
+    private void execute(Schedule schedule) {
+        Long targetId = schedule.getTargetId();
+        switch (schedule.getAction()) {
+            case ACTIVATE_SCENE:
+                sceneService.activateScene(targetId);
+                break;
+            case TURN_ON:
+            case TURN_OFF:
+            case TOGGLE:
+                if (schedule.getAction() == Schedule.Action.TURN_ON) {
+                    luminariaStateService.turnOnLuminaria(targetId);
+                } else if (schedule.getAction() == Schedule.Action.TURN_OFF) {
+                    luminariaStateService.turnOffLuminaria(targetId);
+                } else {
+                    luminariaStateService.toggleLuminaria(targetId);
+                }
+                break;
+            default:
+                throw new RuntimeException("Ação não suportada: " + schedule.getAction());
+        }
+        logger.debug("Agendamento {} executado: {} {}", schedule.getId(), schedule.getAction(), targetId);
+    }
+
+    /**
+     * Dias da semana no formato "MON,TUE,..." (aceita também os nomes completos); vazio = todos os dias
+     */
+    static Set<DayOfWeek> parseDaysOfWeek(String daysOfWeek) {
+        if (daysOfWeek == null || daysOfWeek.isBlank()) {
+            return EnumSet.allOf(DayOfWeek.class);
+        }
+        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        for (String token : daysOfWeek.split("[,\\s]+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            String normalized = token.toUpperCase(Locale.ROOT);
+            DayOfWeek match = null;
+            for (DayOfWeek day : DayOfWeek.values()) {
+                if (normalized.length() >= 3 && day.name().startsWith(normalized)) {
+                    match = day;
+                    break;
+                }
+            }
+            if (match == null) {
+                throw new RuntimeException("Dia da semana inválido: " + token);
+            }
+            days.add(match);
+        }
+        return days;
+    }
+
+    private static String formatDaysOfWeek(String daysOfWeek) {
+        if (daysOfWeek == null || daysOfWeek.isBlank()) {
+            return null;
+        }
+        StringJoiner joiner = new StringJoiner(",");
+        for (DayOfWeek day : parseDaysOfWeek(daysOfWeek)) {
+            joiner.add(day.name().substring(0, 3));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * Disparo armado: cópia do agendamento no momento em que foi armado
+     */
+    private static final class ArmedSchedule {
+        private final Schedule schedule;
+        private volatile HashedTimingWheel.Timeout timeout;
+
+        ArmedSchedule(Schedule schedule) {
+            Schedule copy = new Schedule();
+            copy.setId(schedule.getId());
+            copy.setName(schedule.getName());
+            copy.setAction(schedule.getAction());
+            copy.setTargetId(schedule.getTargetId());
+            copy.setRunAt(schedule.getRunAt());
+            copy.setTimeOfDay(schedule.getTimeOfDay());
+            copy.setDaysOfWeek(schedule.getDaysOfWeek());
+            copy.setEnabled(schedule.getEnabled());
+            copy.setNextRunAt(schedule.getNextRunAt());
+            copy.setLastRunAt(schedule.getLastRunAt());
+            this.schedule = copy;
+        }
+
+        /**
+         * Se o agendamento gravado ainda corresponde ao armado
+         */
+        boolean matches(Schedule stored) {
+            return Boolean.TRUE.equals(stored.getEnabled())
+                    && Objects.equals(schedule.getNextRunAt(), stored.getNextRunAt())
+                    && schedule.getAction() == stored.getAction()
+                    && Objects.equals(schedule.getTargetId(), stored.getTargetId())
+                    && Objects.equals(schedule.getTimeOfDay(), stored.getTimeOfDay())
+                    && Objects.equals(schedule.getDaysOfWeek(), stored.getDaysOfWeek());
+        }
+    }
+}
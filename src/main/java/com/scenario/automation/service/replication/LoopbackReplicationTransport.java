@@ -0,0 +1,49 @@
+package com.scenario.automation.service.replication;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Transporte em processo: entrega as mensagens a todas as instâncias (contextos Spring)
+ * da mesma JVM. Para testes e desenvolvimento com várias instâncias num só processo.
+ * Para usar: app.replication.transport=loopback
+ */
+@Component
+@ConditionalOnProperty(name = "app.replication.transport", havingValue = "loopback")
+public class LoopbackReplicationTransport implements ReplicationTransport {
+
+    // Barramento compartilhado por todas as instâncias da JVM
+    private static final List<Consumer<String>> RECEIVERS = new CopyOnWriteArrayList<>();
+
+    private volatile Consumer<String> receiver;
+
+    @Override
+    public void start(Consumer<String> receiver, Runnable onReconnect) {
+        this.receiver = receiver;
+        RECEIVERS.add(receiver);
+    }
+
+    @Override
+    public void send(String payload) {
+        for (Consumer<String> target : RECEIVERS) {
+            target.accept(payload);
+        }
+    }
+
+    @Override
+    public int getMaxPayloadBytes() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void stop() {
+        Consumer<String> current = receiver;
+        if (current != null) {
+            RECEIVERS.remove(current);
+        }
+    }
+}
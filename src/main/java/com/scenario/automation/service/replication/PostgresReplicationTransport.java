@@ -0,0 +1,137 @@
+package com.scenario.automation.service.replication;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Consumer;
+
+/**
+ * Transporte via LISTEN/NOTIFY do PostgreSQL.
+ *
+ * O envio usa o pool normal (pg_notify); a escuta usa uma conexão dedicada, fora do pool,
+ * que fica aberta recebendo as notificações e é refeita se cair. Mensagens enviadas enquanto
+ * a escuta está desconectada se perdem: ao reconectar, o {@link StateReplicator} pede sincronização.
+ * Para usar: app.replication.transport=postgres
+ */
+@Component
+@ConditionalOnProperty(name = "app.replication.transport", havingValue = "postgres")
+public class PostgresReplicationTransport implements ReplicationTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresReplicationTransport.class);
+
+    // O payload do NOTIFY é limitado a 8000 bytes
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+    private static final long RECONNECT_DELAY_MS = 2000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username:}")
+    private String username;
+
+    @Value("${spring.datasource.password:}")
+    private String password;
+
+    private final String channel;
+
+    private volatile boolean running;
+    private Thread listener;
+
+    public PostgresReplicationTransport(@Value("${app.replication.channel:luminaria_state}") String channel) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Canal de replicação inválido: " + channel);
+        }
+        this.channel = channel;
+    }
+
+    @Override
+    public void start(Consumer<String> receiver, Runnable onReconnect) {
+        running = true;
+        listener = new Thread(() -> listen(receiver, onReconnect), "replication-listen");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public void send(String payload) {
+        jdbcTemplate.execute("SELECT pg_notify(?, ?)", (PreparedStatementCallback<Boolean>) statement -> {
+            statement.setString(1, channel);
+            statement.setString(2, payload);
+            return statement.execute();
+        });
+    }
+
+    @Override
+    public int getMaxPayloadBytes() {
+        return MAX_PAYLOAD_BYTES;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    private void listen(Consumer<String> receiver, Runnable onReconnect) {
+        boolean reconnecting = false;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                logger.info("Escutando replicação de estado no canal {}", channel);
+                if (reconnecting) {
+                    try {
+                        onReconnect.run();
+                    } catch (Exception e) {
+                        logger.warn("Erro ao tratar reconexão da replicação: {}", e.getMessage());
+                    }
+                }
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(500);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        try {
+                            receiver.accept(notification.getParameter());
+                        } catch (Exception e) {
+                            logger.warn("Erro ao aplicar mensagem de replicação: {}", e.getMessage());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                reconnecting = true;
+                logger.warn("Conexão de replicação perdida, reconectando em {} ms: {}", RECONNECT_DELAY_MS, e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
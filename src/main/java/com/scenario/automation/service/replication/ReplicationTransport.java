@@ -0,0 +1,30 @@
+package com.scenario.automation.service.replication;
+
+import java.util.function.Consumer;
+
+/**
+ * Canal entre instâncias da aplicação para as mensagens de replicação de estado.
+ *
+ * Entrega ao menos as mensagens das outras instâncias (receber as próprias é permitido; o
+ * {@link StateReplicator} as ignora). A ordem das mensagens de uma mesma instância deve ser mantida.
+ */
+public interface ReplicationTransport {
+
+    /**
+     * Passa a entregar as mensagens recebidas a {@code receiver}. {@code onReconnect} é chamado quando
+     * a recepção volta depois de uma queda, em que mensagens podem ter se perdido.
+     */
+    void start(Consumer<String> receiver, Runnable onReconnect);
+
+    /**
+     * Envia uma mensagem a todas as instâncias
+     */
+    void send(String payload);
+
+    /**
+     * Tamanho máximo de uma mensagem em bytes
+     */
+    int getMaxPayloadBytes();
+
+    void stop();
+}
@@ -0,0 +1,488 @@
+package com.scenario.automation.service.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replica o estado das luminárias entre instâncias da aplicação.
+ *
+ * As mudanças locais se acumulam por luminária (vale a última) e saem a cada
+ * app.replication.batch-ms em mensagens do tamanho aceito pelo transporte, então o tráfego
+ * depende das luminárias alteradas por janela e não da taxa de comandos. Cada mensagem leva
+ * o id da instância de origem, a epoch da execução (início do processo) e uma sequência por
+ * execução: mensagens repetidas são ignoradas. Uma lacuna (mensagens perdidas) pede à instância
+ * de origem o estado completo dela, e uma reconexão do transporte pede o de todas.
+ * Uma instância reiniciada com o mesmo node-id começa uma nova epoch, e a sequência recomeça.
+ *
+ * Mudanças de topologia (luminárias e ambientes criados, alterados ou excluídos) seguem na hora,
+ * uma por mensagem, na mesma sequência. Como o estado completo não as leva, uma lacuna ou
+ * reconexão também avisa o {@link #setResyncListener listener de ressincronização}, que recarrega
+ * a topologia do banco.
+ *
+ * As versões das luminárias recomeçam do zero ao reiniciar (o store não as guarda). Para que as
+ * escritas de uma instância reiniciada não percam para as versões maiores das demais, ao subir
+ * ela pede sincronização ({@link #requestSync}) e cada instância responde com o seu estado
+ * completo; a regra de maior versão leva as versões locais ao nível das outras.
+ *
+ * Sem app.replication.transport configurado a replicação fica desligada.
+ */
+@Component
+public class StateReplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(StateReplicator.class);
+
+    // Tamanho máximo estimado de uma mudança serializada ("id,valor," com 19 dígitos cada)
+    private static final int BYTES_PER_CHANGE = 42;
+    private static final int MESSAGE_OVERHEAD_BYTES = 128;
+
+    @Autowired(required = false)
+    private ReplicationTransport transport;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final String nodeId;
+    private final long batchMillis;
+
+    // Mudanças locais ainda não enviadas (id -> valor empacotado)
+    private final Map<Long, Long> pending = new ConcurrentHashMap<>();
+
+    // Epoch desta execução e sequência das suas mensagens; última (epoch, sequência) recebida de cada instância
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong messageSequence = new AtomicLong();
+    private final Map<String, NodeCursor> cursorsByNode = new ConcurrentHashMap<>();
+
+    private volatile RemoteChangeHandler remoteChangeHandler;
+    private volatile LocalStateSource localStateSource;
+    private volatile TopologyChangeHandler topologyChangeHandler;
+    private volatile Runnable resyncListener;
+
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "state-replication");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StateReplicator(@Value("${app.replication.node-id:}") String nodeId,
+                           @Value("${app.replication.batch-ms:50}") long batchMillis) {
+        this.nodeId = nodeId == null || nodeId.isBlank()
+            ? UUID.randomUUID().toString().substring(0, 8)
+            : nodeId.trim();
+        this.batchMillis = batchMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (transport == null) {
+            return;
+        }
+        // Mensagens podem ter se perdido durante a queda: busca o estado completo das outras instâncias
+        transport.start(this::receive, () -> resync(null));
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+        logger.info("Replicação de estado ativa: instância {}, transporte {}", nodeId, transport.getClass().getSimpleName());
+    }
+
+    public boolean isEnabled() {
+        return transport != null;
+    }
+
+    /**
+     * Id desta instância (app.replication.node-id, ou gerado na inicialização)
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Define quem aplica as mudanças recebidas das outras instâncias
+     */
+    public void setRemoteChangeHandler(RemoteChangeHandler remoteChangeHandler) {
+        this.remoteChangeHandler = remoteChangeHandler;
+    }
+
+    /**
+     * Define o estado local completo enviado às instâncias que pedem sincronização
+     */
+    public void setLocalStateSource(LocalStateSource localStateSource) {
+        this.localStateSource = localStateSource;
+    }
+
+    /**
+     * Define quem aplica as mudanças de topologia recebidas das outras instâncias
+     */
+    public void setTopologyChangeHandler(TopologyChangeHandler topologyChangeHandler) {
+        this.topologyChangeHandler = topologyChangeHandler;
+    }
+
+    /**
+     * Define quem é avisado quando mensagens de outras instâncias podem ter se perdido (lacuna na
+     * sequência ou reconexão do transporte), para recarregar o que o estado completo não traz
+     */
+    public void setResyncListener(Runnable resyncListener) {
+        this.resyncListener = resyncListener;
+    }
+
+    /**
+     * Pede às outras instâncias o estado completo delas (chamado ao subir, depois de definir o
+     * handler das mudanças remotas, e quando o transporte reconecta). Comandos aceitos antes da resposta chegar ainda podem perder
+     * para uma versão maior de outra instância.
+     */
+    public void requestSync() {
+        requestSync(null);
+    }
+
+    /**
+     * Pede o estado completo a uma instância (ou a todas, com {@code target} null)
+     */
+    private synchronized void requestSync(String target) {
+        if (transport == null) {
+            return;
+        }
+        ReplicationMessage message = newMessage();
+        message.setSync(true);
+        message.setTarget(target);
+        try {
+            transport.send(objectMapper.writeValueAsString(message));
+            logger.info("Replicação: sincronização pedida {}", target != null ? "à instância " + target : "às outras instâncias");
+        } catch (Exception e) {
+            logger.warn("Erro ao pedir sincronização de estado: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Envia uma mudança de topologia já gravada no banco (chamado depois do commit). Se o envio
+     * falhar, as outras instâncias veem a lacuna na sequência e recarregam a topologia.
+     * Sincronizado com o flush: as mensagens saem na ordem das sequências.
+     */
+    public synchronized void replicateTopology(TopologyChange change) {
+        if (transport == null) {
+            return;
+        }
+        ReplicationMessage message = newMessage();
+        message.setTopology(change);
+        try {
+            transport.send(objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            logger.warn("Erro ao enviar mudança de topologia ({} {}): {}", change.getKind(), change.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Registra uma mudança local para o próximo lote (não faz I/O no thread do chamador)
+     */
+    public void replicate(Long luminariaId, long packed) {
+        if (transport != null) {
+            pending.put(luminariaId, packed);
+        }
+    }
+
+    /**
+     * Envia as mudanças pendentes
+     */
+    public synchronized void flush() {
+        if (transport == null || pending.isEmpty()) {
+            return;
+        }
+
+        int changesPerMessage = Math.max(1,
+            (int) Math.min(Integer.MAX_VALUE, ((long) transport.getMaxPayloadBytes() - MESSAGE_OVERHEAD_BYTES) / BYTES_PER_CHANGE));
+        List<Long> batch = new ArrayList<>();
+        for (Long luminariaId : pending.keySet()) {
+            Long packed = pending.remove(luminariaId);
+            if (packed == null) {
+                continue;
+            }
+            batch.add(luminariaId);
+            batch.add(packed);
+            if (batch.size() / 2 >= changesPerMessage) {
+                send(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private ReplicationMessage newMessage() {
+        ReplicationMessage message = new ReplicationMessage();
+        message.setNode(nodeId);
+        message.setEpoch(epoch);
+        message.setSeq(messageSequence.incrementAndGet());
+        return message;
+    }
+
+    private void send(List<Long> batch) {
+        ReplicationMessage message = newMessage();
+        long[] changes = new long[batch.size()];
+        for (int i = 0; i < changes.length; i++) {
+            changes[i] = batch.get(i);
+        }
+        message.setChanges(changes);
+
+        try {
+            transport.send(objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            // Devolve para a fila sem sobrescrever mudanças mais novas
+            for (int i = 0; i < changes.length; i += 2) {
+                pending.putIfAbsent(changes[i], changes[i + 1]);
+            }
+            throw new RuntimeException("Erro ao enviar mensagem de replicação: " + e.getMessage(), e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.warn("{}, nova tentativa no próximo ciclo", e.getMessage());
+        }
+    }
+
+    private void receive(String payload) {
+        ReplicationMessage message;
+        try {
+            message = objectMapper.readValue(payload, ReplicationMessage.class);
+        } catch (Exception e) {
+            logger.warn("Mensagem de replicação inválida ignorada: {}", e.getMessage());
+            return;
+        }
+        if (nodeId.equals(message.getNode())) {
+            return;
+        }
+
+        if (!accept(message)) {
+            return; // repetida ou de uma execução anterior da instância
+        }
+        if (message.isSync() && (message.getTarget() == null || nodeId.equals(message.getTarget()))) {
+            enqueueLocalState(message.getNode());
+        }
+        TopologyChangeHandler topologyHandler = topologyChangeHandler;
+        if (message.getTopology() != null && topologyHandler != null) {
+            topologyHandler.apply(message.getTopology());
+        }
+        if (message.getChanges() == null) {
+            return;
+        }
+
+        RemoteChangeHandler handler = remoteChangeHandler;
+        if (handler == null) {
+            return;
+        }
+        long[] changes = message.getChanges();
+        long[] luminariaIds = new long[changes.length / 2];
+        long[] values = new long[changes.length / 2];
+        for (int i = 0; i < luminariaIds.length; i++) {
+            luminariaIds[i] = changes[2 * i];
+            values[i] = changes[2 * i + 1];
+        }
+        handler.apply(luminariaIds, values);
+    }
+
+    /**
+     * Responde a um pedido de sincronização: todo o estado local vai nos próximos lotes
+     */
+    private void enqueueLocalState(String requester) {
+        LocalStateSource source = localStateSource;
+        if (source == null) {
+            return;
+        }
+        int[] count = new int[1];
+        source.forEach((luminariaId, packed) -> {
+            pending.put(luminariaId, packed);
+            count[0]++;
+        });
+        logger.info("Replicação: estado de {} luminárias enviado para sincronizar a instância {}", count[0], requester);
+    }
+
+    /**
+     * Avança a posição da instância de origem; false se a mensagem é repetida ou de uma epoch anterior.
+     * Uma epoch mais nova (instância reiniciada) recomeça a contagem. Numa lacuna, ressincroniza com
+     * a instância de origem: as mudanças perdidas não voltariam até a luminária mudar de novo.
+     */
+    private boolean accept(ReplicationMessage message) {
+        boolean[] accepted = new boolean[1];
+        NodeCursor[] previous = new NodeCursor[1];
+        cursorsByNode.compute(message.getNode(), (node, last) -> {
+            previous[0] = last;
+            if (last != null && (message.getEpoch() < last.epoch
+                    || (message.getEpoch() == last.epoch && message.getSeq() <= last.seq))) {
+                return last;
+            }
+            accepted[0] = true;
+            return new NodeCursor(message.getEpoch(), message.getSeq());
+        });
+
+        NodeCursor last = previous[0];
+        if (accepted[0] && last != null) {
+            if (message.getEpoch() != last.epoch) {
+                logger.info("Replicação: instância {} reiniciada (epoch {})", message.getNode(), message.getEpoch());
+            } else if (message.getSeq() > last.seq + 1) {
+                logger.warn("Replicação: {} mensagens da instância {} perdidas (sequências {} a {})",
+                            message.getSeq() - last.seq - 1, message.getNode(), last.seq + 1, message.getSeq() - 1);
+                resync(message.getNode());
+            }
+        }
+        return accepted[0];
+    }
+
+    /**
+     * Pede o estado completo (a uma instância, ou a todas com {@code target} null) e avisa o
+     * listener de ressincronização
+     */
+    private void resync(String target) {
+        requestSync(target);
+        Runnable listener = resyncListener;
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.run();
+        } catch (Exception e) {
+            logger.warn("Erro ao ressincronizar com {}: {}", target != null ? "a instância " + target : "as outras instâncias",
+                        e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        flushQuietly();
+        if (transport != null) {
+            transport.stop();
+        }
+    }
+
+    /**
+     * Aplica mudanças recebidas de outra instância (ids e valores empacotados na mesma posição)
+     */
+    @FunctionalInterface
+    public interface RemoteChangeHandler {
+        void apply(long[] luminariaIds, long[] values);
+    }
+
+    /**
+     * Percorre o estado local (id e valor empacotado de cada luminária)
+     */
+    @FunctionalInterface
+    public interface LocalStateSource {
+        void forEach(StateConsumer consumer);
+    }
+
+    @FunctionalInterface
+    public interface StateConsumer {
+        void accept(long luminariaId, long packed);
+    }
+
+    /**
+     * Aplica uma mudança de topologia feita (e gravada no banco) por outra instância
+     */
+    @FunctionalInterface
+    public interface TopologyChangeHandler {
+        void apply(TopologyChange change);
+    }
+
+    /**
+     * Última mensagem aceita de uma instância
+     */
+    private static final class NodeCursor {
+        private final long epoch;
+        private final long seq;
+
+        NodeCursor(long epoch, long seq) {
+            this.epoch = epoch;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * Mensagem trocada entre instâncias: origem, epoch da execução, sequência e pares [id, valor empacotado, ...].
+     * {@code sync} pede às demais instâncias (ou só à {@code target}) o estado completo delas;
+     * {@code topology} leva uma mudança de topologia.
+     */
+    public static class ReplicationMessage {
+        private String node;
+        private long epoch;
+        private long seq;
+        private boolean sync;
+        private String target;
+        private long[] changes;
+        private TopologyChange topology;
+
+        public String getNode() { return node; }
+        public void setNode(String node) { this.node = node; }
+        public long getEpoch() { return epoch; }
+        public void setEpoch(long epoch) { this.epoch = epoch; }
+        public long getSeq() { return seq; }
+        public void setSeq(long seq) { this.seq = seq; }
+        public boolean isSync() { return sync; }
+        public void setSync(boolean sync) { this.sync = sync; }
+        public String getTarget() { return target; }
+        public void setTarget(String target) { this.target = target; }
+        public long[] getChanges() { return changes; }
+        public void setChanges(long[] changes) { this.changes = changes; }
+        public TopologyChange getTopology() { return topology; }
+        public void setTopology(TopologyChange topology) { this.topology = topology; }
+    }
+
+    public enum TopologyKind {
+        LUMINARIA,
+        AMBIENTE
+    }
+
+    /**
+     * Luminária (com o seu ambiente) ou ambiente (com o seu subambiente) criado, alterado ou excluído
+     */
+    public static class TopologyChange {
+        private TopologyKind kind;
+        private long id;
+        private Long environmentId;
+        private String subambiente;
+        private boolean removed;
+
+        public static TopologyChange luminaria(long id, Long environmentId, boolean removed) {
+            TopologyChange change = new TopologyChange();
+            change.setKind(TopologyKind.LUMINARIA);
+            change.setId(id);
+            change.setEnvironmentId(environmentId);
+            change.setRemoved(removed);
+            return change;
+        }
+
+        public static TopologyChange ambiente(long id, String subambiente, boolean removed) {
+            TopologyChange change = new TopologyChange();
+            change.setKind(TopologyKind.AMBIENTE);
+            change.setId(id);
+            change.setSubambiente(subambiente);
+            change.setRemoved(removed);
+            return change;
+        }
+
+        public TopologyKind getKind() { return kind; }
+        public void setKind(TopologyKind kind) { this.kind = kind; }
+        public long getId() { return id; }
+        public void setId(long id) { this.id = id; }
+        public Long getEnvironmentId() { return environmentId; }
+        public void setEnvironmentId(Long environmentId) { this.environmentId = environmentId; }
+        public String getSubambiente() { return subambiente; }
+        public void setSubambiente(String subambiente) { this.subambiente = subambiente; }
+        public boolean isRemoved() { return removed; }
+        public void setRemoved(boolean removed) { this.removed = removed; }
+    }
+}
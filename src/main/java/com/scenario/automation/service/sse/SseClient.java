@@ -0,0 +1,150 @@
+package com.scenario.automation.service.sse;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cliente conectado (SSE ou WebSocket) com sua própria fila de saída limitada e a saúde
+ * da conexão (bytes pendentes, latência das escritas, última atividade)
+ */
+public class SseClient {
+
+    private static final AtomicLong nextId = new AtomicLong();
+
+    private final long id = nextId.incrementAndGet();
+    private final long connectedAtNanos = System.nanoTime();
+
+    private final SseSink sink;
+    private final SseSubscription subscription;
+    private final BlockingQueue<SseFrame> queue;
+    private final SseSnapshotFormat snapshotFormat;
+
+    // Garante no máximo uma tarefa de envio por cliente no executor
+    final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    // Fila colapsada: o próximo envio deve ser um snapshot completo
+    final AtomicBoolean snapshotPending = new AtomicBoolean(false);
+
+    private volatile boolean closed;
+
+    // Bytes enfileirados e ainda não escritos na conexão, sem contar o snapshot pendente
+    final AtomicLong pendingBytes = new AtomicLong();
+
+    // Snapshot completo (initial_state ou o da política SNAPSHOT) enfileirado e ainda não escrito.
+    // Fica fora de pendingBytes: cresce com a instalação e sozinho pode passar de max-pending-bytes
+    volatile SseFrame pendingSnapshot;
+
+    // Início da escrita em andamento (0 = nenhuma); escrita parada indica peer morto ou lento
+    volatile long writeStartedNanos;
+
+    // Última escrita concluída ou heartbeat enfileirado (base do heartbeat por conexão)
+    volatile long lastActivityNanos = connectedAtNanos;
+
+    // Estatísticas das escritas (alteradas só pelo thread que esvazia a fila do cliente)
+    private volatile long framesSent;
+    private volatile long bytesSent;
+    private volatile long writes;
+    private volatile long totalWriteNanos;
+    private volatile long maxWriteNanos;
+
+    SseClient(SseSink sink, SseSubscription subscription, SseSnapshotFormat snapshotFormat, int queueCapacity) {
+        this.sink = sink;
+        this.subscription = subscription;
+        this.snapshotFormat = snapshotFormat;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public SseSink getSink() {
+        return sink;
+    }
+
+    public SseSubscription getSubscription() {
+        return subscription;
+    }
+
+    /**
+     * Formato em que o cliente recebe snapshots (initial_state e o da política SNAPSHOT)
+     */
+    public SseSnapshotFormat getSnapshotFormat() {
+        return snapshotFormat;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Identificador da conexão (único nesta execução)
+     */
+    public long getId() {
+        return id;
+    }
+
+    public long getConnectedMillis() {
+        return (System.nanoTime() - connectedAtNanos) / 1_000_000;
+    }
+
+    public long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Duração da escrita em andamento em milissegundos (0 se nenhuma)
+     */
+    public long getWriteInProgressMillis() {
+        long started = writeStartedNanos;
+        return started == 0 ? 0 : (System.nanoTime() - started) / 1_000_000;
+    }
+
+    public long getIdleMillis() {
+        return (System.nanoTime() - lastActivityNanos) / 1_000_000;
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public double getAverageWriteMillis() {
+        long count = writes;
+        return count == 0 ? 0 : totalWriteNanos / (double) count / 1_000_000;
+    }
+
+    public double getMaxWriteMillis() {
+        return maxWriteNanos / 1_000_000.0;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    BlockingQueue<SseFrame> queue() {
+        return queue;
+    }
+
+    /**
+     * Registra uma escrita concluída
+     */
+    void recordWrite(int frames, long bytes, long elapsedNanos, long finishedNanos) {
+        framesSent += frames;
+        bytesSent += bytes;
+        writes++;
+        totalWriteNanos += elapsedNanos;
+        if (elapsedNanos > maxWriteNanos) {
+            maxWriteNanos = elapsedNanos;
+        }
+        lastActivityNanos = finishedNanos;
+    }
+
+    void markClosed() {
+        closed = true;
+        queue.clear();
+        pendingBytes.set(0);
+        pendingSnapshot = null;
+    }
+}
@@ -0,0 +1,610 @@
+package com.scenario.automation.service.sse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Distribui eventos SSE de forma assíncrona.
+ *
+ * Cada cliente tem uma fila limitada, esvaziada por um executor dedicado; quem publica
+ * (ex.: o thread HTTP de /turn-on) só enfileira e retorna. Um cliente lento ou morto
+ * afeta apenas a própria fila, tratada conforme a {@link SseOverflowPolicy} configurada.
+ *
+ * Uma verificação periódica remove conexões com escrita parada há mais de
+ * app.sse.max-write-ms ou com mais de app.sse.max-pending-bytes na fila (peer morto
+ * não espera o erro do TCP), e envia heartbeat só às conexões ociosas por app.sse.heartbeat-ms.
+ * Snapshots completos ({@link #sendSnapshot}) não contam para max-pending-bytes: o limite vale
+ * para eventos acumulados, não para o tamanho da instalação.
+ */
+@Component
+public class SseDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(SseDispatcher.class);
+
+    // Máximo de eventos enviados por cliente (numa única escrita) antes de devolver o thread ao executor
+    private static final int MAX_FRAMES_PER_DRAIN = 64;
+
+    private final CopyOnWriteArrayList<SseClient> clients = new CopyOnWriteArrayList<>();
+
+    // Clientes sem filtro recebem todos os eventos
+    private final Set<SseClient> unfilteredClients = ConcurrentHashMap.newKeySet();
+
+    // Índice tópico (env:/sub:/lum:) -> clientes inscritos
+    private final Map<String, Set<SseClient>> topicIndex = new ConcurrentHashMap<>();
+
+    private final ExecutorService dispatchExecutor;
+    private final int queueCapacity;
+    private final SseOverflowPolicy overflowPolicy;
+
+    // Limites de saúde por conexão e intervalo de heartbeat (0 desliga cada um)
+    private final long maxWriteNanos;
+    private final long maxPendingBytes;
+    private final long heartbeatNanos;
+
+    private final ScheduledExecutorService healthExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sse-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Métricas das conexões (expostas em /actuator/metrics)
+    private final Timer writeTimer;
+    private final Counter evictedStalled;
+    private final Counter evictedPendingBytes;
+    private final Counter evictedQueueFull;
+    private final Counter heartbeatsSent;
+    private final Counter removedOnError;
+    private final Counter removedOnClose;
+
+    // Log por cliente em DEBUG só para 1 a cada debugSampleRate escritas
+    private final int debugSampleRate;
+    private final AtomicLong writeCount = new AtomicLong();
+
+    // Gera o heartbeat enviado às conexões ociosas
+    private volatile Supplier<SseFrame> heartbeatSupplier;
+
+    // Gera o snapshot (no escopo da inscrição) enviado quando a política SNAPSHOT colapsa a fila de um cliente
+    private volatile Function<SseClient, SseFrame> snapshotSupplier;
+
+    public SseDispatcher(@Value("${app.sse.dispatcher-threads:4}") int dispatcherThreads,
+                         @Value("${app.sse.queue-capacity:256}") int queueCapacity,
+                         @Value("${app.sse.overflow-policy:DROP_OLDEST}") SseOverflowPolicy overflowPolicy,
+                         @Value("${app.sse.max-write-ms:10000}") long maxWriteMillis,
+                         @Value("${app.sse.max-pending-bytes:8388608}") long maxPendingBytes,
+                         @Value("${app.sse.heartbeat-ms:30000}") long heartbeatMillis,
+                         @Value("${app.sse.health-check-ms:1000}") long healthCheckMillis,
+                         @Value("${app.sse.debug-sample-rate:100}") int debugSampleRate,
+                         MeterRegistry meterRegistry) {
+        this.debugSampleRate = Math.max(1, debugSampleRate);
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+        this.maxWriteNanos = TimeUnit.MILLISECONDS.toNanos(maxWriteMillis);
+        this.maxPendingBytes = maxPendingBytes;
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.dispatchExecutor = Executors.newFixedThreadPool(dispatcherThreads, r -> {
+            Thread thread = new Thread(r, "sse-dispatch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Gauge.builder("sse.connections", clients, List::size)
+            .description("Conexões SSE/WebSocket abertas")
+            .register(meterRegistry);
+        Gauge.builder("sse.connections.pending.bytes", this, SseDispatcher::getPendingBytes)
+            .description("Bytes enfileirados e ainda não escritos, somando todas as conexões")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("sse.connections.write.stalled", this, SseDispatcher::getStalledCount)
+            .description("Conexões com uma escrita em andamento há mais de 1 segundo")
+            .register(meterRegistry);
+        this.writeTimer = Timer.builder("sse.write")
+            .description("Duração de cada escrita na conexão (um ou mais eventos)")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.evictedStalled = evictionCounter(meterRegistry, "stalled_write");
+        this.evictedPendingBytes = evictionCounter(meterRegistry, "pending_bytes");
+        this.evictedQueueFull = evictionCounter(meterRegistry, "queue_full");
+        this.heartbeatsSent = Counter.builder("sse.heartbeats")
+            .description("Heartbeats enviados a conexões ociosas")
+            .register(meterRegistry);
+        this.removedOnError = removalCounter(meterRegistry, "error");
+        this.removedOnClose = removalCounter(meterRegistry, "closed");
+        Gauge.builder("sse.queue.depth", this, SseDispatcher::getQueuedFrames)
+            .description("Eventos enfileirados e ainda não enviados, somando todas as conexões")
+            .register(meterRegistry);
+        Gauge.builder("sse.queue.depth.max", this, SseDispatcher::getMaxQueuedFrames)
+            .description("Maior fila entre as conexões")
+            .register(meterRegistry);
+
+        if (healthCheckMillis > 0) {
+            healthExecutor.scheduleWithFixedDelay(this::checkClientsQuietly, healthCheckMillis, healthCheckMillis,
+                                                  TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static Counter removalCounter(MeterRegistry meterRegistry, String cause) {
+        return Counter.builder("sse.connections.removed")
+            .description("Conexões encerradas pelo cliente ou por erro de envio")
+            .tag("cause", cause)
+            .register(meterRegistry);
+    }
+
+    private static Counter evictionCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("sse.connections.evicted")
+            .description("Conexões removidas por não acompanharem os eventos")
+            .tag("reason", reason)
+            .register(meterRegistry);
+    }
+
+    public void setHeartbeatSupplier(Supplier<SseFrame> heartbeatSupplier) {
+        this.heartbeatSupplier = heartbeatSupplier;
+    }
+
+    public void setSnapshotSupplier(Function<SseClient, SseFrame> snapshotSupplier) {
+        this.snapshotSupplier = snapshotSupplier;
+    }
+
+    /**
+     * Registra um novo emitter com sua inscrição e liga os callbacks de desconexão
+     */
+    public SseClient register(SseEmitter emitter, SseSubscription subscription) {
+        return register(emitter, subscription, SseSnapshotFormat.JSON);
+    }
+
+    /**
+     * Como {@link #register(SseEmitter, SseSubscription)}, com o formato dos snapshots do cliente
+     */
+    public SseClient register(SseEmitter emitter, SseSubscription subscription, SseSnapshotFormat snapshotFormat) {
+        SseClient client = register(new EmitterSink(emitter), subscription, snapshotFormat);
+
+        emitter.onCompletion(() -> {
+            if (remove(client)) {
+                removedOnClose.increment();
+            }
+            logger.info("Cliente SSE desconectado (completion). Total de conexões: {}", clients.size());
+        });
+        emitter.onTimeout(() -> {
+            if (remove(client)) {
+                removedOnClose.increment();
+            }
+            logger.info("Cliente SSE desconectado (timeout). Total de conexões: {}", clients.size());
+        });
+        emitter.onError((ex) -> {
+            if (remove(client)) {
+                removedOnError.increment();
+            }
+            logger.error("Erro na conexão SSE. Total de conexões: {}. Erro: {}", clients.size(), ex.getMessage());
+        });
+
+        return client;
+    }
+
+    /**
+     * Registra um cliente com outro destino (ex.: WebSocket); quem o registrou deve chamar
+     * {@link #unregister(SseClient)} quando a conexão fechar
+     */
+    public SseClient register(SseSink sink, SseSubscription subscription, SseSnapshotFormat snapshotFormat) {
+        SseClient client = new SseClient(sink, subscription, snapshotFormat, queueCapacity);
+        clients.add(client);
+        if (subscription.isUnfiltered()) {
+            unfilteredClients.add(client);
+        } else {
+            for (String topic : subscription.topics()) {
+                topicIndex.computeIfAbsent(topic, key -> ConcurrentHashMap.newKeySet()).add(client);
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Remove um cliente (a conexão já foi fechada)
+     */
+    public void unregister(SseClient client) {
+        if (remove(client)) {
+            removedOnClose.increment();
+        }
+    }
+
+    /**
+     * Enfileira um evento para os clientes sem filtro e para os inscritos em algum dos tópicos.
+     * Só percorre os clientes interessados; quem está em vários tópicos recebe uma única cópia.
+     *
+     * @return número de clientes para os quais o evento foi enfileirado
+     */
+    public int publish(SseFrame frame, Collection<String> topics) {
+        return publish(frame, topics, subscription -> frame);
+    }
+
+    /**
+     * Como {@link #publish(SseFrame, Collection)}, mas para eventos com várias luminárias:
+     * clientes filtrados recebem o frame gerado para a sua inscrição (apenas as mudanças que
+     * lhe interessam). O frame é gerado uma vez por inscrição distinta e compartilhado entre
+     * os clientes com os mesmos filtros; null significa que nada interessa àquela inscrição.
+     *
+     * @return número de clientes para os quais o evento foi enfileirado
+     */
+    public int publish(SseFrame fullFrame, Collection<String> topics,
+                       Function<SseSubscription, SseFrame> frameForSubscription) {
+        int queued = 0;
+        for (SseClient client : unfilteredClients) {
+            if (enqueue(client, fullFrame)) {
+                queued++;
+            }
+        }
+
+        List<Set<SseClient>> subscribers = new ArrayList<>(topics.size());
+        for (String topic : topics) {
+            Set<SseClient> topicClients = topicIndex.get(topic);
+            if (topicClients != null && !topicClients.isEmpty()) {
+                subscribers.add(topicClients);
+            }
+        }
+        if (subscribers.isEmpty()) {
+            return queued;
+        }
+
+        Set<SseClient> notified = subscribers.size() > 1 ? new HashSet<>() : null;
+        Map<SseSubscription, Optional<SseFrame>> framesBySubscription = new HashMap<>();
+        for (Set<SseClient> topicClients : subscribers) {
+            for (SseClient client : topicClients) {
+                if (notified != null && !notified.add(client)) {
+                    continue;
+                }
+                Optional<SseFrame> frame = framesBySubscription.computeIfAbsent(client.getSubscription(),
+                    subscription -> Optional.ofNullable(frameForSubscription.apply(subscription)));
+                if (frame.isPresent() && enqueue(client, frame.get())) {
+                    queued++;
+                }
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Enfileira um evento para todos os clientes, independente da inscrição (ex.: heartbeat)
+     *
+     * @return número de clientes para os quais o evento foi enfileirado
+     */
+    public int broadcast(SseFrame frame) {
+        int queued = 0;
+        for (SseClient client : clients) {
+            if (enqueue(client, frame)) {
+                queued++;
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Enfileira um evento para um cliente específico
+     */
+    public boolean send(SseClient client, SseFrame frame) {
+        return enqueue(client, frame);
+    }
+
+    /**
+     * Enfileira o snapshot completo de um cliente (initial_state), fora do limite de bytes pendentes
+     */
+    public boolean sendSnapshot(SseClient client, SseFrame frame) {
+        return enqueue(client, frame, true);
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public List<SseClient> getClients() {
+        return List.copyOf(clients);
+    }
+
+    /**
+     * Bytes enfileirados e ainda não escritos, somando todas as conexões
+     */
+    public long getPendingBytes() {
+        long total = 0;
+        for (SseClient client : clients) {
+            total += client.getPendingBytes();
+        }
+        return total;
+    }
+
+    private long getQueuedFrames() {
+        long total = 0;
+        for (SseClient client : clients) {
+            total += client.getQueueSize();
+        }
+        return total;
+    }
+
+    private int getMaxQueuedFrames() {
+        int max = 0;
+        for (SseClient client : clients) {
+            max = Math.max(max, client.getQueueSize());
+        }
+        return max;
+    }
+
+    private int getStalledCount() {
+        int stalled = 0;
+        for (SseClient client : clients) {
+            if (client.getWriteInProgressMillis() > 1000) {
+                stalled++;
+            }
+        }
+        return stalled;
+    }
+
+    /**
+     * Conexões removidas por escrita parada, bytes pendentes ou fila cheia desde o início
+     */
+    public long getEvictedCount() {
+        return (long) (evictedStalled.count() + evictedPendingBytes.count() + evictedQueueFull.count());
+    }
+
+    private boolean enqueue(SseClient client, SseFrame frame) {
+        return enqueue(client, frame, false);
+    }
+
+    private boolean enqueue(SseClient client, SseFrame frame, boolean snapshot) {
+        if (client.isClosed()) {
+            return false;
+        }
+
+        if (snapshot) {
+            client.pendingSnapshot = frame;
+        } else if (maxPendingBytes > 0 && client.pendingBytes.get() + frame.size() > maxPendingBytes) {
+            evict(client, evictedPendingBytes, "mais de " + maxPendingBytes + " bytes pendentes");
+            return false;
+        }
+
+        if (client.queue().offer(frame)) {
+            client.pendingBytes.addAndGet(budgetedSize(client, frame));
+        } else {
+            switch (overflowPolicy) {
+                case DROP_OLDEST -> {
+                    // Abre espaço descartando os eventos mais antigos
+                    while (!client.queue().offer(frame)) {
+                        SseFrame dropped = client.queue().poll();
+                        if (dropped != null) {
+                            client.pendingBytes.addAndGet(-budgetedSize(client, dropped));
+                            if (dropped == client.pendingSnapshot) {
+                                client.pendingSnapshot = null;
+                            }
+                        }
+                    }
+                    client.pendingBytes.addAndGet(budgetedSize(client, frame));
+                }
+                case DISCONNECT -> {
+                    evict(client, evictedQueueFull, "fila cheia (" + queueCapacity + " eventos)");
+                    return false;
+                }
+                case SNAPSHOT -> {
+                    // O snapshot gerado no envio já contém o efeito de tudo que foi descartado
+                    client.snapshotPending.set(true);
+                    client.queue().clear();
+                    client.pendingBytes.set(0);
+                    client.pendingSnapshot = null;
+                }
+            }
+        }
+
+        schedule(client);
+        return true;
+    }
+
+    /**
+     * Bytes do frame que contam para max-pending-bytes (o snapshot pendente não conta)
+     */
+    private static long budgetedSize(SseClient client, SseFrame frame) {
+        return frame == client.pendingSnapshot ? 0 : frame.size();
+    }
+
+    private void schedule(SseClient client) {
+        if (client.scheduled.compareAndSet(false, true)) {
+            try {
+                dispatchExecutor.execute(() -> drain(client));
+            } catch (RejectedExecutionException e) {
+                client.scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Envia os eventos pendentes de um cliente (executa no executor de dispatch).
+     * Todos os eventos acumulados na fila saem numa única escrita, com um único flush.
+     */
+    private void drain(SseClient client) {
+        try {
+            List<SseFrame> batch = new ArrayList<>();
+            if (client.snapshotPending.getAndSet(false)) {
+                Function<SseClient, SseFrame> supplier = snapshotSupplier;
+                if (supplier != null) {
+                    SseFrame snapshot = supplier.apply(client);
+                    client.pendingSnapshot = snapshot;
+                    batch.add(snapshot);
+                }
+            }
+
+            SseFrame frame;
+            while (batch.size() < MAX_FRAMES_PER_DRAIN && !client.isClosed() && (frame = client.queue().poll()) != null) {
+                batch.add(frame);
+            }
+            if (!batch.isEmpty() && !client.isClosed()) {
+                write(client, batch);
+            }
+        } finally {
+            client.scheduled.set(false);
+            // Eventos que chegaram durante o envio (ou o limite por rodada foi atingido)
+            if (!client.isClosed() && (!client.queue().isEmpty() || client.snapshotPending.get())) {
+                schedule(client);
+            }
+        }
+    }
+
+    private boolean write(SseClient client, List<SseFrame> frames) {
+        SseFrame snapshot = client.pendingSnapshot;
+        long bytes = 0;
+        long budgetedBytes = 0;
+        boolean includesSnapshot = false;
+        for (SseFrame frame : frames) {
+            bytes += frame.size();
+            if (frame == snapshot) {
+                includesSnapshot = true;
+            } else {
+                budgetedBytes += frame.size();
+            }
+        }
+        long started = System.nanoTime();
+        client.writeStartedNanos = started;
+        try {
+            client.getSink().write(frames);
+            long finished = System.nanoTime();
+            client.recordWrite(frames.size(), bytes, finished - started, finished);
+            client.pendingBytes.addAndGet(-budgetedBytes);
+            if (includesSnapshot) {
+                client.pendingSnapshot = null;
+            }
+            writeTimer.record(finished - started, TimeUnit.NANOSECONDS);
+            if (logger.isDebugEnabled() && writeCount.incrementAndGet() % debugSampleRate == 0) {
+                logger.debug("{} eventos ({} bytes) enviados para cliente {} em {} µs (amostra 1/{})",
+                             frames.size(), bytes, client.getId(), (finished - started) / 1000, debugSampleRate);
+            }
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Removendo cliente SSE devido a erro de envio: {}", e.getMessage());
+            if (remove(client)) {
+                removedOnError.increment();
+            }
+            return false;
+        } finally {
+            client.writeStartedNanos = 0;
+        }
+    }
+
+    private void checkClientsQuietly() {
+        try {
+            checkClients();
+        } catch (Exception e) {
+            logger.warn("Erro ao verificar conexões SSE: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Remove conexões paradas ou atrasadas demais e envia heartbeat às ociosas
+     */
+    private void checkClients() {
+        long now = System.nanoTime();
+        Supplier<SseFrame> heartbeat = heartbeatSupplier;
+        SseFrame heartbeatFrame = null;
+        for (SseClient client : clients) {
+            long writeStarted = client.writeStartedNanos;
+            if (maxWriteNanos > 0 && writeStarted != 0 && now - writeStarted > maxWriteNanos) {
+                evict(client, evictedStalled, "escrita parada há " + (now - writeStarted) / 1_000_000 + " ms");
+            } else if (maxPendingBytes > 0 && client.getPendingBytes() > maxPendingBytes) {
+                evict(client, evictedPendingBytes, client.getPendingBytes() + " bytes pendentes");
+            } else if (heartbeat != null && heartbeatNanos > 0 && now - client.lastActivityNanos >= heartbeatNanos) {
+                if (heartbeatFrame == null) {
+                    heartbeatFrame = heartbeat.get();
+                }
+                // Conta como atividade: sem escrita concluída, o próximo sai só após outro intervalo
+                client.lastActivityNanos = now;
+                if (enqueue(client, heartbeatFrame)) {
+                    heartbeatsSent.increment();
+                }
+            }
+        }
+    }
+
+    private void evict(SseClient client, Counter reason, String detail) {
+        logger.warn("Removendo cliente {} ({}): {}", client.getId(), client.getSink().getClass().getSimpleName(), detail);
+        reason.increment();
+        disconnect(client);
+    }
+
+    private void disconnect(SseClient client) {
+        remove(client);
+        try {
+            client.getSink().close();
+        } catch (Exception e) {
+            logger.debug("Erro ao encerrar conexão do cliente: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Tira o cliente dos índices; false se ele já tinha sido removido
+     */
+    private boolean remove(SseClient client) {
+        client.markClosed();
+        if (!clients.remove(client)) {
+            return false;
+        }
+        if (client.getSubscription().isUnfiltered()) {
+            unfilteredClients.remove(client);
+            return true;
+        }
+        for (String topic : client.getSubscription().topics()) {
+            topicIndex.computeIfPresent(topic, (key, topicClients) -> {
+                topicClients.remove(client);
+                return topicClients.isEmpty() ? null : topicClients;
+            });
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        healthExecutor.shutdownNow();
+        dispatchExecutor.shutdownNow();
+    }
+
+    /**
+     * Destino de um cliente SSE: os frames vão para o SseEmitter da requisição
+     */
+    private static final class EmitterSink implements SseSink {
+        private final SseEmitter emitter;
+
+        EmitterSink(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void write(List<SseFrame> frames) throws IOException {
+            SseFrame.writeAll(emitter, frames);
+        }
+
+        @Override
+        public void close() {
+            emitter.complete();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.scenario.automation.service.sse;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Evento SSE já codificado (linhas id:/event:/data: + linha em branco).
+ *
+ * Imutável: os mesmos bytes são escritos, sem nova serialização, em todos os clientes.
+ * Criado pelo {@link SseFrameEncoder}.
+ */
+public final class SseFrame {
+
+    private final String name;
+    private final String id;
+    private final byte[] bytes;
+    private final Object data;
+
+    // Outra codificação do mesmo evento (ex.: binária do WebSocket), criada no primeiro uso
+    private volatile byte[] alternate;
+
+    SseFrame(String name, String id, byte[] bytes, Object data) {
+        this.name = name;
+        this.id = id;
+        this.bytes = bytes;
+        this.data = data;
+    }
+
+    public String getName() { return name; }
+    public String getId() { return id; }
+
+    /**
+     * Objeto de origem do evento (antes da serialização)
+     */
+    public Object getData() { return data; }
+
+    /**
+     * Codificação alternativa do evento, gerada uma vez por frame e compartilhada entre as
+     * conexões que a usam (como os bytes SSE)
+     */
+    public byte[] alternate(Function<SseFrame, byte[]> encoder) {
+        byte[] encoded = alternate;
+        if (encoded == null) {
+            encoded = encoder.apply(this);
+            alternate = encoded;
+        }
+        return encoded;
+    }
+
+    /**
+     * Tamanho do frame codificado em bytes
+     */
+    public int size() {
+        return bytes.length;
+    }
+
+    /**
+     * Escreve os bytes do frame no emitter, sem passar pelo SseEventBuilder
+     */
+    void writeTo(SseEmitter emitter) throws IOException {
+        emitter.send(Set.of(new ResponseBodyEmitter.DataWithMediaType(bytes, MediaType.TEXT_PLAIN)));
+    }
+
+    /**
+     * Escreve vários frames concatenados numa única escrita (e um único flush) no emitter
+     */
+    static void writeAll(SseEmitter emitter, List<SseFrame> frames) throws IOException {
+        if (frames.size() == 1) {
+            frames.get(0).writeTo(emitter);
+            return;
+        }
+        int length = 0;
+        for (SseFrame frame : frames) {
+            length += frame.bytes.length;
+        }
+        byte[] batch = new byte[length];
+        int offset = 0;
+        for (SseFrame frame : frames) {
+            System.arraycopy(frame.bytes, 0, batch, offset, frame.bytes.length);
+            offset += frame.bytes.length;
+        }
+        emitter.send(Set.of(new ResponseBodyEmitter.DataWithMediaType(batch, MediaType.TEXT_PLAIN)));
+    }
+}
@@ -0,0 +1,50 @@
+package com.scenario.automation.service.sse;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codifica eventos SSE uma única vez, usando o mesmo ObjectMapper do Spring MVC
+ */
+@Component
+public class SseFrameEncoder {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Serializa o evento no formato text/event-stream.
+     * Strings são enviadas como estão; outros objetos viram JSON.
+     */
+    public SseFrame encode(String name, String id, Object data) {
+        String payload;
+        if (data instanceof String text) {
+            payload = text;
+        } else {
+            try {
+                payload = objectMapper.writeValueAsString(data);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Erro ao serializar evento SSE " + name, e);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(payload.length() + 64);
+        if (id != null) {
+            sb.append("id:").append(id).append('\n');
+        }
+        if (name != null) {
+            sb.append("event:").append(name).append('\n');
+        }
+        // Cada linha do payload precisa do próprio prefixo data:
+        for (String line : payload.split("\n", -1)) {
+            sb.append("data:").append(line).append('\n');
+        }
+        sb.append('\n');
+
+        return new SseFrame(name, id, sb.toString().getBytes(StandardCharsets.UTF_8), data);
+    }
+}
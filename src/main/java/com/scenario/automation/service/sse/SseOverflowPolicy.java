@@ -0,0 +1,22 @@
+package com.scenario.automation.service.sse;
+
+/**
+ * O que fazer quando a fila de um cliente SSE enche
+ */
+public enum SseOverflowPolicy {
+
+    /**
+     * Descarta o evento mais antigo da fila para abrir espaço
+     */
+    DROP_OLDEST,
+
+    /**
+     * Desconecta o cliente; ele reconecta e recebe o estado inicial de novo
+     */
+    DISCONNECT,
+
+    /**
+     * Descarta a fila inteira e envia um snapshot completo do estado no lugar
+     */
+    SNAPSHOT
+}
@@ -0,0 +1,21 @@
+package com.scenario.automation.service.sse;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destino dos eventos de um cliente: o SseEmitter da conexão HTTP ou outra conexão
+ * (ex.: WebSocket) que recebe os mesmos frames pelo {@link SseDispatcher}
+ */
+public interface SseSink {
+
+    /**
+     * Escreve os frames, em ordem, numa única escrita quando possível
+     */
+    void write(List<SseFrame> frames) throws IOException;
+
+    /**
+     * Encerra a conexão (cliente removido pelo dispatcher)
+     */
+    void close();
+}
@@ -0,0 +1,36 @@
+package com.scenario.automation.service.sse;
+
+/**
+ * Formato do estado inicial (e dos diffs) enviado a um cliente SSE, escolhido por ?snapshot=
+ */
+public enum SseSnapshotFormat {
+
+    /**
+     * Mapa JSON id -> ligada (padrão)
+     */
+    JSON,
+
+    /**
+     * Faixas de ids ordenados + bitset de ligadas e bytes de brilho em base64
+     */
+    COMPACT,
+
+    /**
+     * Como COMPACT, com bitset e brilho comprimidos em gzip antes do base64
+     */
+    COMPACT_GZIP;
+
+    /**
+     * Formato a partir do parâmetro (json, compact, compact-gzip); ausente ou desconhecido usa JSON
+     */
+    public static SseSnapshotFormat of(String value) {
+        if (value == null) {
+            return JSON;
+        }
+        return switch (value.trim().toLowerCase()) {
+            case "compact" -> COMPACT;
+            case "compact-gzip", "compact_gzip" -> COMPACT_GZIP;
+            default -> JSON;
+        };
+    }
+}
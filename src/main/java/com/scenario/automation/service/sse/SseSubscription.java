@@ -0,0 +1,155 @@
+package com.scenario.automation.service.sse;
+
+import com.scenario.automation.service.LuminariaTopologyService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Filtro de inscrição de um cliente SSE: ambientes, subambientes e/ou luminárias específicas.
+ * Sem nenhum filtro o cliente recebe tudo.
+ */
+public final class SseSubscription {
+
+    private static final SseSubscription ALL = new SseSubscription(Set.of(), Set.of(), Set.of());
+
+    private final Set<Long> environmentIds;
+    private final Set<String> subambientes;
+    private final Set<Long> luminariaIds;
+
+    private SseSubscription(Set<Long> environmentIds, Set<String> subambientes, Set<Long> luminariaIds) {
+        this.environmentIds = environmentIds;
+        this.subambientes = subambientes;
+        this.luminariaIds = luminariaIds;
+    }
+
+    /**
+     * Inscrição sem filtro (todas as luminárias)
+     */
+    public static SseSubscription all() {
+        return ALL;
+    }
+
+    /**
+     * Cria uma inscrição a partir dos parâmetros da requisição (qualquer um pode ser null)
+     */
+    public static SseSubscription of(Collection<Long> environmentIds, Collection<String> subambientes,
+                                     Collection<Long> luminariaIds) {
+        Set<Long> environments = copyOf(environmentIds);
+        Set<Long> luminarias = copyOf(luminariaIds);
+        Set<String> normalizedSubambientes = new LinkedHashSet<>();
+        if (subambientes != null) {
+            for (String subambiente : subambientes) {
+                String normalized = LuminariaTopologyService.normalizeSubambiente(subambiente);
+                if (normalized != null) {
+                    normalizedSubambientes.add(normalized);
+                }
+            }
+        }
+
+        if (environments.isEmpty() && luminarias.isEmpty() && normalizedSubambientes.isEmpty()) {
+            return ALL;
+        }
+        return new SseSubscription(environments, Collections.unmodifiableSet(normalizedSubambientes), luminarias);
+    }
+
+    public Set<Long> getEnvironmentIds() { return environmentIds; }
+    public Set<String> getSubambientes() { return subambientes; }
+    public Set<Long> getLuminariaIds() { return luminariaIds; }
+
+    public boolean isUnfiltered() {
+        return environmentIds.isEmpty() && subambientes.isEmpty() && luminariaIds.isEmpty();
+    }
+
+    /**
+     * Indica se a mudança de uma luminária interessa a este cliente
+     */
+    public boolean matches(Long luminariaId, Long environmentId, String subambiente) {
+        return isUnfiltered()
+            || luminariaIds.contains(luminariaId)
+            || (environmentId != null && environmentIds.contains(environmentId))
+            || (subambiente != null && subambientes.contains(subambiente));
+    }
+
+    /**
+     * Tópicos em que o cliente deve ser indexado
+     */
+    List<String> topics() {
+        List<String> topics = new ArrayList<>();
+        environmentIds.forEach(id -> topics.add(environmentTopic(id)));
+        subambientes.forEach(name -> topics.add(subambienteTopic(name)));
+        luminariaIds.forEach(id -> topics.add(luminariaTopic(id)));
+        return topics;
+    }
+
+    /**
+     * Tópicos afetados por uma mudança de estado de uma luminária
+     */
+    public static List<String> topicsFor(Long luminariaId, Long environmentId, String subambiente) {
+        List<String> topics = new ArrayList<>(3);
+        topics.add(luminariaTopic(luminariaId));
+        if (environmentId != null) {
+            topics.add(environmentTopic(environmentId));
+        }
+        if (subambiente != null) {
+            topics.add(subambienteTopic(subambiente));
+        }
+        return topics;
+    }
+
+    /**
+     * Tópicos afetados por uma mudança nos contadores de um ambiente (ambiente e seu subambiente)
+     */
+    public static List<String> topicsForEnvironment(Long environmentId, String subambiente) {
+        List<String> topics = new ArrayList<>(2);
+        topics.add(environmentTopic(environmentId));
+        if (subambiente != null) {
+            topics.add(subambienteTopic(subambiente));
+        }
+        return topics;
+    }
+
+    static String environmentTopic(Long environmentId) {
+        return "env:" + environmentId;
+    }
+
+    static String subambienteTopic(String subambiente) {
+        return "sub:" + subambiente;
+    }
+
+    static String luminariaTopic(Long luminariaId) {
+        return "lum:" + luminariaId;
+    }
+
+    /**
+     * Inscrições com os mesmos filtros são iguais (permite reaproveitar frames filtrados)
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SseSubscription)) return false;
+        SseSubscription that = (SseSubscription) o;
+        return environmentIds.equals(that.environmentIds)
+            && subambientes.equals(that.subambientes)
+            && luminariaIds.equals(that.luminariaIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(environmentIds, subambientes, luminariaIds);
+    }
+
+    private static Set<Long> copyOf(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Set.of();
+        }
+        Set<Long> copy = new LinkedHashSet<>(ids);
+        copy.remove(null);
+        return Collections.unmodifiableSet(copy);
+    }
+}
@@ -0,0 +1,121 @@
+package com.scenario.automation.service.state;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Estados de luminárias em formato compacto, para snapshots grandes.
+ *
+ * <pre>
+ *   ranges      [início, quantidade, início, quantidade, ...] dos ids em ordem crescente
+ *   states      bitset em base64: bit i (byte i / 8, bit menos significativo primeiro) = luminária i ligada
+ *   brightness  um byte de brilho (0-100) por luminária, em base64
+ *   colors      id -> #RRGGBB, só das luminárias fora da cor padrão
+ * </pre>
+ * A luminária i é a i-ésima percorrendo as faixas. Com {@code encoding = "gzip"}, states e
+ * brightness são comprimidos em gzip antes do base64.
+ */
+public final class CompactStates {
+
+    private final int count;
+    private final long[] ranges;
+    private final String states;
+    private final String brightness;
+    private final Map<Long, String> colors;
+    private final String encoding;
+
+    private CompactStates(int count, long[] ranges, String states, String brightness,
+                          Map<Long, String> colors, String encoding) {
+        this.count = count;
+        this.ranges = ranges;
+        this.states = states;
+        this.brightness = brightness;
+        this.colors = colors;
+        this.encoding = encoding;
+    }
+
+    public int getCount() { return count; }
+    public long[] getRanges() { return ranges; }
+    public String getStates() { return states; }
+    public String getBrightness() { return brightness; }
+    public Map<Long, String> getColors() { return colors.isEmpty() ? null : colors; }
+    public String getEncoding() { return encoding; }
+
+    /**
+     * Acumula entradas (id, valor empacotado); ids fora de ordem são ordenados no final
+     */
+    public static final class Builder {
+        private long[] ids = new long[16];
+        private long[] values = new long[16];
+        private int size;
+        private boolean sorted = true;
+
+        public void add(long luminariaId, long packed) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            if (size > 0 && ids[size - 1] > luminariaId) {
+                sorted = false;
+            }
+            ids[size] = luminariaId;
+            values[size++] = packed;
+        }
+
+        public CompactStates build(boolean gzip) {
+            if (!sorted) {
+                LuminariaStateSnapshot.sort(ids, values, null, 0, size - 1);
+            }
+
+            long[] ranges = new long[16];
+            int rangeLength = 0;
+            byte[] bits = new byte[(size + 7) / 8];
+            byte[] levels = new byte[size];
+            Map<Long, String> colors = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++) {
+                if (rangeLength > 0 && ranges[rangeLength - 2] + ranges[rangeLength - 1] == ids[i]) {
+                    ranges[rangeLength - 1]++;
+                } else {
+                    if (rangeLength + 2 > ranges.length) {
+                        ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                    }
+                    ranges[rangeLength++] = ids[i];
+                    ranges[rangeLength++] = 1;
+                }
+                if (LuminariaStateTable.isOn(values[i])) {
+                    bits[i >>> 3] |= (byte) (1 << (i & 7));
+                }
+                levels[i] = (byte) LuminariaStateTable.brightness(values[i]);
+                int color = LuminariaStateTable.color(values[i]);
+                if (color != LuminariaStateTable.DEFAULT_COLOR) {
+                    colors.put(ids[i], LuminariaStateTable.formatColor(color));
+                }
+            }
+
+            Base64.Encoder base64 = Base64.getEncoder();
+            return new CompactStates(
+                size,
+                Arrays.copyOf(ranges, rangeLength),
+                base64.encodeToString(gzip ? gzip(bits) : bits),
+                base64.encodeToString(gzip ? gzip(levels) : levels),
+                colors,
+                gzip ? "gzip" : null);
+        }
+
+        private static byte[] gzip(byte[] data) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 8));
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.scenario.automation.service.state;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buffer circular de tamanho fixo com os eventos mais recentes, indexados por número de sequência.
+ *
+ * Os eventos devem ser adicionados com sequências estritamente crescentes e contíguas,
+ * o que permite saber exatamente se um intervalo ainda está disponível para replay.
+ */
+public class EventRingBuffer<T> {
+
+    private final long[] sequences;
+    private final Object[] events;
+
+    // Próxima posição de escrita e quantidade de eventos válidos
+    private int head;
+    private int size;
+
+    public EventRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacidade do buffer deve ser positiva: " + capacity);
+        }
+        this.sequences = new long[capacity];
+        this.events = new Object[capacity];
+    }
+
+    /**
+     * Adiciona um evento, descartando o mais antigo se o buffer estiver cheio
+     */
+    public synchronized void add(long sequence, T event) {
+        sequences[head] = sequence;
+        events[head] = event;
+        head = (head + 1) % events.length;
+        if (size < events.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Eventos com sequência maior que lastSequence, em ordem.
+     *
+     * @return lista (possivelmente vazia) ou null quando parte do intervalo já saiu do buffer
+     *         ou a sequência é desconhecida
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<T> since(long lastSequence) {
+        if (size == 0) {
+            return null;
+        }
+
+        int oldest = (head - size + events.length) % events.length;
+        long oldestSequence = sequences[oldest];
+        long latestSequence = sequences[(head - 1 + events.length) % events.length];
+        if (lastSequence < oldestSequence - 1 || lastSequence > latestSequence) {
+            return null;
+        }
+
+        // Sequências contíguas: a posição do primeiro evento perdido é calculada diretamente
+        int skip = (int) (lastSequence - oldestSequence + 1);
+        List<T> missed = new ArrayList<>(size - skip);
+        for (int i = skip; i < size; i++) {
+            missed.add((T) events[(oldest + i) % events.length]);
+        }
+        return missed;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
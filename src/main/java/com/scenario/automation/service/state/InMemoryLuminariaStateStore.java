@@ -0,0 +1,31 @@
+package com.scenario.automation.service.state;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Store sem persistência (comportamento antigo): todo restart começa com as luminárias desligadas.
+ * Para usar: app.luminaires.state-store.type=memory
+ */
+@Component
+@ConditionalOnProperty(name = "app.luminaires.state-store.type", havingValue = "memory")
+public class InMemoryLuminariaStateStore implements LuminariaStateStore {
+
+    @Override
+    public Map<Long, Long> loadAll() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void save(Long luminariaId, boolean isOn, int brightness, int color) {
+        // Nada a persistir
+    }
+
+    @Override
+    public void flush() {
+        // Nada a persistir
+    }
+}
@@ -0,0 +1,136 @@
+package com.scenario.automation.service.state;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store write-behind sobre a tabela luminaires.
+ *
+ * As mudanças ficam num mapa de pendências (a última escrita de cada luminária vence)
+ * e são gravadas periodicamente em lotes JDBC, fora do thread da requisição.
+ */
+@Component
+@ConditionalOnProperty(name = "app.luminaires.state-store.type", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcLuminariaStateStore implements LuminariaStateStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcLuminariaStateStore.class);
+
+    private static final String SELECT_SQL = "SELECT id, status, brightness, color FROM luminaires WHERE status IS NOT NULL";
+    private static final String UPDATE_SQL = "UPDATE luminaires SET status = ?, brightness = ?, color = ? WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.luminaires.state-store.batch-size:500}")
+    private int batchSize;
+
+    // Mudanças ainda não gravadas (id -> valor empacotado); mudanças repetidas da mesma luminária se
+    // fundem, então uma transição (fade) grava só o último passo de cada ciclo
+    private final Map<Long, Long> pending = new ConcurrentHashMap<>();
+
+    // Executor dedicado para o flush periódico
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "luminaria-state-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public JdbcLuminariaStateStore(@Value("${app.luminaires.state-store.flush-interval-ms:500}") long flushIntervalMs) {
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Map<Long, Long> loadAll() {
+        Map<Long, Long> states = new HashMap<>();
+        jdbcTemplate.query(SELECT_SQL, rs -> {
+            String color = rs.getString("color");
+            states.put(rs.getLong("id"), LuminariaStateTable.pack(
+                0,
+                rs.getBoolean("status"),
+                rs.getInt("brightness"),
+                color != null ? parseColorQuietly(color) : LuminariaStateTable.DEFAULT_COLOR));
+        });
+        logger.info("Estado de {} luminárias carregado do banco", states.size());
+        return states;
+    }
+
+    @Override
+    public void save(Long luminariaId, boolean isOn, int brightness, int color) {
+        pending.put(luminariaId, LuminariaStateTable.pack(0, isOn, brightness, color));
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        // Retira cada entrada de forma atômica; escritas que chegarem durante o flush ficam para o próximo ciclo
+        List<Object[]> batch = new ArrayList<>(pending.size());
+        for (Long luminariaId : pending.keySet()) {
+            Long state = pending.remove(luminariaId);
+            if (state != null) {
+                batch.add(new Object[]{
+                    LuminariaStateTable.isOn(state),
+                    LuminariaStateTable.brightness(state),
+                    LuminariaStateTable.formatColor(LuminariaStateTable.color(state)),
+                    luminariaId
+                });
+            }
+        }
+
+        for (int start = 0; start < batch.size(); start += batchSize) {
+            List<Object[]> chunk = batch.subList(start, Math.min(start + batchSize, batch.size()));
+            try {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, chunk);
+            } catch (DataAccessException e) {
+                // Devolve este lote e todos os seguintes (ainda não gravados) sem sobrescrever mudanças mais novas
+                for (Object[] args : batch.subList(start, batch.size())) {
+                    pending.putIfAbsent((Long) args[3], LuminariaStateTable.pack(
+                        0, (Boolean) args[0], (Integer) args[1], LuminariaStateTable.parseColor((String) args[2])));
+                }
+                throw e;
+            }
+        }
+
+        logger.debug("Flush de estado: {} luminárias gravadas", batch.size());
+    }
+
+    private static int parseColorQuietly(String color) {
+        try {
+            return LuminariaStateTable.parseColor(color.trim());
+        } catch (IllegalArgumentException e) {
+            return LuminariaStateTable.DEFAULT_COLOR;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.warn("Erro ao gravar estado das luminárias, nova tentativa no próximo ciclo: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        flushQuietly();
+    }
+}
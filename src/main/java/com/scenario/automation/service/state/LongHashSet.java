@@ -0,0 +1,139 @@
+package com.scenario.automation.service.state;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * Conjunto de ids positivos sem boxing, para conjuntos pequenos e numerosos (ex.: luminárias de
+ * cada ambiente), onde uma {@link PackedLongTable} por conjunto custaria mais que as entradas.
+ *
+ * Endereçamento aberto (sondagem linear) num long[] com remoção por deslocamento, sem marcas de
+ * removido: ~8-20 bytes por id. Todos os métodos são sincronizados na instância.
+ */
+public final class LongHashSet {
+
+    private static final long EMPTY = 0L;
+    private static final int MIN_CAPACITY = 8;
+    private static final double LOAD_FACTOR = 0.6;
+
+    private long[] keys = new long[MIN_CAPACITY];
+    private int size;
+
+    public synchronized boolean contains(long id) {
+        return id > 0 && keys[indexOf(keys, id)] == id;
+    }
+
+    /**
+     * Inclui o id; false se ele já estava no conjunto
+     */
+    public synchronized boolean add(long id) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("Id de luminária inválido: " + id);
+        }
+        int index = indexOf(keys, id);
+        if (keys[index] == id) {
+            return false;
+        }
+        keys[index] = id;
+        if (++size > keys.length * LOAD_FACTOR) {
+            resize(keys.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Remove o id; false se ele não estava no conjunto
+     */
+    public synchronized boolean remove(long id) {
+        if (id <= 0) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        int hole = indexOf(keys, id);
+        if (keys[hole] != id) {
+            return false;
+        }
+        keys[hole] = EMPTY;
+        size--;
+        // Puxa para o buraco as chaves seguintes cuja posição ideal não está entre o buraco e elas
+        for (int index = (hole + 1) & mask; keys[index] != EMPTY; index = (index + 1) & mask) {
+            int ideal = slot(keys[index], mask);
+            if (((index - ideal) & mask) >= ((index - hole) & mask)) {
+                keys[hole] = keys[index];
+                keys[index] = EMPTY;
+                hole = index;
+            }
+        }
+        if (keys.length > MIN_CAPACITY && size < keys.length * LOAD_FACTOR / 4) {
+            resize(keys.length >> 1);
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized void forEach(LongConsumer consumer) {
+        for (long key : keys) {
+            if (key != EMPTY) {
+                consumer.accept(key);
+            }
+        }
+    }
+
+    /**
+     * Cópia dos ids num Set comum
+     */
+    public synchronized Set<Long> toSet() {
+        Set<Long> ids = new HashSet<>(Math.max(16, (int) (size / 0.75f) + 1));
+        for (long key : keys) {
+            if (key != EMPTY) {
+                ids.add(key);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Bytes ocupados pelo array de chaves
+     */
+    public synchronized long memoryBytes() {
+        return (long) keys.length * Long.BYTES;
+    }
+
+    private void resize(int capacity) {
+        long[] resized = new long[capacity];
+        for (long key : keys) {
+            if (key != EMPTY) {
+                resized[indexOf(resized, key)] = key;
+            }
+        }
+        keys = resized;
+    }
+
+    /**
+     * Posição da chave, ou do primeiro slot vazio da sua sequência de sondagem
+     */
+    private static int indexOf(long[] keys, long id) {
+        int mask = keys.length - 1;
+        int index = slot(id, mask);
+        while (keys[index] != EMPTY && keys[index] != id) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    // Mistura de bits (fmix64), como na PackedLongTable: ids sequenciais não formam sequências longas
+    private static int slot(long id, int mask) {
+        id ^= id >>> 33;
+        id *= 0xff51afd7ed558ccdL;
+        id ^= id >>> 33;
+        return (int) id & mask;
+    }
+}
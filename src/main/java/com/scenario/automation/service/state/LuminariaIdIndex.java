@@ -0,0 +1,137 @@
+package com.scenario.automation.service.state;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Conjunto compacto dos ids de luminárias existentes.
+ *
+ * Bitmap dividido em blocos de 65536 ids (como os containers de um roaring bitmap): 1 bit por
+ * id nos blocos em uso e nada nos intervalos sem luminárias. Ids gerados pelo banco são
+ * sequenciais, então 1 milhão de luminárias ocupam ~128 KB. Consultas não usam lock nem
+ * boxing; inclusões e remoções são atômicas por palavra de 64 bits.
+ */
+public final class LuminariaIdIndex {
+
+    private static final int BLOCK_SHIFT = 16;
+    private static final int WORDS_PER_BLOCK = (1 << BLOCK_SHIFT) / Long.SIZE;
+
+    // Ids acima de 2^36 (improváveis com ids sequenciais) ficam num conjunto comum
+    private static final long MAX_BLOCKS = 1L << 20;
+
+    // Blocos por índice (id >>> 16); o array é substituído, nunca alterado, ao criar um bloco
+    private volatile AtomicLongArray[] blocks = new AtomicLongArray[0];
+
+    private final Set<Long> overflow = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public boolean contains(long luminariaId) {
+        if (luminariaId < 0 || (luminariaId >>> BLOCK_SHIFT) >= MAX_BLOCKS) {
+            return overflow.contains(luminariaId);
+        }
+        AtomicLongArray[] current = blocks;
+        int blockIndex = (int) (luminariaId >>> BLOCK_SHIFT);
+        if (blockIndex >= current.length || current[blockIndex] == null) {
+            return false;
+        }
+        return (current[blockIndex].get(wordIndex(luminariaId)) & bit(luminariaId)) != 0;
+    }
+
+    /**
+     * Inclui o id; false se ele já estava no índice
+     */
+    public boolean add(long luminariaId) {
+        if (luminariaId < 0 || (luminariaId >>> BLOCK_SHIFT) >= MAX_BLOCKS) {
+            return counted(overflow.add(luminariaId), 1);
+        }
+        AtomicLongArray block = block((int) (luminariaId >>> BLOCK_SHIFT));
+        int word = wordIndex(luminariaId);
+        long bit = bit(luminariaId);
+        long current;
+        do {
+            current = block.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+        } while (!block.compareAndSet(word, current, current | bit));
+        return counted(true, 1);
+    }
+
+    /**
+     * Remove o id; false se ele não estava no índice
+     */
+    public boolean remove(long luminariaId) {
+        if (luminariaId < 0 || (luminariaId >>> BLOCK_SHIFT) >= MAX_BLOCKS) {
+            return counted(overflow.remove(luminariaId), -1);
+        }
+        AtomicLongArray[] current = blocks;
+        int blockIndex = (int) (luminariaId >>> BLOCK_SHIFT);
+        if (blockIndex >= current.length || current[blockIndex] == null) {
+            return false;
+        }
+        AtomicLongArray block = current[blockIndex];
+        int word = wordIndex(luminariaId);
+        long bit = bit(luminariaId);
+        long value;
+        do {
+            value = block.get(word);
+            if ((value & bit) == 0) {
+                return false;
+            }
+        } while (!block.compareAndSet(word, value, value & ~bit));
+        return counted(true, -1);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Memória aproximada dos blocos alocados
+     */
+    public long memoryBytes() {
+        long bytes = (long) blocks.length * 8;
+        for (AtomicLongArray block : blocks) {
+            if (block != null) {
+                bytes += (long) WORDS_PER_BLOCK * Long.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    private AtomicLongArray block(int blockIndex) {
+        AtomicLongArray[] current = blocks;
+        if (blockIndex < current.length && current[blockIndex] != null) {
+            return current[blockIndex];
+        }
+        synchronized (this) {
+            current = blocks;
+            if (blockIndex < current.length && current[blockIndex] != null) {
+                return current[blockIndex];
+            }
+            AtomicLongArray[] grown = Arrays.copyOf(current, Math.max(current.length, blockIndex + 1));
+            AtomicLongArray block = new AtomicLongArray(WORDS_PER_BLOCK);
+            grown[blockIndex] = block;
+            blocks = grown;
+            return block;
+        }
+    }
+
+    private boolean counted(boolean changed, int delta) {
+        if (changed) {
+            size.addAndGet(delta);
+        }
+        return changed;
+    }
+
+    private static int wordIndex(long luminariaId) {
+        return (int) (luminariaId & ((1 << BLOCK_SHIFT) - 1)) >>> 6;
+    }
+
+    private static long bit(long luminariaId) {
+        return 1L << (luminariaId & 63);
+    }
+}
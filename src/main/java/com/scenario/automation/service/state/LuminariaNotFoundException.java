@@ -0,0 +1,18 @@
+package com.scenario.automation.service.state;
+
+/**
+ * Comando para uma luminária que não existe (ou foi removida)
+ */
+public class LuminariaNotFoundException extends RuntimeException {
+
+    private final Long luminariaId;
+
+    public LuminariaNotFoundException(Long luminariaId) {
+        super("Luminária não encontrada com ID: " + luminariaId);
+        this.luminariaId = luminariaId;
+    }
+
+    public Long getLuminariaId() {
+        return luminariaId;
+    }
+}
@@ -0,0 +1,242 @@
+package com.scenario.automation.service.state;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Cópia imutável do estado das luminárias num ponto da sequência de eventos (epoch).
+ *
+ * Ids ordenados, valores empacotados (formato do {@link LuminariaStateTable}) e a sequência do
+ * último evento que publicou cada luminária, em arrays paralelos. É criada no máximo uma vez por
+ * epoch e compartilhada por todos os leitores (initial_state, /states), que a recebem sem cópia.
+ */
+public final class LuminariaStateSnapshot {
+
+    public static final LuminariaStateSnapshot EMPTY = new LuminariaStateSnapshot(-1, new long[0], new long[0], new long[0]);
+
+    private final long epoch;
+    private final long[] luminariaIds;
+    private final long[] values;
+    private final long[] sequences;
+    private final long createdAtNanos = System.nanoTime();
+
+    private LuminariaStateSnapshot(long epoch, long[] luminariaIds, long[] values, long[] sequences) {
+        this.epoch = epoch;
+        this.luminariaIds = luminariaIds;
+        this.values = values;
+        this.sequences = sequences;
+    }
+
+    /**
+     * Copia a tabela (O(n), uma vez por epoch)
+     *
+     * @param publishedSequences sequência do último evento publicado de cada luminária (0 se nunca publicada)
+     */
+    public static LuminariaStateSnapshot of(long epoch, LuminariaStateTable table, PackedLongTable publishedSequences) {
+        Builder builder = new Builder(table.size() + table.size() / 8);
+        table.forEach((luminariaId, packed) -> builder.add(luminariaId, packed, publishedSequences.get(luminariaId, 0)));
+        return builder.build(epoch);
+    }
+
+    /**
+     * Diff em relação a uma epoch anterior: só as luminárias publicadas depois de {@code sinceEpoch},
+     * com o valor desta cópia (mesma epoch desta). Não representa remoções: quem usa o diff
+     * precisa garantir que nenhuma luminária foi removida desde {@code sinceEpoch}.
+     */
+    public LuminariaStateSnapshot since(long sinceEpoch) {
+        Builder builder = new Builder(16);
+        for (int i = 0; i < luminariaIds.length; i++) {
+            if (sequences[i] > sinceEpoch) {
+                builder.add(luminariaIds[i], values[i], sequences[i]);
+            }
+        }
+        return builder.build(epoch);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int size() {
+        return luminariaIds.length;
+    }
+
+    /**
+     * Idade da cópia em milissegundos
+     */
+    public long getAgeMillis() {
+        return (System.nanoTime() - createdAtNanos) / 1_000_000;
+    }
+
+    /**
+     * Valor empacotado da luminária, ou {@code defaultValue} se ela não estiver na cópia
+     */
+    public long get(long luminariaId, long defaultValue) {
+        int index = Arrays.binarySearch(luminariaIds, luminariaId);
+        return index >= 0 ? values[index] : defaultValue;
+    }
+
+    public boolean contains(long luminariaId) {
+        return Arrays.binarySearch(luminariaIds, luminariaId) >= 0;
+    }
+
+    public void forEach(LuminariaStateTable.EntryConsumer consumer) {
+        for (int i = 0; i < luminariaIds.length; i++) {
+            consumer.accept(luminariaIds[i], values[i]);
+        }
+    }
+
+    /**
+     * Visão somente leitura (id -> ligada), sem cópia
+     */
+    public Map<Long, Boolean> asMap() {
+        return new StatesView();
+    }
+
+    /**
+     * Quicksort dos ids levando os valores (e as sequências, se houver) junto; evita boxing para ordenar pares
+     */
+    static void sort(long[] ids, long[] values, long[] sequences, int low, int high) {
+        while (low < high) {
+            if (high - low < 16) {
+                for (int i = low + 1; i <= high; i++) {
+                    for (int j = i; j > low && ids[j - 1] > ids[j]; j--) {
+                        swap(ids, values, sequences, j, j - 1);
+                    }
+                }
+                return;
+            }
+            long pivot = ids[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (ids[i] < pivot) i++;
+                while (ids[j] > pivot) j--;
+                if (i <= j) {
+                    swap(ids, values, sequences, i++, j--);
+                }
+            }
+            // Recursão na parte menor; a maior continua no laço (profundidade O(log n))
+            if (j - low < high - i) {
+                sort(ids, values, sequences, low, j);
+                low = i;
+            } else {
+                sort(ids, values, sequences, i, high);
+                high = j;
+            }
+        }
+    }
+
+    private static void swap(long[] ids, long[] values, long[] sequences, int a, int b) {
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        long value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+        if (sequences != null) {
+            long sequence = sequences[a];
+            sequences[a] = sequences[b];
+            sequences[b] = sequence;
+        }
+    }
+
+    /**
+     * Acumula as entradas (a tabela pode crescer durante a varredura) e ordena por id no final
+     */
+    private static final class Builder {
+        private long[] ids;
+        private long[] values;
+        private long[] sequences;
+        private int size;
+        private boolean sorted = true;
+
+        Builder(int expected) {
+            this.ids = new long[Math.max(16, expected)];
+            this.values = new long[ids.length];
+            this.sequences = new long[ids.length];
+        }
+
+        void add(long luminariaId, long value, long sequence) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                sequences = Arrays.copyOf(sequences, size * 2);
+            }
+            if (size > 0 && ids[size - 1] > luminariaId) {
+                sorted = false;
+            }
+            ids[size] = luminariaId;
+            values[size] = value;
+            sequences[size++] = sequence;
+        }
+
+        LuminariaStateSnapshot build(long epoch) {
+            long[] sortedIds = Arrays.copyOf(ids, size);
+            long[] sortedValues = Arrays.copyOf(values, size);
+            long[] sortedSequences = Arrays.copyOf(sequences, size);
+            if (!sorted) {
+                sort(sortedIds, sortedValues, sortedSequences, 0, size - 1);
+            }
+            return new LuminariaStateSnapshot(epoch, sortedIds, sortedValues, sortedSequences);
+        }
+    }
+
+    private final class StatesView extends AbstractMap<Long, Boolean> {
+
+        @Override
+        public Boolean get(Object key) {
+            if (!(key instanceof Long)) {
+                return null;
+            }
+            int index = Arrays.binarySearch(luminariaIds, (Long) key);
+            return index >= 0 ? LuminariaStateTable.isOn(values[index]) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Long && contains((Long) key);
+        }
+
+        @Override
+        public int size() {
+            return luminariaIds.length;
+        }
+
+        @Override
+        public Set<Entry<Long, Boolean>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<Long, Boolean>> iterator() {
+                    return new Iterator<>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < luminariaIds.length;
+                        }
+
+                        @Override
+                        public Entry<Long, Boolean> next() {
+                            if (index >= luminariaIds.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int current = index++;
+                            return new SimpleImmutableEntry<>(luminariaIds[current], LuminariaStateTable.isOn(values[current]));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return luminariaIds.length;
+                }
+            };
+        }
+    }
+}
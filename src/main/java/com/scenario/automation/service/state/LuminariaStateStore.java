@@ -0,0 +1,29 @@
+package com.scenario.automation.service.state;
+
+import java.util.Map;
+
+/**
+ * Armazenamento durável do estado das luminárias (ligada, brilho e cor).
+ *
+ * O LuminariaStateService continua sendo a fonte da verdade em memória;
+ * o store apenas recebe as mudanças (sem bloquear o chamador) e devolve
+ * o último estado conhecido na inicialização.
+ */
+public interface LuminariaStateStore {
+
+    /**
+     * Carrega o último estado persistido de todas as luminárias
+     * (id -> valor empacotado no formato do {@link LuminariaStateTable}, versão 0)
+     */
+    Map<Long, Long> loadAll();
+
+    /**
+     * Registra uma mudança de estado. Não deve fazer I/O no thread do chamador.
+     */
+    void save(Long luminariaId, boolean isOn, int brightness, int color);
+
+    /**
+     * Força a gravação das mudanças pendentes
+     */
+    void flush();
+}
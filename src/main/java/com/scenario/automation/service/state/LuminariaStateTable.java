@@ -0,0 +1,322 @@
+package com.scenario.automation.service.state;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Estado das luminárias com versão por luminária, sem boxing.
+ *
+ * Cada luminária ocupa um único long numa {@link PackedLongTable}:
+ * <pre>
+ *   bits 32-63  versão (incrementada a cada mudança efetiva)
+ *   bits  8-31  cor RGB (0xRRGGBB)
+ *   bits  1-7   brilho (0-100)
+ *   bit   0     ligada
+ * </pre>
+ * Toda alteração é um compare-and-set, sem locks: dois toggles concorrentes nunca leem o mesmo
+ * valor. Luminárias sem entrada estão no estado {@link #INITIAL} (desligadas, versão 0).
+ */
+public class LuminariaStateTable {
+
+    public static final int MAX_BRIGHTNESS = 100;
+    // Brilho com que uma luminária acende (ligar com brilho 0 usa este valor); luminárias com o
+    // brilho e a cor padrão ficam fora de levels no initial_state
+    public static final int DEFAULT_BRIGHTNESS = MAX_BRIGHTNESS;
+    public static final int DEFAULT_COLOR = 0xFFFFFF;
+
+    // Valor de uma luminária sem entrada: desligada, versão 0, brilho e cor padrão
+    public static final long INITIAL = pack(0, false, DEFAULT_BRIGHTNESS, DEFAULT_COLOR);
+
+    private static final long ON_BIT = 1L;
+    private static final int BRIGHTNESS_SHIFT = 1;
+    private static final long BRIGHTNESS_MASK = 0x7FL;
+    private static final int COLOR_SHIFT = 8;
+    private static final long COLOR_MASK = 0xFFFFFFL;
+    private static final int VERSION_SHIFT = 32;
+    private static final long VERSION_MASK = 0xFFFFFFFFL;
+
+    private final PackedLongTable table;
+
+    public LuminariaStateTable() {
+        this(1024, false);
+    }
+
+    /**
+     * @param expectedLuminarias quantidade esperada de luminárias (dimensionamento inicial)
+     * @param offHeap            manter a tabela fora do heap (memória direta)
+     */
+    public LuminariaStateTable(int expectedLuminarias, boolean offHeap) {
+        this.table = new PackedLongTable(expectedLuminarias, offHeap);
+    }
+
+    public static long pack(long version, boolean isOn, int brightness, int color) {
+        return ((version & VERSION_MASK) << VERSION_SHIFT)
+            | (((long) color & COLOR_MASK) << COLOR_SHIFT)
+            | (((long) clampBrightness(brightness) & BRIGHTNESS_MASK) << BRIGHTNESS_SHIFT)
+            | (isOn ? ON_BIT : 0L);
+    }
+
+    public static long version(long packed) {
+        return (packed >>> VERSION_SHIFT) & VERSION_MASK;
+    }
+
+    public static boolean isOn(long packed) {
+        return (packed & ON_BIT) != 0;
+    }
+
+    public static int brightness(long packed) {
+        return (int) ((packed >>> BRIGHTNESS_SHIFT) & BRIGHTNESS_MASK);
+    }
+
+    public static int color(long packed) {
+        return (int) ((packed >>> COLOR_SHIFT) & COLOR_MASK);
+    }
+
+    /**
+     * Valor resultante de aplicar {@code isOn} sobre {@code previous} (igual ao anterior se não mudou).
+     * Ligar uma luminária com brilho 0 a acende com o brilho padrão.
+     */
+    public static long applied(long previous, boolean isOn) {
+        if (isOn(previous) == isOn) {
+            return previous;
+        }
+        int brightness = isOn && brightness(previous) == 0 ? DEFAULT_BRIGHTNESS : brightness(previous);
+        return pack(version(previous) + 1, isOn, brightness, color(previous));
+    }
+    
+    /**
+     * Valor com estado, brilho e cor aplicados sobre {@code previous} (igual ao anterior se nada mudou)
+     */
+    public static long leveled(long previous, boolean isOn, int brightness, int color) {
+        long updated = pack(version(previous), isOn, brightness, color);
+        return updated == previous ? previous : pack(version(previous) + 1, isOn, brightness, color);
+    }
+    
+    /**
+     * Valor que prevalece entre o local e um recebido de outra instância: maior versão; na mesma
+     * versão, o maior valor (regra simétrica, então todas as instâncias convergem)
+     */
+    public static long merged(long current, long remote) {
+        long currentVersion = version(current);
+        long remoteVersion = version(remote);
+        return remoteVersion > currentVersion || (remoteVersion == currentVersion && remote > current) ? remote : current;
+    }
+
+    /**
+     * Cor no formato #RRGGBB
+     */
+    public static String formatColor(int color) {
+        return String.format("#%06X", color & COLOR_MASK);
+    }
+    
+    /**
+     * Cor a partir de #RRGGBB
+     *
+     * @throws IllegalArgumentException se o formato for inválido
+     */
+    public static int parseColor(String color) {
+        if (color == null || !color.matches("#[0-9A-Fa-f]{6}")) {
+            throw new IllegalArgumentException("Cor inválida: " + color + " (use #RRGGBB)");
+        }
+        return Integer.parseInt(color.substring(1), 16);
+    }
+
+    /**
+     * Valor atual (estado e versão) da luminária
+     */
+    public long get(Long luminariaId) {
+        return table.get(luminariaId, INITIAL);
+    }
+
+    public boolean contains(Long luminariaId) {
+        return table.containsKey(luminariaId);
+    }
+
+    /**
+     * Define o estado; devolve o valor anterior
+     */
+    public long set(Long luminariaId, boolean isOn) {
+        if (!isOn && !table.containsKey(luminariaId)) {
+            return INITIAL; // desligar uma luminária sem entrada não muda nada
+        }
+        return table.update(luminariaId, INITIAL, current -> applied(current, isOn));
+    }
+
+    /**
+     * Inverte o estado; devolve o valor anterior
+     */
+    public long toggle(Long luminariaId) {
+        return table.update(luminariaId, INITIAL, current -> applied(current, !isOn(current)));
+    }
+
+    /**
+     * Define o estado só se a versão atual for {@code expectedVersion}; devolve o valor anterior
+     *
+     * @throws StaleVersionException se a luminária já estiver em outra versão
+     */
+    public long compareAndSet(Long luminariaId, long expectedVersion, boolean isOn) {
+        return table.update(luminariaId, INITIAL, current -> {
+            checkVersion(luminariaId, current, expectedVersion);
+            return applied(current, isOn);
+        });
+    }
+
+    /**
+     * Inverte o estado só se a versão atual for {@code expectedVersion}; devolve o valor anterior
+     *
+     * @throws StaleVersionException se a luminária já estiver em outra versão
+     */
+    public long compareAndToggle(Long luminariaId, long expectedVersion) {
+        return table.update(luminariaId, INITIAL, current -> {
+            checkVersion(luminariaId, current, expectedVersion);
+            return applied(current, !isOn(current));
+        });
+    }
+
+    /**
+     * Aplica {@code change} ao valor atual (pode ser reexecutada; deve ser pura e manter a regra
+     * de versão de {@link #leveled}); devolve o valor anterior
+     *
+     * @param expectedVersion versão esperada, ou null para aplicar incondicionalmente
+     * @throws StaleVersionException se a luminária já estiver em outra versão
+     */
+    public long update(Long luminariaId, Long expectedVersion, LongUnaryOperator change) {
+        return table.update(luminariaId, INITIAL, current -> {
+            if (expectedVersion != null) {
+                checkVersion(luminariaId, current, expectedVersion);
+            }
+            return change.applyAsLong(current);
+        });
+    }
+
+    /**
+     * Aplica um valor recebido de outra instância conforme {@link #merged}; devolve o valor anterior
+     */
+    public long merge(Long luminariaId, long remote) {
+        return table.update(luminariaId, INITIAL, current -> merged(current, remote));
+    }
+
+    /**
+     * Remove a luminária da tabela (luminária excluída)
+     */
+    public boolean remove(Long luminariaId) {
+        return table.remove(luminariaId);
+    }
+
+    /**
+     * Estado carregado do store na inicialização (não sobrescreve comandos já recebidos)
+     */
+    public void restore(Long luminariaId, long persisted) {
+        boolean isOn = isOn(persisted);
+        // Brilho 0 (padrão da coluna brightness) equivale ao padrão: ao ligar, acende com ele
+        int brightness = brightness(persisted) == 0 ? DEFAULT_BRIGHTNESS : brightness(persisted);
+        table.putIfAbsent(luminariaId, pack(0, isOn, brightness, color(persisted)));
+    }
+
+    /**
+     * Percorre as entradas (id, valor empacotado) direto da tabela, sem cópia
+     */
+    public void forEach(EntryConsumer consumer) {
+        table.forEach(consumer::accept);
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Visão somente leitura (id -> ligada) lida direto da tabela, sem copiar as entradas
+     */
+    public Map<Long, Boolean> asMap() {
+        return new StatesView();
+    }
+
+    /**
+     * Bytes ocupados pela tabela
+     */
+    public long memoryBytes() {
+        return table.memoryBytes();
+    }
+
+    public boolean isOffHeap() {
+        return table.isOffHeap();
+    }
+
+    private static void checkVersion(Long luminariaId, long current, long expectedVersion) {
+        if (version(current) != expectedVersion) {
+            throw new StaleVersionException(luminariaId, expectedVersion, version(current));
+        }
+    }
+
+    private static int clampBrightness(int brightness) {
+        return Math.max(0, Math.min(MAX_BRIGHTNESS, brightness));
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long luminariaId, long packed);
+    }
+
+    private final class StatesView extends AbstractMap<Long, Boolean> {
+
+        @Override
+        public Boolean get(Object key) {
+            if (!(key instanceof Long) || !table.containsKey((Long) key)) {
+                return null;
+            }
+            return isOn(table.get((Long) key, INITIAL));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Long && table.containsKey((Long) key);
+        }
+
+        @Override
+        public int size() {
+            return table.size();
+        }
+
+        @Override
+        public Set<Entry<Long, Boolean>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<Long, Boolean>> iterator() {
+                    PackedLongTable.Cursor cursor = table.cursor();
+                    return new Iterator<>() {
+                        private boolean ready;
+                        private boolean hasNext;
+
+                        @Override
+                        public boolean hasNext() {
+                            if (!ready) {
+                                hasNext = cursor.advance();
+                                ready = true;
+                            }
+                            return hasNext;
+                        }
+
+                        @Override
+                        public Entry<Long, Boolean> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            ready = false;
+                            return new SimpleImmutableEntry<>(cursor.key(), isOn(cursor.value()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return table.size();
+                }
+            };
+        }
+    }
+}
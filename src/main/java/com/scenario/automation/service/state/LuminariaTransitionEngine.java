@@ -0,0 +1,197 @@
+package com.scenario.automation.service.state;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Motor de transições (fades) de brilho e cor das luminárias.
+ *
+ * Uma única thread avança todas as transições em andamento a cada tick e entrega os valores
+ * do tick de uma vez ao {@link StepSink}, que os aplica e publica num único evento. Nenhuma
+ * tarefa é criada por transição: o custo de um tick é proporcional às transições ativas.
+ *
+ * Cada transição guarda a versão da luminária que ela mesma escreveu por último; se a versão
+ * mudar por outro comando, o passo é rejeitado e a transição termina ({@link Fade#supersede()}).
+ */
+public final class LuminariaTransitionEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(LuminariaTransitionEngine.class);
+
+    // No máximo uma transição por luminária; uma nova substitui a anterior
+    private final Map<Long, Fade> fades = new ConcurrentHashMap<>();
+
+    private final StepSink sink;
+
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "luminaria-transition");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LuminariaTransitionEngine(long tickMillis, StepSink sink) {
+        this.sink = sink;
+        ticker.scheduleAtFixedRate(this::tickQuietly, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Inicia uma transição (substitui a que estiver em andamento na mesma luminária)
+     */
+    public void start(Fade fade) {
+        fades.put(fade.luminariaId, fade);
+    }
+
+    /**
+     * Interrompe a transição da luminária, se houver (o valor já aplicado permanece)
+     */
+    public void cancel(Long luminariaId) {
+        if (!fades.isEmpty()) {
+            fades.remove(luminariaId);
+        }
+    }
+
+    public int getActiveCount() {
+        return fades.size();
+    }
+
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    private void tickQuietly() {
+        try {
+            tick();
+        } catch (Exception e) {
+            logger.warn("Erro ao avançar transições das luminárias: {}", e.getMessage());
+        }
+    }
+
+    private void tick() {
+        if (fades.isEmpty()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        List<Fade> step = new ArrayList<>(fades.size());
+        for (Fade fade : fades.values()) {
+            fade.advance(now);
+            step.add(fade);
+        }
+
+        sink.apply(step);
+
+        for (Fade fade : step) {
+            if (fade.finished || fade.superseded) {
+                fades.remove(fade.luminariaId, fade);
+            }
+        }
+    }
+
+    /**
+     * Recebe os passos de um tick; deve aplicar cada um com {@link Fade#getExpectedVersion()} e
+     * informar o resultado com {@link Fade#markApplied(long)} ou {@link Fade#supersede()}
+     */
+    @FunctionalInterface
+    public interface StepSink {
+        void apply(List<Fade> step);
+    }
+
+    /**
+     * Transição linear de brilho e cor (por canal RGB) de uma luminária
+     */
+    public static final class Fade {
+        private final Long luminariaId;
+        private final int startBrightness;
+        private final int targetBrightness;
+        private final int startColor;
+        private final int targetColor;
+        private final boolean onDuring;
+        private final boolean onAtEnd;
+        private final long startNanos = System.nanoTime();
+        private final long durationNanos;
+
+        // Alterados apenas pela thread do motor
+        private long expectedVersion;
+        private int brightness;
+        private int color;
+        private boolean finished;
+        private boolean superseded;
+
+        /**
+         * @param start          valor da luminária no início da transição (já aplicado)
+         * @param onAtEnd        estado ligado/desligado ao final da transição
+         * @param durationMillis duração total
+         */
+        public Fade(Long luminariaId, long start, int targetBrightness, int targetColor,
+                    boolean onAtEnd, long durationMillis) {
+            this.luminariaId = luminariaId;
+            this.expectedVersion = LuminariaStateTable.version(start);
+            this.startBrightness = LuminariaStateTable.brightness(start);
+            this.startColor = LuminariaStateTable.color(start);
+            this.onDuring = LuminariaStateTable.isOn(start);
+            this.targetBrightness = targetBrightness;
+            this.targetColor = targetColor;
+            this.onAtEnd = onAtEnd;
+            this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+            this.brightness = startBrightness;
+            this.color = startColor;
+        }
+
+        private void advance(long now) {
+            double progress = durationNanos <= 0 ? 1.0 : Math.min(1.0, (now - startNanos) / (double) durationNanos);
+            finished = progress >= 1.0;
+            brightness = interpolate(startBrightness, targetBrightness, progress);
+            color = interpolate(startColor >>> 16 & 0xFF, targetColor >>> 16 & 0xFF, progress) << 16
+                  | interpolate(startColor >>> 8 & 0xFF, targetColor >>> 8 & 0xFF, progress) << 8
+                  | interpolate(startColor & 0xFF, targetColor & 0xFF, progress);
+        }
+
+        private static int interpolate(int from, int to, double progress) {
+            return (int) Math.round(from + (to - from) * progress);
+        }
+
+        public Long getLuminariaId() {
+            return luminariaId;
+        }
+
+        /**
+         * Versão que a luminária deve ter para o passo ser aplicado
+         */
+        public long getExpectedVersion() {
+            return expectedVersion;
+        }
+
+        public boolean isOn() {
+            return finished ? onAtEnd : onDuring;
+        }
+
+        public int getBrightness() {
+            return brightness;
+        }
+
+        public int getColor() {
+            return color;
+        }
+
+        /**
+         * Passo aplicado; a luminária agora está em {@code version}
+         */
+        public void markApplied(long version) {
+            this.expectedVersion = version;
+        }
+
+        /**
+         * Outro comando alterou a luminária: a transição termina sem aplicar o passo
+         */
+        public void supersede() {
+            this.superseded = true;
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package com.scenario.automation.service.state;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Tabela hash de chaves long para valores long, sem boxing.
+ *
+ * Endereçamento aberto (sondagem linear) com chave e valor lado a lado, dividido em segmentos.
+ * Leituras e alterações de valores existentes são lock-free (compare-and-set no slot); apenas
+ * inserções, remoções e redimensionamentos de um segmento usam o lock daquele segmento.
+ * Os slots podem ficar no heap (long[]) ou fora dele (ByteBuffer direto), com ~16 bytes por slot.
+ *
+ * Chaves devem ser positivas (0 marca slot vazio). Os valores -1 e -2 são reservados.
+ */
+public final class PackedLongTable {
+
+    // Valores reservados nos slots
+    static final long REMOVED = -1L;
+    static final long MOVED = -2L;
+
+    private static final long EMPTY_KEY = 0L;
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+    private static final double LOAD_FACTOR = 0.6;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final boolean offHeap;
+
+    /**
+     * @param expectedEntries quantidade esperada de entradas (dimensionamento inicial)
+     * @param offHeap         slots em memória direta (fora do heap) em vez de long[]
+     */
+    public PackedLongTable(int expectedEntries, boolean offHeap) {
+        this.offHeap = offHeap;
+        int perSegment = (int) Math.ceil(Math.max(0, expectedEntries) / (double) SEGMENTS / LOAD_FACTOR);
+        int capacity = capacityFor(perSegment);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(newSlots(capacity));
+        }
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Valor da chave, ou {@code defaultValue} se ela não existir
+     */
+    public long get(long key, long defaultValue) {
+        if (key <= 0) {
+            return defaultValue;
+        }
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        while (true) {
+            Slots slots = segment.slots;
+            int index = find(slots, key, hash);
+            if (index < 0) {
+                return defaultValue;
+            }
+            long value = slots.getValue(index);
+            if (value == MOVED) {
+                segment.awaitResize();
+                continue;
+            }
+            return value == REMOVED ? defaultValue : value;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        return get(key, REMOVED) != REMOVED;
+    }
+
+    /**
+     * Aplica {@code function} ao valor atual (ou a {@code initial}, inserido se a chave não existir)
+     * com compare-and-set; a função pode ser reexecutada e deve ser pura.
+     *
+     * @return o valor anterior
+     */
+    public long update(long key, long initial, LongUnaryOperator function) {
+        checkKey(key);
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        while (true) {
+            Slots slots = segment.slots;
+            int index = find(slots, key, hash);
+            long value = index < 0 ? REMOVED : slots.getValue(index);
+            if (value == MOVED) {
+                segment.awaitResize();
+                continue;
+            }
+            if (value == REMOVED) {
+                segment.insert(this, key, hash, initial);
+                continue;
+            }
+            long updated = function.applyAsLong(value);
+            checkValue(updated);
+            if (updated == value || slots.compareAndSetValue(index, value, updated)) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Insere a chave com {@code value} se ela ainda não existir
+     *
+     * @return true se inseriu
+     */
+    public boolean putIfAbsent(long key, long value) {
+        checkKey(key);
+        checkValue(value);
+        long hash = hash(key);
+        return segmentFor(hash).insert(this, key, hash, value);
+    }
+
+    /**
+     * Remove a chave
+     *
+     * @return true se ela existia
+     */
+    public boolean remove(long key) {
+        if (key <= 0) {
+            return false;
+        }
+        long hash = hash(key);
+        return segmentFor(hash).remove(key, hash);
+    }
+
+    /**
+     * Percorre as entradas sem copiar a tabela. Não é um snapshot: alterações concorrentes
+     * podem ou não aparecer, mas cada chave é visitada no máximo uma vez.
+     */
+    public void forEach(LongLongConsumer consumer) {
+        for (Segment segment : segments) {
+            Slots slots = segment.slots;
+            for (int index = 0, capacity = slots.capacity(); index < capacity; index++) {
+                long key = slots.getKey(index);
+                if (key == EMPTY_KEY) {
+                    continue;
+                }
+                long value = slots.getValue(index);
+                if (value == MOVED) {
+                    value = get(key, REMOVED); // segmento redimensionado durante a varredura
+                }
+                if (value != REMOVED) {
+                    consumer.accept(key, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cursor sobre as entradas, com as mesmas garantias de {@link #forEach}
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Quantidade de entradas
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.live;
+        }
+        return size;
+    }
+
+    /**
+     * Bytes ocupados pelos slots (heap ou memória direta)
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += (long) segment.slots.capacity() * Slots.BYTES_PER_SLOT;
+        }
+        return bytes;
+    }
+
+    private Slots newSlots(int capacity) {
+        return offHeap ? new OffHeapSlots(capacity) : new HeapSlots(capacity);
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    private static int find(Slots slots, long key, long hash) {
+        int mask = slots.capacity() - 1;
+        int index = (int) hash & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            long slotKey = slots.getKey(index);
+            if (slotKey == key) {
+                return index;
+            }
+            if (slotKey == EMPTY_KEY) {
+                return -1;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int capacityFor(int entries) {
+        int capacity = MIN_SEGMENT_CAPACITY;
+        while (capacity < entries) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // Mistura de bits do murmur3 (fmix64): chaves sequenciais se espalham pelos segmentos e slots
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static void checkKey(long key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Id de luminária inválido: " + key);
+        }
+    }
+
+    private static void checkValue(long value) {
+        if (value == REMOVED || value == MOVED) {
+            throw new IllegalArgumentException("Valor reservado: " + value);
+        }
+    }
+
+    @FunctionalInterface
+    public interface LongLongConsumer {
+        void accept(long key, long value);
+    }
+
+    /**
+     * Iteração sem alocação: {@code while (cursor.advance()) { cursor.key(); cursor.value(); }}
+     */
+    public final class Cursor {
+        private int segmentIndex;
+        private Slots slots = segments[0].slots;
+        private int index = -1;
+        private long key;
+        private long value;
+
+        public boolean advance() {
+            while (true) {
+                while (++index < slots.capacity()) {
+                    long slotKey = slots.getKey(index);
+                    if (slotKey == EMPTY_KEY) {
+                        continue;
+                    }
+                    long slotValue = slots.getValue(index);
+                    if (slotValue == MOVED) {
+                        slotValue = get(slotKey, REMOVED);
+                    }
+                    if (slotValue != REMOVED) {
+                        key = slotKey;
+                        value = slotValue;
+                        return true;
+                    }
+                }
+                if (++segmentIndex >= SEGMENTS) {
+                    return false;
+                }
+                slots = segments[segmentIndex].slots;
+                index = -1;
+            }
+        }
+
+        public long key() {
+            return key;
+        }
+
+        public long value() {
+            return value;
+        }
+    }
+
+    /**
+     * Segmento: slots publicados via volatile; inserção, remoção e redimensionamento sob o monitor
+     */
+    private static final class Segment {
+        volatile Slots slots;
+        // Entradas vivas e slots com chave (vivas + removidas), alterados sob o monitor
+        volatile int live;
+        int used;
+
+        Segment(Slots slots) {
+            this.slots = slots;
+        }
+
+        synchronized boolean insert(PackedLongTable table, long key, long hash, long value) {
+            int index = find(slots, key, hash);
+            if (index >= 0) {
+                // Chave presente; se estava removida, volta a valer com o valor inicial
+                if (slots.getValue(index) != REMOVED) {
+                    return false;
+                }
+                slots.setValue(index, value);
+                live++;
+                return true;
+            }
+            if (used + 1 > slots.capacity() * LOAD_FACTOR) {
+                resize(table);
+            }
+            Slots current = slots;
+            int mask = current.capacity() - 1;
+            index = (int) hash & mask;
+            while (current.getKey(index) != EMPTY_KEY) {
+                index = (index + 1) & mask;
+            }
+            // Valor antes da chave: quem enxerga a chave já enxerga o valor
+            current.setValue(index, value);
+            current.setKey(index, key);
+            used++;
+            live++;
+            return true;
+        }
+
+        synchronized boolean remove(long key, long hash) {
+            Slots current = slots;
+            int index = find(current, key, hash);
+            if (index < 0) {
+                return false;
+            }
+            while (true) {
+                long value = current.getValue(index);
+                if (value == REMOVED) {
+                    return false;
+                }
+                if (current.compareAndSetValue(index, value, REMOVED)) {
+                    live--;
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Copia as entradas vivas para slots novos (descartando as removidas). Cada valor antigo
+         * é trocado por MOVED com CAS, então nenhuma alteração concorrente se perde na cópia.
+         */
+        private void resize(PackedLongTable table) {
+            Slots current = slots;
+            int capacity = capacityFor((int) Math.ceil((live + 1) / LOAD_FACTOR));
+            Slots resized = table.newSlots(Math.max(capacity, MIN_SEGMENT_CAPACITY));
+            int mask = resized.capacity() - 1;
+            int copied = 0;
+            for (int index = 0, length = current.capacity(); index < length; index++) {
+                long key = current.getKey(index);
+                if (key == EMPTY_KEY) {
+                    continue;
+                }
+                long value;
+                do {
+                    value = current.getValue(index);
+                } while (!current.compareAndSetValue(index, value, MOVED));
+                if (value == REMOVED) {
+                    continue;
+                }
+                int target = (int) hash(key) & mask;
+                while (resized.getKey(target) != EMPTY_KEY) {
+                    target = (target + 1) & mask;
+                }
+                resized.setValue(target, value);
+                resized.setKey(target, key);
+                copied++;
+            }
+            used = copied;
+            slots = resized;
+        }
+
+        /**
+         * Espera o redimensionamento em andamento (que segura o monitor) terminar
+         */
+        void awaitResize() {
+            synchronized (this) {
+                // nada: adquirir o monitor basta
+            }
+        }
+    }
+
+    /**
+     * Slots intercalados (chave, valor); leitura com acquire, escrita com release
+     */
+    private interface Slots {
+        int BYTES_PER_SLOT = 16;
+
+        int capacity();
+        long getKey(int index);
+        void setKey(int index, long key);
+        long getValue(int index);
+        void setValue(int index, long value);
+        boolean compareAndSetValue(int index, long expected, long value);
+    }
+
+    private static final class HeapSlots implements Slots {
+        private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+        private final long[] data;
+
+        HeapSlots(int capacity) {
+            this.data = new long[capacity * 2];
+        }
+
+        public int capacity() { return data.length >> 1; }
+        public long getKey(int index) { return (long) LONGS.getAcquire(data, index << 1); }
+        public void setKey(int index, long key) { LONGS.setRelease(data, index << 1, key); }
+        public long getValue(int index) { return (long) LONGS.getVolatile(data, (index << 1) + 1); }
+        public void setValue(int index, long value) { LONGS.setVolatile(data, (index << 1) + 1, value); }
+
+        public boolean compareAndSetValue(int index, long expected, long value) {
+            return LONGS.compareAndSet(data, (index << 1) + 1, expected, value);
+        }
+    }
+
+    private static final class OffHeapSlots implements Slots {
+        private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+        private final ByteBuffer data;
+        private final int capacity;
+
+        OffHeapSlots(int capacity) {
+            // Acesso atômico exige endereços alinhados a 8 bytes
+            this.data = ByteBuffer.allocateDirect(capacity * BYTES_PER_SLOT + Long.BYTES).alignedSlice(Long.BYTES);
+            this.capacity = capacity;
+        }
+
+        public int capacity() { return capacity; }
+        public long getKey(int index) { return (long) LONGS.getAcquire(data, index * BYTES_PER_SLOT); }
+        public void setKey(int index, long key) { LONGS.setRelease(data, index * BYTES_PER_SLOT, key); }
+        public long getValue(int index) { return (long) LONGS.getVolatile(data, index * BYTES_PER_SLOT + Long.BYTES); }
+        public void setValue(int index, long value) { LONGS.setVolatile(data, index * BYTES_PER_SLOT + Long.BYTES, value); }
+
+        public boolean compareAndSetValue(int index, long expected, long value) {
+            return LONGS.compareAndSet(data, index * BYTES_PER_SLOT + Long.BYTES, expected, value);
+        }
+    }
+}
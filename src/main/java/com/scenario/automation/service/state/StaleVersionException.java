@@ -0,0 +1,25 @@
+package com.scenario.automation.service.state;
+
+/**
+ * Comando condicional rejeitado: a luminária já está em outra versão
+ */
+public class StaleVersionException extends RuntimeException {
+
+    private final Long luminariaId;
+    private final long currentVersion;
+
+    public StaleVersionException(Long luminariaId, long expectedVersion, long currentVersion) {
+        super("Versão desatualizada da luminária " + luminariaId +
+              ": esperada " + expectedVersion + ", atual " + currentVersion);
+        this.luminariaId = luminariaId;
+        this.currentVersion = currentVersion;
+    }
+
+    public Long getLuminariaId() {
+        return luminariaId;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
@@ -0,0 +1,251 @@
+package com.scenario.automation.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scenario.automation.service.LuminariaStateService.Level;
+import com.scenario.automation.service.LuminariaStateService.LuminariaStateEvent;
+import com.scenario.automation.service.LuminariaStateService.StateChange;
+import com.scenario.automation.service.sse.SseFrame;
+import com.scenario.automation.service.state.LuminariaStateTable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formato binário do canal WebSocket (inteiros big-endian).
+ *
+ * <pre>
+ * Servidor -> cliente: cada mensagem traz um ou mais frames em sequência
+ *   u8 tipo
+ *   eventos (1 state_change, 2 state_changes, 3 initial_state, 4 state_diff, 5 heartbeat):
+ *     u8 tamanho do id + id ASCII (o mesmo id do SSE, usado em lastEventId/since; 0 = sem id)
+ *     u32 quantidade, e para cada luminária: i64 id, i64 estado empacotado
+ *   127 outro evento: u8 tamanho do id + id, u8 tamanho do nome + nome, u32 tamanho + JSON
+ *   6 resultado de comando: u32 requestId, i64 id, i64 estado empacotado
+ *   7 erro de comando: u32 requestId, u16 status (400, 404, 412), u16 tamanho + mensagem UTF-8
+ *
+ * Cliente -> servidor: um comando por mensagem
+ *   u8 operação (1 ligar, 2 desligar, 3 alternar, 4 brilho/cor), u32 requestId, i64 id,
+ *   i64 versão esperada (-1 = sem If-Match)
+ *   operação 4: i8 brilho (-1 mantém), i32 cor 0xRRGGBB (-1 mantém), u32 transição em ms
+ * </pre>
+ *
+ * Estado empacotado: bit 0 ligada, bits 1-7 brilho, bits 8-31 cor, bits 32-63 versão.
+ * Nos snapshots a versão vem zerada (como no initial_state JSON, que não a inclui).
+ */
+@Component
+public class LuminariaBinaryCodec {
+
+    public static final byte STATE_CHANGE = 1;
+    public static final byte STATE_CHANGES = 2;
+    public static final byte INITIAL_STATE = 3;
+    public static final byte STATE_DIFF = 4;
+    public static final byte HEARTBEAT = 5;
+    public static final byte RESULT = 6;
+    public static final byte ERROR = 7;
+    public static final byte JSON_EVENT = 127;
+
+    public static final byte TURN_ON = 1;
+    public static final byte TURN_OFF = 2;
+    public static final byte TOGGLE = 3;
+    public static final byte LEVEL = 4;
+
+    private static final int STATE_BYTES = 16;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Frame binário de um evento, gerado uma vez e compartilhado por todas as conexões WebSocket
+     */
+    public byte[] encode(SseFrame frame) {
+        return frame.alternate(this::encodeEvent);
+    }
+
+    private byte[] encodeEvent(SseFrame frame) {
+        byte[] id = frame.getId() != null ? frame.getId().getBytes(StandardCharsets.US_ASCII) : new byte[0];
+        String name = frame.getName() != null ? frame.getName() : "";
+
+        if ("heartbeat".equals(name)) {
+            return header(HEARTBEAT, id, 0).array();
+        }
+        if (!(frame.getData() instanceof LuminariaStateEvent event)) {
+            return encodeJson(frame, id, name);
+        }
+
+        switch (name) {
+            case "state_change" -> {
+                ByteBuffer buffer = header(STATE_CHANGE, id, 1);
+                buffer.putLong(event.getLuminariaId());
+                buffer.putLong(pack(event.getVersion(), event.getIsOn(), event.getBrightness(), event.getColor()));
+                return buffer.array();
+            }
+            case "state_changes" -> {
+                List<StateChange> changes = event.getChanges();
+                ByteBuffer buffer = header(STATE_CHANGES, id, changes.size());
+                for (StateChange change : changes) {
+                    buffer.putLong(change.getLuminariaId());
+                    buffer.putLong(pack(change.getVersion(), change.getIsOn(), change.getBrightness(), change.getColor()));
+                }
+                return buffer.array();
+            }
+            case "initial_state", "state_diff" -> {
+                Map<Long, Boolean> states = event.getAllStates();
+                if (states == null) {
+                    return encodeJson(frame, id, name); // snapshot compacto: segue em JSON
+                }
+                Map<Long, Level> levels = event.getLevels();
+                ByteBuffer buffer = header("initial_state".equals(name) ? INITIAL_STATE : STATE_DIFF, id, states.size());
+                states.forEach((luminariaId, isOn) -> {
+                    Level level = levels != null ? levels.get(luminariaId) : null;
+                    buffer.putLong(luminariaId);
+                    buffer.putLong(level != null
+                        ? pack(0L, isOn, level.getBrightness(), level.getColor())
+                        : LuminariaStateTable.pack(0, isOn, LuminariaStateTable.DEFAULT_BRIGHTNESS, LuminariaStateTable.DEFAULT_COLOR));
+                });
+                return buffer.array();
+            }
+            default -> {
+                return encodeJson(frame, id, name);
+            }
+        }
+    }
+
+    /**
+     * Resultado de um comando: estado e versão resultantes
+     */
+    public byte[] encodeResult(int requestId, StateChange state) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + STATE_BYTES);
+        buffer.put(RESULT);
+        buffer.putInt(requestId);
+        buffer.putLong(state.getLuminariaId());
+        buffer.putLong(pack(state.getVersion(), state.getIsOn(), state.getBrightness(), state.getColor()));
+        return buffer.array();
+    }
+
+    /**
+     * Erro de um comando, com status no padrão HTTP
+     */
+    public byte[] encodeError(int requestId, int status, String message) {
+        byte[] text = truncate(message != null ? message : "", 0xFFFF);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 2 + 2 + text.length);
+        buffer.put(ERROR);
+        buffer.putInt(requestId);
+        buffer.putShort((short) status);
+        buffer.putShort((short) text.length);
+        buffer.put(text);
+        return buffer.array();
+    }
+
+    /**
+     * Lê um comando do cliente
+     *
+     * @throws IllegalArgumentException se a mensagem estiver malformada
+     */
+    public Command decodeCommand(ByteBuffer payload) {
+        try {
+            byte operation = payload.get();
+            int requestId = payload.getInt();
+            long luminariaId = payload.getLong();
+            long expectedVersion = payload.getLong();
+            Command command = new Command(operation, requestId, luminariaId, expectedVersion >= 0 ? expectedVersion : null);
+            switch (operation) {
+                case TURN_ON, TURN_OFF, TOGGLE -> {
+                    return command;
+                }
+                case LEVEL -> {
+                    byte brightness = payload.get();
+                    int color = payload.getInt();
+                    command.brightness = brightness >= 0 ? (int) brightness : null;
+                    command.color = color >= 0 ? color : null;
+                    command.transitionMillis = Integer.toUnsignedLong(payload.getInt());
+                    return command;
+                }
+                default -> throw new IllegalArgumentException("Operação desconhecida: " + operation);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Comando incompleto");
+        }
+    }
+
+    private ByteBuffer header(byte type, byte[] id, int count) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 1 + id.length + 4 + count * STATE_BYTES);
+        buffer.put(type);
+        buffer.put((byte) id.length);
+        buffer.put(id);
+        buffer.putInt(count);
+        return buffer;
+    }
+
+    private byte[] encodeJson(SseFrame frame, byte[] id, String name) {
+        byte[] json;
+        try {
+            json = frame.getData() instanceof String text
+                ? text.getBytes(StandardCharsets.UTF_8)
+                : objectMapper.writeValueAsBytes(frame.getData());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Erro ao serializar evento " + name, e);
+        }
+        byte[] nameBytes = truncate(name, 0xFF);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 1 + id.length + 1 + nameBytes.length + 4 + json.length);
+        buffer.put(JSON_EVENT);
+        buffer.put((byte) id.length);
+        buffer.put(id);
+        buffer.put((byte) nameBytes.length);
+        buffer.put(nameBytes);
+        buffer.putInt(json.length);
+        buffer.put(json);
+        return buffer.array();
+    }
+
+    private static long pack(Long version, Boolean isOn, Integer brightness, String color) {
+        return LuminariaStateTable.pack(
+            version != null ? version : 0,
+            Boolean.TRUE.equals(isOn),
+            brightness != null ? brightness : LuminariaStateTable.DEFAULT_BRIGHTNESS,
+            color != null ? LuminariaStateTable.parseColor(color) : LuminariaStateTable.DEFAULT_COLOR);
+    }
+
+    private static byte[] truncate(String text, int maxBytes) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= maxBytes) {
+            return bytes;
+        }
+        byte[] truncated = new byte[maxBytes];
+        System.arraycopy(bytes, 0, truncated, 0, maxBytes);
+        return truncated;
+    }
+
+    /**
+     * Comando recebido pelo WebSocket
+     */
+    public static final class Command {
+        private final byte operation;
+        private final int requestId;
+        private final long luminariaId;
+        private final Long expectedVersion;
+        private Integer brightness;
+        private Integer color;
+        private long transitionMillis;
+
+        Command(byte operation, int requestId, long luminariaId, Long expectedVersion) {
+            this.operation = operation;
+            this.requestId = requestId;
+            this.luminariaId = luminariaId;
+            this.expectedVersion = expectedVersion;
+        }
+
+        public byte getOperation() { return operation; }
+        public int getRequestId() { return requestId; }
+        public long getLuminariaId() { return luminariaId; }
+        public Long getExpectedVersion() { return expectedVersion; }
+        public Integer getBrightness() { return brightness; }
+        public Integer getColor() { return color; }
+        public long getTransitionMillis() { return transitionMillis; }
+    }
+}
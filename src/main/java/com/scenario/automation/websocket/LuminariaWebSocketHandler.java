@@ -0,0 +1,228 @@
+package com.scenario.automation.websocket;
+
+import com.scenario.automation.service.LuminariaStateService;
+import com.scenario.automation.service.LuminariaStateService.StateChange;
+import com.scenario.automation.service.sse.SseClient;
+import com.scenario.automation.service.sse.SseFrame;
+import com.scenario.automation.service.sse.SseSink;
+import com.scenario.automation.service.sse.SseSubscription;
+import com.scenario.automation.service.state.LuminariaNotFoundException;
+import com.scenario.automation.service.state.StaleVersionException;
+import com.scenario.automation.websocket.LuminariaBinaryCodec.Command;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.BinaryWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Canal WebSocket binário de automação: comandos e eventos de estado numa única conexão.
+ *
+ * A autenticação (JWT) acontece uma vez, no handshake; depois cada comando é uma mensagem
+ * binária pequena, executada direto no thread da conexão e respondida com o estado resultante.
+ * Os eventos chegam pela mesma fila/inscrição dos clientes SSE ({@link LuminariaStateService}),
+ * no formato do {@link LuminariaBinaryCodec}.
+ *
+ * Parâmetros da URL (iguais aos de /events): environmentIds, subambientes, luminariaIds,
+ * lastEventId e since.
+ */
+@Component
+public class LuminariaWebSocketHandler extends BinaryWebSocketHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(LuminariaWebSocketHandler.class);
+
+    private static final String CLIENT_ATTRIBUTE = "luminariaClient";
+    private static final String SESSION_ATTRIBUTE = "luminariaSession";
+
+    // Transição máxima aceita, a mesma do POST /{id}/level
+    private static final long MAX_TRANSITION_MILLIS = 3_600_000;
+
+    @Autowired
+    private LuminariaStateService luminariaStateService;
+
+    @Autowired
+    private LuminariaBinaryCodec codec;
+
+    // Limites de envio por conexão: acima deles a conexão é encerrada (cliente lento)
+    @Value("${app.websocket.send-time-limit-ms:5000}")
+    private int sendTimeLimitMillis;
+
+    @Value("${app.websocket.buffer-size-limit:4194304}")
+    private int bufferSizeLimit;
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        SseSubscription subscription;
+        MultiValueMap<String, String> params;
+        try {
+            params = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+            subscription = SseSubscription.of(
+                parseIds(params.get("environmentIds")),
+                parseValues(params.get("subambientes"), value -> value),
+                parseIds(params.get("luminariaIds")));
+        } catch (IllegalArgumentException e) {
+            session.close(CloseStatus.BAD_DATA.withReason("Parâmetros de inscrição inválidos"));
+            return;
+        }
+
+        // Eventos (threads do dispatcher) e respostas de comandos (thread da conexão) no mesmo socket
+        WebSocketSession concurrentSession = new ConcurrentWebSocketSessionDecorator(
+            session, sendTimeLimitMillis, bufferSizeLimit);
+        session.getAttributes().put(SESSION_ATTRIBUTE, concurrentSession);
+
+        SseClient client = luminariaStateService.addWebSocketClient(
+            new WebSocketSink(concurrentSession), subscription,
+            decode(params.getFirst("lastEventId")), decode(params.getFirst("since")));
+        session.getAttributes().put(CLIENT_ATTRIBUTE, client);
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) throws Exception {
+        WebSocketSession out = (WebSocketSession) session.getAttributes().get(SESSION_ATTRIBUTE);
+        if (out == null) {
+            return;
+        }
+
+        Command command;
+        try {
+            command = codec.decodeCommand(message.getPayload());
+        } catch (IllegalArgumentException e) {
+            out.sendMessage(new BinaryMessage(codec.encodeError(0, 400, e.getMessage())));
+            return;
+        }
+
+        byte[] response;
+        try {
+            response = codec.encodeResult(command.getRequestId(), execute(command));
+        } catch (StaleVersionException e) {
+            response = codec.encodeError(command.getRequestId(), 412, e.getMessage());
+        } catch (LuminariaNotFoundException e) {
+            response = codec.encodeError(command.getRequestId(), 404, e.getMessage());
+        } catch (RuntimeException e) {
+            response = codec.encodeError(command.getRequestId(), 400, e.getMessage());
+        }
+        out.sendMessage(new BinaryMessage(response));
+    }
+
+    private StateChange execute(Command command) {
+        Long luminariaId = command.getLuminariaId();
+        switch (command.getOperation()) {
+            case LuminariaBinaryCodec.TURN_ON:
+                return luminariaStateService.setLuminariaState(luminariaId, true, command.getExpectedVersion());
+            case LuminariaBinaryCodec.TURN_OFF:
+                return luminariaStateService.setLuminariaState(luminariaId, false, command.getExpectedVersion());
+            case LuminariaBinaryCodec.TOGGLE:
+                return luminariaStateService.toggleLuminaria(luminariaId, command.getExpectedVersion());
+            default:
+                if (command.getBrightness() == null && command.getColor() == null) {
+                    throw new RuntimeException("Informe brilho e/ou cor");
+                }
+                if (command.getColor() != null && command.getColor() > 0xFFFFFF) {
+                    throw new RuntimeException("Cor deve estar no formato 0xRRGGBB");
+                }
+                if (command.getTransitionMillis() > MAX_TRANSITION_MILLIS) {
+                    throw new RuntimeException("Duração da transição deve ser de no máximo 1 hora");
+                }
+                return luminariaStateService.setLuminariaLevel(luminariaId, command.getBrightness(),
+                    command.getColor(), command.getTransitionMillis(), command.getExpectedVersion());
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        SseClient client = (SseClient) session.getAttributes().remove(CLIENT_ATTRIBUTE);
+        if (client != null) {
+            luminariaStateService.removeClient(client);
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        logger.warn("Erro na conexão WebSocket: {}", exception.getMessage());
+        super.handleTransportError(session, exception);
+    }
+
+    private static List<Long> parseIds(List<String> values) {
+        return parseValues(values, Long::valueOf);
+    }
+
+    /**
+     * Valores de um parâmetro repetido e/ou separado por vírgulas (como no binding do Spring MVC)
+     */
+    private static <T> List<T> parseValues(List<String> values, Function<String, T> parser) {
+        if (values == null) {
+            return null;
+        }
+        List<T> parsed = new ArrayList<>();
+        for (String value : values) {
+            if (value == null) {
+                continue;
+            }
+            for (String item : decode(value).split(",")) {
+                if (!item.isBlank()) {
+                    parsed.add(parser.apply(item.trim()));
+                }
+            }
+        }
+        return parsed;
+    }
+
+    private static String decode(String value) {
+        return value != null ? UriUtils.decode(value, StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Destino dos eventos de um cliente WebSocket: os frames acumulados saem numa única mensagem binária
+     */
+    private final class WebSocketSink implements SseSink {
+        private final WebSocketSession session;
+
+        WebSocketSink(WebSocketSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public void write(List<SseFrame> frames) throws IOException {
+            byte[] payload;
+            if (frames.size() == 1) {
+                payload = codec.encode(frames.get(0));
+            } else {
+                ByteArrayOutputStream batch = new ByteArrayOutputStream();
+                for (SseFrame frame : frames) {
+                    batch.write(codec.encode(frame));
+                }
+                payload = batch.toByteArray();
+            }
+            try {
+                session.sendMessage(new BinaryMessage(payload));
+            } catch (SessionLimitExceededException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                session.close(CloseStatus.SERVICE_OVERLOAD);
+            } catch (IOException e) {
+                logger.debug("Erro ao encerrar conexão WebSocket: {}", e.getMessage());
+            }
+        }
+    }
+}